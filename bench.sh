@@ -0,0 +1,26 @@
+#!/bin/bash
+
+# Compiles drawca with the JMH benchmarks in ./drawca/bench and runs them.
+# Results are written as JSON to jmh-results.json (override with -rff).
+# Extra arguments go to JMH, e.g. ./bench.sh EngineBenchmark -p width=1000
+# JMH jars are looked up from JMH_LIB (default /usr/share/java).
+set -e
+JMH_LIB=${JMH_LIB:-/usr/share/java}
+JMH="$JMH_LIB/jmh-core.jar:$JMH_LIB/jmh-generator-annprocess.jar:$JMH_LIB/jopt-simple.jar:$JMH_LIB/commons-math3.jar"
+CP="/usr/share/java/commons-cli/commons-cli.jar:/usr/share/java/guava/guava.jar"
+OUT=./drawca/bench-bin
+rm -rf "$OUT"
+mkdir -p "$OUT"
+SRC="./drawca/java ./drawca/bench"
+JAVAC_OPTS=""
+JMH_OPTS=""
+# The vector engine is built only if the JDK has the incubator module.
+if java --list-modules 2>/dev/null | grep -q '^jdk.incubator.vector'; then
+    SRC="$SRC ./drawca/vector"
+    JAVAC_OPTS="--add-modules jdk.incubator.vector"
+    JMH_OPTS="-jvmArgsPrepend --add-modules=jdk.incubator.vector"
+fi
+javac -encoding UTF-8 $JAVAC_OPTS -cp "$CP:$JMH" -d "$OUT" \
+    $(find $SRC -name '*.java')
+java -cp "$OUT:$CP:$JMH" org.openjdk.jmh.Main -rf json -rff jmh-results.json \
+    $JMH_OPTS "${@}"
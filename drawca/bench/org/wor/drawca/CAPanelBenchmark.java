@@ -0,0 +1,156 @@
+/**
+ * CAPanelBenchmark.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of drawing rows into a {@link CAPanel}.
+ *
+ * A fresh panel is created (untimed) before every invocation since a panel
+ * can only be drawn once.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx2g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CAPanelBenchmark {
+    /**
+     * Rows drawn per invocation of the per-row benchmark.
+     */
+    private static final int ROWS = 64;
+
+    /**
+     * Panel for the per-row benchmark.
+     */
+    @State(Scope.Thread)
+    public static class RowState {
+        /**
+         * Row width in cells.
+         */
+        @Param({"1000", "100000", "1000000"})
+        private int width;
+
+        /**
+         * Rule number.
+         */
+        @Param({"30", "90", "110", "184"})
+        private int ruleNumber;
+
+        /**
+         * Image format.
+         */
+        @Param({"BINARY", "INDEXED", "ARGB"})
+        private ImageBacking backing;
+
+        /**
+         * Panel under test.
+         */
+        private CAPanel panel;
+
+        /**
+         * Creates a panel of {@link #ROWS} rows.
+         */
+        @Setup(Level.Invocation)
+        public final void setUp() {
+            panel = new CAPanel(width, ROWS, 1, 1, ruleNumber, "", backing);
+            panel.setupBackground();
+        }
+    }
+
+    /**
+     * Panel for the full image benchmark.
+     */
+    @State(Scope.Thread)
+    public static class ImageState {
+        /**
+         * Image width in cells.
+         */
+        @Param({"1000", "10000"})
+        private int width;
+
+        /**
+         * Image height in rows.
+         */
+        @Param({"100", "1000"})
+        private int height;
+
+        /**
+         * Rule number.
+         */
+        @Param({"30", "90", "110", "184"})
+        private int ruleNumber;
+
+        /**
+         * Panel under test.
+         */
+        private CAPanel panel;
+
+        /**
+         * Creates the panel.
+         */
+        @Setup(Level.Invocation)
+        public final void setUp() {
+            panel = new CAPanel(width, height, 1, 1, ruleNumber, "");
+            panel.setupBackground();
+        }
+    }
+
+    /**
+     * Average time of one {@link CAPanel#drawCellularAutomataIteration()}.
+     *
+     * @param state Fresh panel.
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public final void drawIteration(final RowState state) {
+        for (int i = 0; i < ROWS; i++) {
+            state.panel.drawCellularAutomataIteration();
+        }
+    }
+
+    /**
+     * Time of a full {@link CAPanel#drawCellularAutomata()}.
+     *
+     * @param state Fresh panel.
+     */
+    @Benchmark
+    public final void drawImage(final ImageState state) {
+        state.panel.drawCellularAutomata();
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * EngineBenchmark.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of computing one generation with each row engine.
+ *
+ * New engines are added to {@link #createEngine()}. The vector engine
+ * fails to set up unless the JVM has the jdk.incubator.vector module.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EngineBenchmark {
+    /**
+     * Engine name.
+     */
+    @Param({"bitpacked", "table", "parallel", "vector"})
+    private String engine;
+
+    /**
+     * Row width in cells.
+     */
+    @Param({"1000", "100000", "10000000"})
+    private int width;
+
+    /**
+     * Rule number.
+     */
+    @Param({"30", "90", "110", "184"})
+    private int ruleNumber;
+
+    /**
+     * Engine under test.
+     */
+    private RowEngine rowEngine;
+
+    /**
+     * Current generation.
+     */
+    private long[] current;
+
+    /**
+     * Next generation.
+     */
+    private long[] next;
+
+    /**
+     * Creates the engine and a random row.
+     */
+    @Setup
+    public final void setUp() {
+        rowEngine = createEngine();
+        current = BitRows.randomRow(width, new Random(1));
+        next = BitRows.newRow(width);
+    }
+
+    /**
+     * Creates the engine named by the parameter.
+     *
+     * @return Engine.
+     */
+    private RowEngine createEngine() {
+        Rule rule = new Rule(ruleNumber);
+        switch (engine) {
+            case "bitpacked":
+                return new BitPackedEngine(rule, width);
+            case "table":
+                return new TableEngine(rule, width);
+            case "parallel":
+                return new ParallelEngine(rule, width);
+            case "vector":
+                return RowEngines.vector(rule, width, Boundary.PERIODIC);
+            default:
+                throw new IllegalArgumentException("Unknown engine: "
+                        + engine);
+        }
+    }
+
+    /**
+     * Computes one generation.
+     *
+     * @return The new generation.
+     */
+    @Benchmark
+    public final long[] step() {
+        rowEngine.step(current, next);
+        long[] tmp = current;
+        current = next;
+        next = tmp;
+        return current;
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * RowCostBenchmark.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Regression benchmark for the cost of drawing one row.
+ *
+ * Draws full images of growing height and prints the average time per row.
+ * The per-row cost must not grow with the height; the benchmark exits
+ * with a non-zero status if the tallest image costs more than
+ * {@link #MAX_RATIO} times the shortest one per row. Short images being
+ * slower per row, from a fixed cost per image, is not a regression.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class RowCostBenchmark {
+    /**
+     * Image width in pixels.
+     */
+    private static final int WIDTH = 1000;
+
+    /**
+     * Image heights to measure.
+     */
+    private static final int[] HEIGHTS = {250, 500, 1000, 2000, 4000};
+
+    /**
+     * Rule to draw.
+     */
+    private static final int RULE = 110;
+
+    /**
+     * Untimed warm up rounds per height.
+     */
+    private static final int WARMUP = 3;
+
+    /**
+     * Timed rounds per height, the fastest one is reported.
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Allowed ratio of the per-row cost of the tallest image to that of the
+     * shortest one.
+     */
+    private static final double MAX_RATIO = 2.0;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000.0;
+
+    /**
+     * Private utility class constructor.
+     */
+    private RowCostBenchmark() {
+        throw new AssertionError("Utility class instantiation.");
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args Not used.
+     */
+    public static void main(final String[] args) {
+        for (int height : HEIGHTS) {
+            for (int i = 0; i < WARMUP; i++) {
+                nanosPerRow(height);
+            }
+        }
+
+        final double[] perRow = new double[HEIGHTS.length];
+        for (int h = 0; h < HEIGHTS.length; h++) {
+            perRow[h] = Double.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                perRow[h] = Math.min(perRow[h], nanosPerRow(HEIGHTS[h]));
+            }
+            System.out.format("height %5d: %8.2f us/row%n", HEIGHTS[h],
+                    perRow[h] / NANOS_PER_MICRO);
+        }
+
+        final double ratio = perRow[HEIGHTS.length - 1] / perRow[0];
+        System.out.format("tallest/shortest ratio: %.2f%n", ratio);
+        if (ratio > MAX_RATIO) {
+            System.err.println("Per-row cost grows with image height!");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Draws a full image and measures average time per row.
+     *
+     * @param height Image height in pixels.
+     * @return Nanoseconds per row.
+     */
+    private static double nanosPerRow(final int height) {
+        CAPanel panel = new CAPanel(WIDTH, height, 1, 1, RULE, "");
+        panel.setupBackground();
+        long start = System.nanoTime();
+        panel.drawCellularAutomata();
+        return (double) (System.nanoTime() - start) / height;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * RuleBenchmark.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of single neighborhood lookups.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RuleBenchmark {
+    /**
+     * Rule number.
+     */
+    @Param({"30", "90", "110", "184"})
+    private int ruleNumber;
+
+    /**
+     * Rule under test.
+     */
+    private Rule rule;
+
+    /**
+     * Compiled form of the rule.
+     */
+    private CompiledRule compiled;
+
+    /**
+     * Neighborhoods as strings.
+     */
+    private String[] neighborhoods;
+
+    /**
+     * Cell colors of the neighborhoods.
+     */
+    private int[][] colors;
+
+    /**
+     * Neighborhood used by the next call.
+     */
+    private int n;
+
+    /**
+     * Builds the rule and the neighborhoods.
+     */
+    @Setup
+    public final void setUp() {
+        rule = new Rule(ruleNumber);
+        compiled = rule.compile();
+        neighborhoods = new String[CompiledRule.NEIGHBORHOODS];
+        colors = new int[CompiledRule.NEIGHBORHOODS][3];
+        for (int i = 0; i < CompiledRule.NEIGHBORHOODS; i++) {
+            neighborhoods[i] = String.format("%3s",
+                    Integer.toBinaryString(i)).replace(' ', '0');
+            for (int j = 0; j < 3; j++) {
+                colors[i][j] = Rule.COLOR_TO_CHAR.inverse()
+                    .get(neighborhoods[i].charAt(j));
+            }
+        }
+    }
+
+    /**
+     * Lookup with a string neighborhood.
+     *
+     * @return New cell value.
+     */
+    @Benchmark
+    public final Character getValueString() {
+        n = (n + 1) & (CompiledRule.NEIGHBORHOODS - 1);
+        return rule.getValue(neighborhoods[n]);
+    }
+
+    /**
+     * Lookup with three cell colors.
+     *
+     * @return New cell value.
+     */
+    @Benchmark
+    public final Character getValueInt() {
+        n = (n + 1) & (CompiledRule.NEIGHBORHOODS - 1);
+        int[] c = colors[n];
+        return rule.getValue(c[0], c[1], c[2]);
+    }
+
+    /**
+     * Lookup from the compiled bit table.
+     *
+     * @return New cell value.
+     */
+    @Benchmark
+    public final int compiledLookup() {
+        n = (n + 1) & (CompiledRule.NEIGHBORHOODS - 1);
+        return compiled.lookup(n);
+    }
+}
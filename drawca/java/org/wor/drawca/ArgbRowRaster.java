@@ -0,0 +1,86 @@
+/**
+ * ArgbRowRaster.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Row raster with 32-bit ARGB pixels.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class ArgbRowRaster implements RowRaster {
+    /**
+     * Pixel color of a zero cell.
+     */
+    private static final int ZERO_COLOR = Rule.COLOR_TO_CHAR.inverse()
+        .get('0');
+
+    /**
+     * Pixel color of a one cell.
+     */
+    private static final int ONE_COLOR = Rule.COLOR_TO_CHAR.inverse()
+        .get('1');
+
+    /**
+     * Image rows are written to.
+     */
+    private final BufferedImage image;
+
+    /**
+     * Pixels of the image.
+     */
+    private final int[] pixels;
+
+    /**
+     * Allocates image.
+     *
+     * @param width Image width in cells.
+     * @param height Image height in rows.
+     */
+    public ArgbRowRaster(final int width, final int height) {
+        image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer())
+            .getData();
+    }
+
+    @Override
+    public final BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public final void writeRow(final int y, final long[] row) {
+        final int w = image.getWidth();
+        int p = y * w;
+        for (int k = 0; k < row.length; k++) {
+            long word = row[k];
+            final int end = Math.min(w - k * BitRows.WORD_BITS,
+                    BitRows.WORD_BITS);
+            for (int i = 0; i < end; i++) {
+                pixels[p++] = (word & 1) != 0 ? ONE_COLOR : ZERO_COLOR;
+                word >>>= 1;
+            }
+        }
+    }
+}
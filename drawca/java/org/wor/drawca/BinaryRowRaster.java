@@ -0,0 +1,84 @@
+/**
+ * BinaryRowRaster.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Row raster storing one bit per cell.
+ *
+ * Rows are packed straight into the 1-bit image data, so the image takes
+ * 1/32 of the memory of an ARGB image. Colors come from
+ * {@link Rule#COLOR_TO_CHAR}.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class BinaryRowRaster implements RowRaster {
+    /**
+     * Two color palette of zero and one cells.
+     */
+    public static final IndexColorModel PALETTE = new IndexColorModel(1, 2,
+            new int[] {Rule.COLOR_TO_CHAR.inverse().get('0'),
+                Rule.COLOR_TO_CHAR.inverse().get('1')}, 0, false, -1,
+            DataBuffer.TYPE_BYTE);
+
+    /**
+     * Image rows are written to.
+     */
+    private final BufferedImage image;
+
+    /**
+     * Packed pixels of the image, most significant bit first.
+     */
+    private final byte[] data;
+
+    /**
+     * Bytes per image line.
+     */
+    private final int stride;
+
+    /**
+     * Allocates image.
+     *
+     * @param width Image width in cells.
+     * @param height Image height in rows.
+     */
+    public BinaryRowRaster(final int width, final int height) {
+        image = new BufferedImage(width, height,
+                BufferedImage.TYPE_BYTE_BINARY, PALETTE);
+        data = ((DataBufferByte) image.getRaster().getDataBuffer())
+            .getData();
+        stride = BitRows.byteCount(width);
+    }
+
+    @Override
+    public final BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public final void writeRow(final int y, final long[] row) {
+        BitRows.packMsbFirst(row, image.getWidth(), data, y * stride);
+    }
+}
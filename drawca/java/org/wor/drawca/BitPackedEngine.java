@@ -0,0 +1,128 @@
+/**
+ * BitPackedEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Elementary cellular automata engine working on bit-packed rows.
+ *
+ * Computes 64 cells at a time: the left and right neighbors of a whole word
+ * are produced with shifts and the rule is evaluated as a boolean function
+ * of the three neighbor words. By default the lattice wraps around
+ * periodically.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class BitPackedEngine implements RowEngine {
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Number of words in a row.
+     */
+    private final int words;
+
+    /**
+     * Number of cells in the last word of a row [1-64].
+     */
+    private final int lastBits;
+
+    /**
+     * Mask of valid cells in the last word of a row.
+     */
+    private final long lastMask;
+
+    /**
+     * Rule to apply.
+     */
+    private final CompiledRule rule;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Constructs engine for given rule and periodic lattice width.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     */
+    public BitPackedEngine(final Rule rule, final int width) {
+        this(rule, width, Boundary.PERIODIC);
+    }
+
+    /**
+     * Constructs engine for given rule, lattice width and boundary.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     */
+    public BitPackedEngine(final Rule rule, final int width,
+            final Boundary boundary) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        this.width = width;
+        words = BitRows.wordCount(width);
+        lastBits = width - (words - 1) * BitRows.WORD_BITS;
+        lastMask = BitRows.lastWordMask(width);
+        this.rule = rule.compile();
+        this.boundary = boundary;
+    }
+
+    @Override
+    public final int getWidth() {
+        return width;
+    }
+
+    @Override
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    @Override
+    public final void step(final long[] current, final long[] next) {
+        final int last = words - 1;
+        final boolean periodic = boundary == Boundary.PERIODIC;
+        // Leftmost cell's left neighbor is the rightmost cell.
+        long carry = periodic ? (current[last] >>> (lastBits - 1)) & 1 : 0;
+
+        for (int k = 0; k < words; k++) {
+            final long c = current[k];
+            final long l = (c << 1) | carry;
+            long r = c >>> 1;
+            if (k < last) {
+                r |= current[k + 1] << (BitRows.WORD_BITS - 1);
+            } else if (periodic) {
+                // Rightmost cell's right neighbor is the leftmost cell.
+                r |= (current[0] & 1) << (lastBits - 1);
+            }
+            carry = c >>> (BitRows.WORD_BITS - 1);
+
+            next[k] = rule.applyWord(l, c, r);
+        }
+        next[last] &= lastMask;
+    }
+}
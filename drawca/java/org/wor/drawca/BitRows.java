@@ -0,0 +1,311 @@
+/**
+ * BitRows.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.Random;
+
+/**
+ * Utilities for cellular automata rows packed into long arrays.
+ *
+ * Cell i of a row is stored in bit (i % 64) of word (i / 64), so the least
+ * significant bit of the first word is the leftmost cell. Bits of the last
+ * word beyond the row width are always kept zero.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class BitRows {
+    /**
+     * Number of cells stored in one word.
+     */
+    public static final int WORD_BITS = Long.SIZE;
+
+    /**
+     * Shift which converts a cell index to a word index.
+     */
+    public static final int WORD_SHIFT = 6;
+
+    /**
+     * Mask which converts a cell index to a bit index inside a word.
+     */
+    public static final int BIT_MASK = WORD_BITS - 1;
+
+    /**
+     * Initial value of a row fingerprint.
+     */
+    private static final long FINGERPRINT_SEED = 0x243f6a8885a308d3L;
+
+    /**
+     * Multiplier mixing words into a row fingerprint.
+     */
+    private static final long FINGERPRINT_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Shift mixing high bits of a row fingerprint into low bits.
+     */
+    private static final int FINGERPRINT_SHIFT = 29;
+
+    /**
+     * Private utility class constructor.
+     */
+    private BitRows() {
+        throw new AssertionError("Utility class instantiation.");
+    }
+
+    /**
+     * Number of words needed to store a row.
+     *
+     * @param width Row width in cells.
+     * @return Number of longs needed for the row.
+     */
+    public static int wordCount(final int width) {
+        return (width + BIT_MASK) >>> WORD_SHIFT;
+    }
+
+    /**
+     * Number of bytes needed to store a row with 8 cells per byte.
+     *
+     * @param width Row width in cells.
+     * @return Number of bytes needed for the row.
+     */
+    public static int byteCount(final int width) {
+        return (width + Byte.SIZE - 1) / Byte.SIZE;
+    }
+
+    /**
+     * Allocates an empty (all zeroes) row.
+     *
+     * @param width Row width in cells.
+     * @return New row.
+     */
+    public static long[] newRow(final int width) {
+        return new long[wordCount(width)];
+    }
+
+    /**
+     * Allocates a row with uniformly random cells.
+     *
+     * @param width Row width in cells.
+     * @param rand Random source.
+     * @return New row.
+     */
+    public static long[] randomRow(final int width, final Random rand) {
+        final long[] row = newRow(width);
+        for (int k = 0; k < row.length; k++) {
+            row[k] = rand.nextLong();
+        }
+        row[row.length - 1] &= lastWordMask(width);
+        return row;
+    }
+
+    /**
+     * Mask of the valid cells in the last word of a row.
+     *
+     * @param width Row width in cells.
+     * @return Mask with a bit set for each cell in the last word.
+     */
+    public static long lastWordMask(final int width) {
+        final int bits = width & BIT_MASK;
+        return bits == 0 ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * Gets value of a single cell.
+     *
+     * @param row Packed row.
+     * @param i Cell index.
+     * @return True if the cell is set (one).
+     */
+    public static boolean get(final long[] row, final int i) {
+        return (row[i >>> WORD_SHIFT] & (1L << i)) != 0;
+    }
+
+    /**
+     * Sets value of a single cell.
+     *
+     * @param row Packed row.
+     * @param i Cell index.
+     * @param value New cell value.
+     */
+    public static void set(final long[] row, final int i,
+            final boolean value) {
+        if (value) {
+            row[i >>> WORD_SHIFT] |= 1L << i;
+        } else {
+            row[i >>> WORD_SHIFT] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * Reads 64 consecutive cells starting at any position.
+     *
+     * Positions outside [0, width) wrap around periodically.
+     *
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @param pos Position of the first cell, may be negative.
+     * @return Cells pos..pos+63 with cell pos in the least significant bit.
+     */
+    public static long window(final long[] row, final int width,
+            final long pos) {
+        return window(row, width, pos, Boundary.PERIODIC);
+    }
+
+    /**
+     * Reads 64 consecutive cells starting at any position.
+     *
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @param pos Position of the first cell, may be negative.
+     * @param boundary How positions outside [0, width) are read.
+     * @return Cells pos..pos+63 with cell pos in the least significant bit.
+     */
+    public static long window(final long[] row, final int width,
+            final long pos, final Boundary boundary) {
+        if (pos >= 0 && pos + WORD_BITS <= width) {
+            final int k = (int) (pos >>> WORD_SHIFT);
+            final int shift = (int) (pos & BIT_MASK);
+            if (shift == 0) {
+                return row[k];
+            }
+            return (row[k] >>> shift) | (row[k + 1] << (WORD_BITS - shift));
+        }
+        long w = 0;
+        if (boundary == Boundary.FIXED) {
+            for (int b = 0; b < WORD_BITS; b++) {
+                final long i = pos + b;
+                if (i >= 0 && i < width) {
+                    w |= ((row[(int) (i >>> WORD_SHIFT)] >>> i) & 1L) << b;
+                }
+            }
+            return w;
+        }
+        int i = (int) (((pos % width) + width) % width);
+        for (int b = 0; b < WORD_BITS; b++) {
+            w |= ((row[i >>> WORD_SHIFT] >>> i) & 1L) << b;
+            if (++i == width) {
+                i = 0;
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Number of set cells in a row.
+     *
+     * @param row Packed row.
+     * @return Population count of the row.
+     */
+    public static long countOnes(final long[] row) {
+        long count = 0;
+        for (long word : row) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Converts a row to bytes with the leftmost cell in the most significant
+     * bit, as used by PBM and PNG images.
+     *
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @param out Destination, at least {@link #byteCount(int)} bytes.
+     */
+    public static void packMsbFirst(final long[] row, final int width,
+            final byte[] out) {
+        packMsbFirst(row, width, out, 0);
+    }
+
+    /**
+     * Converts a row to bytes with the leftmost cell in the most significant
+     * bit, as used by PBM and PNG images.
+     *
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @param out Destination array.
+     * @param offset Index of the first destination byte.
+     */
+    public static void packMsbFirst(final long[] row, final int width,
+            final byte[] out, final int offset) {
+        final int n = byteCount(width);
+        int b = 0;
+        for (int k = 0; b < n; k++) {
+            final long word = Long.reverse(row[k]);
+            for (int shift = WORD_BITS - Byte.SIZE; shift >= 0 && b < n;
+                    shift -= Byte.SIZE) {
+                out[offset + b++] = (byte) (word >>> shift);
+            }
+        }
+    }
+
+    /**
+     * 64-bit fingerprint of a row.
+     *
+     * Equal rows have equal fingerprints, different rows collide with a
+     * probability of about 2^-64.
+     *
+     * @param row Packed row.
+     * @return Fingerprint.
+     */
+    public static long fingerprint(final long[] row) {
+        long h = FINGERPRINT_SEED;
+        for (long word : row) {
+            h = (h ^ word) * FINGERPRINT_MULTIPLIER;
+            h ^= h >>> FINGERPRINT_SHIFT;
+        }
+        return h;
+    }
+
+    /**
+     * Packs a string of ones and zeroes into a row.
+     *
+     * Characters other than '1' are read as zero cells.
+     *
+     * @param line Row as a string of ones and zeroes.
+     * @param width Row width in cells, extra characters are ignored.
+     * @return Packed row.
+     */
+    public static long[] fromString(final String line, final int width) {
+        final long[] row = newRow(width);
+        final int n = Math.min(line.length(), width);
+        for (int i = 0; i < n; i++) {
+            if (line.charAt(i) == '1') {
+                row[i >>> WORD_SHIFT] |= 1L << i;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Unpacks a row into a string of ones and zeroes.
+     *
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @return Row as a string.
+     */
+    public static String toString(final long[] row, final int width) {
+        final StringBuilder sb = new StringBuilder(width);
+        for (int i = 0; i < width; i++) {
+            sb.append(get(row, i) ? '1' : '0');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Boundary.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Boundary condition of a finite lattice.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public enum Boundary {
+    /**
+     * Lattice wraps around, the leftmost and rightmost cells are neighbors.
+     */
+    PERIODIC,
+
+    /**
+     * Cells outside the lattice are always zero.
+     */
+    FIXED;
+}
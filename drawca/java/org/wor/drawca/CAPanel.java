@@ -25,19 +25,35 @@ import static java.lang.System.out;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
-import java.util.Random;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 /**
  * Cellular automata panel.
  *
+ * Rows can be drawn directly with {@link #drawCellularAutomataIteration()}
+ * or by a producer thread started with {@link #startProducer(int)}. The
+ * producer draws rows as they are requested and publishes the number of
+ * finished rows through a volatile counter; a Swing timer repaints at most
+ * at the given frame rate when new rows have been published, so the event
+ * dispatch thread never computes rows.
+ *
+ * In continuous mode drawing never stops: the image is used as a ring
+ * buffer of rows, row n going to image line n % height, and painted with a
+ * wrap offset so that the newest row is at the bottom.
+ *
  * @author "Esa Määttä" (esa.maatta@iki.fi)
  * @version
  */
@@ -48,11 +64,42 @@ public class CAPanel extends JPanel {
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Image format used unless chosen otherwise.
+     */
+    public static final ImageBacking DEFAULT_BACKING = ImageBacking.BINARY;
+
+    /**
+     * Color of the cells where a twin run differs, see
+     * {@link #setDamageCell(int)}.
+     */
+    public static final Color DAMAGE_COLOR = Color.RED;
+
+    /**
+     * Palette index of {@link #DAMAGE_COLOR}.
+     */
+    private static final byte DAMAGE_INDEX = 2;
+
+    /**
+     * Milliseconds in a second.
+     */
+    private static final int MILLIS_PER_SECOND = 1000;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
     /**
      * Panel background image.
      */
     private BufferedImage backgroundImage;
 
+    /**
+     * Writes rows into the background image in place.
+     */
+    private RowRaster raster;
+
     /**
      * Panel width.
      */
@@ -66,18 +113,150 @@ public class CAPanel extends JPanel {
     /**
      * Current iteration/line of the cellular automata being drawn.
      */
-    private int iteration;
+    private long iteration;
 
     /**
      * Rule used to draw the cellular automata.
      */
     private Rule rule;
 
+    /**
+     * Process wide metrics.
+     */
+    private final DrawCAMetrics metrics = DrawCAMetrics.get();
+
+    /**
+     * Seed of the random initial line.
+     */
+    private long seed = System.nanoTime();
+
+    /**
+     * Density of one cells in the random initial line.
+     */
+    private double density = SeedGenerator.DEFAULT_DENSITY;
+
+    /**
+     * Cell flipped in the perturbed twin run, -1 for no twin run.
+     */
+    private int damageCell = -1;
+
+    /**
+     * Twin run when drawing damage, created with the initial row.
+     */
+    private DamageSpreading damage;
+
+    /**
+     * Raster of the damage colors, or null.
+     */
+    private IndexedRowRaster damageRaster;
+
+    /**
+     * Analysis stage getting every drawn row, or null.
+     */
+    private RowSink analysis;
+
+    /**
+     * Time the newest row was published.
+     */
+    private volatile long publishedNanos;
+
+    /**
+     * Rows painted when the repaint latency was last recorded, used on the
+     * EDT only.
+     */
+    private long latencyRows;
+
     /**
      * Initial/first line of the cellular automata if given before hand.
      */
     private String initialLine;
 
+    /**
+     * Initial line as a packed row, used instead of initialLine if set.
+     */
+    private long[] initialRow;
+
+    /**
+     * Engine computing the next line from the current one.
+     */
+    private RowEngine engine;
+
+    /**
+     * Most recently drawn line as a packed row.
+     */
+    private long[] currentRow;
+
+    /**
+     * Buffer for the line being computed.
+     */
+    private long[] nextRow;
+
+    /**
+     * Stored generations to display instead of computing, null if none.
+     */
+    private HistoryStore history;
+
+    /**
+     * Set when reading the history failed and no more rows can be drawn.
+     */
+    private boolean historyFailed;
+
+    /**
+     * Rows completely written to the image, published by the producer.
+     */
+    private volatile long publishedRows;
+
+    /**
+     * Rows the producer has been asked to draw.
+     */
+    private final AtomicLong requestedRows = new AtomicLong();
+
+    /**
+     * Producer thread, null until started.
+     */
+    private transient Thread producer;
+
+    /**
+     * Timer repainting published rows, null until started.
+     */
+    private Timer repaintTimer;
+
+    /**
+     * Rows visible after the last repaint request, used on the EDT only.
+     */
+    private long paintedRows;
+
+    /**
+     * Keep drawing forever, reusing the image as a ring buffer of rows.
+     */
+    private boolean continuous;
+
+    /**
+     * Draw the measured throughput over the image.
+     */
+    private boolean showThroughput;
+
+    /**
+     * Target rows per second of the producer, zero for unlimited.
+     */
+    private double targetRowsPerSecond;
+
+    /**
+     * Time of the last throughput measurement, used on the EDT only.
+     */
+    private long rateTime;
+
+    /**
+     * Published rows at the last throughput measurement, used on the EDT
+     * only.
+     */
+    private long rateRows;
+
+    /**
+     * Latest measured rows per second, used on the EDT only.
+     */
+    private double rowsPerSecond;
+
     /**
      * Constructs panel to which cellular automata is drawn.
      *
@@ -91,15 +270,69 @@ public class CAPanel extends JPanel {
      */
     public CAPanel(final int width, final int heigth, final float xScaleFactor,
             final float yScaleFactor, final int rule, final String initialLine)
+    {
+        this(width, heigth, xScaleFactor, yScaleFactor, rule, initialLine,
+                DEFAULT_BACKING);
+    }
+
+    /**
+     * Constructs panel with a chosen image format.
+     *
+     * for base parameters see:
+     * {@link CAPanel#CAPanel(int, int, float, float, int, String)}
+     *
+     * @param backing Pixel format of the background image.
+     */
+    public CAPanel(final int width, final int heigth, final float xScaleFactor,
+            final float yScaleFactor, final int rule, final String initialLine,
+            final ImageBacking backing)
     {
         super();
         iteration = 0;
         xScaled = width;
         yScaled = heigth;
-        backgroundImage = new BufferedImage((int) (width / xScaleFactor),
-                (int) (heigth / yScaleFactor), BufferedImage.TYPE_INT_ARGB);
+        raster = backing.create((int) (width / xScaleFactor),
+                (int) (heigth / yScaleFactor));
+        backgroundImage = raster.getImage();
         this.rule = new Rule(rule);
         this.initialLine = initialLine;
+        engine = new BitPackedEngine(this.rule,
+                backgroundImage.getWidth());
+    }
+
+    /**
+     * Constructs panel which displays stored generations instead of
+     * computing them.
+     *
+     * @param width Panel width.
+     * @param heigth Panel height.
+     * @param xScaleFactor Scaling factor of pixels drawn in x-axis.
+     * @param yScaleFactor Scaling factor of pixels darwn in y-axis.
+     * @param history Stored generations, one line is drawn per generation.
+     */
+    public CAPanel(final int width, final int heigth, final float xScaleFactor,
+            final float yScaleFactor, final HistoryStore history)
+    {
+        this(width, heigth, xScaleFactor, yScaleFactor, history,
+                DEFAULT_BACKING);
+    }
+
+    /**
+     * Constructs panel which displays stored generations with a chosen
+     * image format.
+     *
+     * for base parameters see:
+     * {@link CAPanel#CAPanel(int, int, float, float, HistoryStore)}
+     *
+     * @param backing Pixel format of the background image.
+     */
+    public CAPanel(final int width, final int heigth, final float xScaleFactor,
+            final float yScaleFactor, final HistoryStore history,
+            final ImageBacking backing)
+    {
+        this(width, heigth, xScaleFactor, yScaleFactor, history.getRule(),
+                "", backing);
+        this.history = history;
     }
 
     /**
@@ -108,9 +341,316 @@ public class CAPanel extends JPanel {
      */
     public final void paintComponent(final Graphics g) {
         super.paintComponent(g);
+        // Cells are scaled to blocks, never blurred.
+        ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
 
-        // Draw background image each time the panel is repainted.
-        g.drawImage(backgroundImage, 0, 0, xScaled, yScaled, null);
+        // Draw background image each time the panel is repainted. With a
+        // producer only published rows are drawn; reading the count makes
+        // them visible to this thread.
+        final int w = backgroundImage.getWidth();
+        final int h = backgroundImage.getHeight();
+        final long rows = producer != null ? publishedRows : h;
+        if (rows <= h) {
+            g.drawImage(backgroundImage, 0, 0, xScaled, scaleY(rows), 0, 0,
+                    w, (int) rows, null);
+        } else {
+            // Ring buffer: the oldest row follows the newest one. The slot
+            // after the newest row is being overwritten, so h - 1 rows are
+            // shown.
+            final int newest = (int) ((rows - 1) % h);
+            final int oldest = (newest + 2) % h;
+            if (oldest > newest) {
+                final int top = h - oldest;
+                g.drawImage(backgroundImage, 0, 0, xScaled, scaleY(top), 0,
+                        oldest, w, h, null);
+                g.drawImage(backgroundImage, 0, scaleY(top), xScaled,
+                        scaleY(top + newest + 1), 0, 0, w, newest + 1, null);
+            } else {
+                g.drawImage(backgroundImage, 0, 0, xScaled,
+                        scaleY(newest + 1 - oldest), 0, oldest, w,
+                        newest + 1, null);
+            }
+        }
+        if (showThroughput && producer != null) {
+            drawThroughput(g);
+        }
+        if (producer != null && rows > latencyRows) {
+            latencyRows = rows;
+            metrics.recordRepaint(System.nanoTime() - publishedNanos);
+        }
+    }
+
+    /**
+     * Converts image rows to panel pixels.
+     *
+     * @param rows Image rows.
+     * @return Panel height of the rows.
+     */
+    private int scaleY(final long rows) {
+        return (int) (rows * yScaled / backgroundImage.getHeight());
+    }
+
+    /**
+     * Draws the measured throughput in the top left corner.
+     *
+     * @param g Panel graphics.
+     */
+    private void drawThroughput(final Graphics g) {
+        final String text = String.format("%,.0f rows/s, %,d rows",
+                rowsPerSecond, publishedRows);
+        final int pad = 4;
+        final int textWidth = g.getFontMetrics().stringWidth(text);
+        final int textHeight = g.getFontMetrics().getHeight();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, textWidth + 2 * pad, textHeight + pad);
+        g.setColor(Color.BLACK);
+        g.drawString(text, pad, g.getFontMetrics().getAscent() + pad / 2);
+    }
+
+    /**
+     * Keeps drawing after the image is full, overwriting the oldest rows.
+     * Must be called before {@link #startProducer(int)}.
+     *
+     * @param continuous Draw forever?
+     */
+    public final void setContinuous(final boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    /**
+     * Sets the initial line as a packed row, such as one read by
+     * {@link SeedLoader}. Cells beyond the image width are dropped.
+     *
+     * @param initialRow Packed row, not copied.
+     */
+    public final void setInitialRow(final long[] initialRow) {
+        this.initialRow = initialRow;
+    }
+
+    /**
+     * Sets how the initial line is generated when none is given.
+     *
+     * @param seed Seed, the same seed gives the same line.
+     * @param density Probability of a one cell [0-1].
+     */
+    public final void setRandomSeed(final long seed, final double density) {
+        // Fails early on a density out of range.
+        SeedGenerator.fraction(density);
+        this.seed = seed;
+        this.density = density;
+    }
+
+    /**
+     * Runs a twin of the automaton whose initial row has one cell flipped
+     * and draws the cells where the two differ in {@link #DAMAGE_COLOR}.
+     * Must be called before {@link #setupBackground()}, replaces the image
+     * with an indexed one.
+     *
+     * @param cell Cell to flip, -1 for none.
+     */
+    public final void setDamageCell(final int cell) {
+        if (cell < -1 || cell >= backgroundImage.getWidth()) {
+            throw new IllegalArgumentException("Cell out of range: " + cell);
+        }
+        damageCell = cell;
+        if (cell >= 0) {
+            damageRaster = new IndexedRowRaster(backgroundImage.getWidth(),
+                    backgroundImage.getHeight(), new int[] {
+                        Rule.COLOR_TO_CHAR.inverse().get('0'),
+                        Rule.COLOR_TO_CHAR.inverse().get('1'),
+                        DAMAGE_COLOR.getRGB()});
+            raster = damageRaster;
+            backgroundImage = raster.getImage();
+        }
+    }
+
+    /**
+     * Sets an analysis stage, such as {@link StatsSink}, getting each row
+     * as it is drawn. It is dropped if it fails.
+     *
+     * @param analysis Row sink or null, called on the drawing thread.
+     */
+    public final void setAnalysis(final RowSink analysis) {
+        this.analysis = analysis;
+    }
+
+    /**
+     * Shows the rows per second drawn by the producer in the top left
+     * corner.
+     *
+     * @param showThroughput Show the throughput?
+     */
+    public final void setShowThroughput(final boolean showThroughput) {
+        this.showThroughput = showThroughput;
+    }
+
+    /**
+     * Limits the rate at which the producer draws rows.
+     * Must be called before {@link #startProducer(int)}.
+     *
+     * @param rowsPerSecond Target rows per second, zero for unlimited.
+     */
+    public final void setTargetRowsPerSecond(final double rowsPerSecond) {
+        if (rowsPerSecond < 0) {
+            throw new IllegalArgumentException(
+                    "Rows per second must not be negative: " + rowsPerSecond);
+        }
+        targetRowsPerSecond = rowsPerSecond;
+    }
+
+    /**
+     * Starts the producer thread and the repaint timer.
+     *
+     * Nothing is drawn until rows are requested with
+     * {@link #requestRows(int)}. Must be called on the EDT.
+     *
+     * @param fps Maximum number of repaints per second.
+     */
+    public final void startProducer(final int fps) {
+        if (producer != null) {
+            throw new IllegalStateException("Producer already started");
+        }
+        producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                produce();
+            }
+        }, "ca-producer");
+        producer.setDaemon(true);
+        producer.start();
+
+        repaintTimer = new Timer(Math.max(1, MILLIS_PER_SECOND / fps),
+                new ActionListener() {
+                    @Override
+                    public void actionPerformed(final ActionEvent e) {
+                        measureThroughput();
+                        final long rows = publishedRows;
+                        if (rows != paintedRows) {
+                            repaintRows(paintedRows, rows);
+                            paintedRows = rows;
+                        }
+                    }
+                });
+        repaintTimer.setCoalesce(true);
+        repaintTimer.start();
+    }
+
+    /**
+     * Repaints the panel after rows were published, only the strip of the
+     * new rows if nothing else moved.
+     *
+     * @param from Rows painted before.
+     * @param to Rows published now.
+     */
+    private void repaintRows(final long from, final long to) {
+        final Rectangle dirty = dirtyRegion(from, to);
+        if (dirty == null) {
+            repaint();
+        } else {
+            repaint(dirty);
+        }
+    }
+
+    /**
+     * Panel area changed by publishing new rows.
+     *
+     * @param from Rows painted before.
+     * @param to Rows published now.
+     * @return Area of the new rows, null if the whole panel changed because
+     * the ring buffer scrolled or the throughput overlay is shown.
+     */
+    final Rectangle dirtyRegion(final long from, final long to) {
+        if (to > backgroundImage.getHeight() || to < from || showThroughput) {
+            return null;
+        }
+        // Round outwards so partially covered pixel rows are included.
+        final int top = scaleY(from);
+        final int bottom = (int) Math.ceil((double) to * yScaled
+                / backgroundImage.getHeight());
+        return new Rectangle(0, top, xScaled, bottom - top);
+    }
+
+    /**
+     * Updates the measured rows per second about twice a second.
+     */
+    private void measureThroughput() {
+        final long now = System.nanoTime();
+        if (now - rateTime >= NANOS_PER_SECOND / 2) {
+            final long rows = publishedRows;
+            rowsPerSecond = (rows - rateRows) * (double) NANOS_PER_SECOND
+                / (now - rateTime);
+            rateTime = now;
+            rateRows = rows;
+        }
+    }
+
+    /**
+     * Asks the producer to draw more rows. Returns immediately.
+     *
+     * @param rows Number of additional rows.
+     */
+    public final void requestRows(final long rows) {
+        long old;
+        long updated;
+        do {
+            old = requestedRows.get();
+            updated = old + rows < old ? Long.MAX_VALUE : old + rows;
+        } while (!requestedRows.compareAndSet(old, updated));
+        LockSupport.unpark(producer);
+    }
+
+    /**
+     * Stops the producer thread and the repaint timer.
+     */
+    public final void stopProducer() {
+        if (producer != null) {
+            producer.interrupt();
+            repaintTimer.stop();
+        }
+    }
+
+    /**
+     * Number of rows published by the producer.
+     *
+     * @return Rows drawn to the image.
+     */
+    public final long getPublishedRows() {
+        return publishedRows;
+    }
+
+    /**
+     * Producer loop, draws requested rows until the image is full.
+     */
+    private void produce() {
+        final long start = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted() && !isFinished()) {
+            if (iteration >= requestedRows.get()) {
+                LockSupport.park(this);
+            } else if (targetRowsPerSecond > 0 && iteration
+                    >= (double) (System.nanoTime() - start) / NANOS_PER_SECOND
+                    * targetRowsPerSecond) {
+                // Ahead of the target rate, wait for the next row's turn.
+                final long due = start + (long) ((iteration + 1)
+                        * NANOS_PER_SECOND / targetRowsPerSecond);
+                LockSupport.parkNanos(this, due - System.nanoTime());
+            } else {
+                drawCellularAutomataIteration();
+                publishedNanos = System.nanoTime();
+                publishedRows = iteration;
+            }
+        }
+    }
+
+    /**
+     * Tells whether no more rows can be drawn.
+     *
+     * @return True if the image is full or the history has no more rows.
+     */
+    private boolean isFinished() {
+        return (!continuous && iteration >= backgroundImage.getHeight())
+            || historyFailed
+            || (history != null && iteration >= history.getRowCount());
     }
 
     /**
@@ -136,86 +676,104 @@ public class CAPanel extends JPanel {
         Graphics2D g2d = backgroundImage.createGraphics();
 
         // Fill bg color
+        setBackground(Color.WHITE);
         g2d.setColor(Color.WHITE);
         g2d.fillRect(0, 0, xScaled, yScaled);
-
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.dispose();
     }
 
     /**
      * Draws one line (iteration) of cellular automata.
      */
     public final void drawCellularAutomataIteration() {
-        Raster r = backgroundImage.getData();
-        DataBuffer b = r.getDataBuffer();
         boolean useRandInit = true;
         final Logger log = Logger.getGlobal();
+        final int w = backgroundImage.getWidth();
 
-        if (iteration >= backgroundImage.getHeight()) {
+        if (!continuous && iteration >= backgroundImage.getHeight()) {
             return;
+        } else if (history != null) {
+            if (iteration >= history.getRowCount()) {
+                return;
+            }
+            if (currentRow == null) {
+                currentRow = BitRows.newRow(history.getWidth());
+            }
+            try {
+                history.readRow(iteration, currentRow);
+            } catch (IOException e) {
+                log.severe("Reading history failed: " + e);
+                historyFailed = true;
+                return;
+            }
         } else if (iteration == 0) {
-            if (initialLine.length() > 0) {
-                for (int i = 0; i < initialLine.length(); i++) {
-                    b.setElem(i,
-                            Rule.COLOR_TO_CHAR
-                            .inverse()
-                            .get(initialLine.charAt(i)));
-                }
+            if (initialRow != null) {
+                currentRow = Arrays.copyOf(initialRow, BitRows.wordCount(w));
+                currentRow[currentRow.length - 1] &= BitRows.lastWordMask(w);
+            } else if (initialLine.length() > 0) {
+                currentRow = BitRows.fromString(initialLine, w);
+            } else if (useRandInit) {
+                currentRow = SeedGenerator.randomRow(w, density, seed);
             } else {
-                Random rand = new Random();
-                for (int i = 0; i < backgroundImage.getWidth(); i++) {
-                    if (useRandInit) {
-                        if (rand.nextBoolean()) {
-                            b.setElem(i, Color.BLACK.getRGB());
-                        }
-                    } else if ((i & 1) == 0) {
+                currentRow = BitRows.newRow(w);
+                for (int i = 0; i < w; i++) {
+                    if ((i & 1) == 0) {
                         // Yes this is just an "even" check ;)
                         // (Javas '%' isn't the mod operation
                         // it's the remainder.)
-                        b.setElem(i, Color.BLACK.getRGB());
+                        BitRows.set(currentRow, i, true);
                     }
                 }
             }
+            nextRow = BitRows.newRow(w);
+            if (damageRaster != null) {
+                damage = new DamageSpreading(engine, currentRow,
+                        DamageSpreading.flip(currentRow, w, damageCell));
+            }
         } else {
-            int w = backgroundImage.getWidth();
-
             if (log.isLoggable(Level.FINER)) {
                 // Print previous line as ones and zeroes
-                out.print((iteration - 1) + ": ");
-                for (int i = (iteration - 1) * w; i < (iteration * w); i++) {
-                    out.print(Rule.COLOR_TO_CHAR.get(b.getElem(i)));
-                }
-                out.println("");
+                out.println((iteration - 1) + ": "
+                        + BitRows.toString(currentRow, w));
             }
 
             log.finest("-----------NEW LINE---------");
-            int lastLineOffset = (iteration - 1) * w;
-            for (int i = 0; i < w; i++) {
-                int left = ((i - 1) % w + w) % w  + lastLineOffset;
-                int middle = i + lastLineOffset;
-                int right = (i + 1) % w + lastLineOffset;
-                int current = i + iteration * w;
-
-                Character c = rule.getValue(b.getElem(left), b.getElem(middle),
-                        b.getElem(right));
-
-                if (log.isLoggable(Level.FINEST)) {
-                    out.println("left   i/c: " + left   + " : "
-                            + b.getElem(left)); out.println("middle i/c: "
-                            + middle + " : " + b.getElem(middle));
-                    out.println("right  i/c: " + right  + " : "
-                            + b.getElem(right)); out.println("char: " + c);
-                    out.println("abs pos i=[" + current + "," + (iteration + 1)
-                            * w + "] line " + iteration + " pos: i=" + i);
-                    out.println("=============");
-                }
+            final long start = System.nanoTime();
+            RowTracer.Span span = metrics.tracer().begin(
+                    RowTracer.SIMULATION);
+            if (damage != null) {
+                damage.step();
+                currentRow = damage.getOriginal();
+            } else {
+                engine.step(currentRow, nextRow);
+                long[] tmp = currentRow;
+                currentRow = nextRow;
+                nextRow = tmp;
+            }
+            span.end(iteration, w);
+            metrics.recordSimulation(1, w, System.nanoTime() - start);
+        }
 
-                b.setElem(current, Rule.COLOR_TO_CHAR.inverse().get(c));
+        final long start = System.nanoTime();
+        RowTracer.Span span = metrics.tracer().begin(RowTracer.RASTER);
+        final int y = (int) (iteration % backgroundImage.getHeight());
+        if (damage != null) {
+            damageRaster.writeOverlay(y, currentRow, damage.getDifference(),
+                    DAMAGE_INDEX);
+        } else {
+            raster.writeRow(y, currentRow);
+        }
+        span.end(iteration, w);
+        metrics.recordRaster(1, System.nanoTime() - start);
+        if (analysis != null) {
+            try {
+                analysis.writeRow(iteration, currentRow);
+            } catch (IOException e) {
+                log.severe("Row analysis failed: " + e);
+                analysis = null;
             }
         }
         iteration++;
-        backgroundImage.setData(r);
     }
 
     /**
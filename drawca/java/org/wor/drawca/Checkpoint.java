@@ -0,0 +1,356 @@
+/**
+ * Checkpoint.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * State of a headless run from which it can be continued with identical
+ * results: the current row, its position in the run, the rule, boundary
+ * and the seed of the random initial row.
+ *
+ * The file is a {@link #HEADER_BYTES} byte header followed by the row as
+ * little-endian longs and a CRC-32 of everything before it. A new
+ * checkpoint is written to a temporary file which is then atomically moved
+ * over the old one; the old one is kept with the {@link #PREVIOUS_SUFFIX}
+ * suffix so that one good checkpoint exists at any moment.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class Checkpoint {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(Checkpoint.class.getName());
+
+    /**
+     * Suffix of the previous checkpoint file.
+     */
+    public static final String PREVIOUS_SUFFIX = ".prev";
+
+    /**
+     * Suffix of the checkpoint file being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * File magic, "DCAC".
+     */
+    private static final int MAGIC = 0x44434143;
+
+    /**
+     * File format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    public static final int HEADER_BYTES = 64;
+
+    /**
+     * Bytes of a packed word.
+     */
+    private static final int WORD_BYTES = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Bytes of the trailing checksum.
+     */
+    private static final int CRC_BYTES = Integer.SIZE / Byte.SIZE;
+
+    /**
+     * Rule number.
+     */
+    private final int rule;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Seed of the random initial row.
+     */
+    private final long seed;
+
+    /**
+     * Generation of the first row of the run.
+     */
+    private final long firstGeneration;
+
+    /**
+     * Index of the row in the run, rows before it are already written.
+     */
+    private final long rowIndex;
+
+    /**
+     * Number of rows in the whole run.
+     */
+    private final long rows;
+
+    /**
+     * Packed row at rowIndex.
+     */
+    private final long[] row;
+
+    /**
+     * Constructs checkpoint.
+     *
+     * @param rule Rule number.
+     * @param boundary Boundary condition.
+     * @param width Row width in cells.
+     * @param seed Seed of the random initial row.
+     * @param firstGeneration Generation of the first row of the run.
+     * @param rowIndex Index of the row in the run.
+     * @param rows Number of rows in the whole run.
+     * @param row Packed row at rowIndex, not copied.
+     */
+    public Checkpoint(final int rule, final Boundary boundary,
+            final int width, final long seed, final long firstGeneration,
+            final long rowIndex, final long rows, final long[] row) {
+        if (row.length != BitRows.wordCount(width)) {
+            throw new IllegalArgumentException("Row doesn't match width "
+                    + width);
+        }
+        this.rule = rule;
+        this.boundary = boundary;
+        this.width = width;
+        this.seed = seed;
+        this.firstGeneration = firstGeneration;
+        this.rowIndex = rowIndex;
+        this.rows = rows;
+        this.row = row;
+    }
+
+    /**
+     * Reads a checkpoint and verifies its checksum.
+     *
+     * @param file Checkpoint file.
+     * @return Checkpoint.
+     * @throws IOException If the file can't be read, is truncated or its
+     * checksum doesn't match.
+     */
+    public static Checkpoint read(final Path file) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < HEADER_BYTES + CRC_BYTES) {
+            throw new IOException("Truncated checkpoint: " + file);
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        final int end = bytes.length - CRC_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, end);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Not a checkpoint: " + file);
+        } else if ((int) crc.getValue() != in.getInt(end)) {
+            throw new IOException("Checkpoint checksum mismatch: " + file);
+        }
+        final int rule = in.getInt();
+        final int boundary = in.getInt();
+        final int width = in.getInt();
+        in.getInt();
+        final long seed = in.getLong();
+        final long firstGeneration = in.getLong();
+        final long rowIndex = in.getLong();
+        final long rows = in.getLong();
+        if (width < 1 || boundary < 0 || boundary >= Boundary.values().length
+                || end != HEADER_BYTES
+                    + (long) BitRows.wordCount(width) * WORD_BYTES) {
+            throw new IOException("Corrupt checkpoint: " + file);
+        }
+        final long[] row = BitRows.newRow(width);
+        in.position(HEADER_BYTES);
+        in.asLongBuffer().get(row);
+        return new Checkpoint(rule, Boundary.values()[boundary], width, seed,
+                firstGeneration, rowIndex, rows, row);
+    }
+
+    /**
+     * Reads the last good checkpoint, the previous one if the latest is
+     * missing or damaged.
+     *
+     * @param file Checkpoint file.
+     * @return Checkpoint.
+     * @throws IOException If neither checkpoint can be read.
+     */
+    public static Checkpoint readLatest(final Path file) throws IOException {
+        try {
+            return read(file);
+        } catch (IOException e) {
+            final Path previous = sibling(file, PREVIOUS_SUFFIX);
+            if (!Files.exists(previous)) {
+                throw e;
+            }
+            LOG.warning("Using previous checkpoint, " + e.getMessage());
+            try {
+                return read(previous);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes the checkpoint durably, keeping the old checkpoint as the
+     * previous one.
+     *
+     * @param file Checkpoint file.
+     * @throws IOException If writing fails.
+     */
+    public void write(final Path file) throws IOException {
+        final int end = HEADER_BYTES + row.length * WORD_BYTES;
+        ByteBuffer out = ByteBuffer.allocate(end + CRC_BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION).putInt(rule)
+            .putInt(boundary.ordinal()).putInt(width).putInt(0)
+            .putLong(seed).putLong(firstGeneration).putLong(rowIndex)
+            .putLong(rows);
+        out.position(HEADER_BYTES);
+        out.asLongBuffer().put(row);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, end);
+        out.putInt(end, (int) crc.getValue());
+
+        final Path temp = sibling(file, TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.rewind();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        if (Files.exists(file)) {
+            Files.move(file, sibling(file, PREVIOUS_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * File next to the checkpoint file.
+     *
+     * @param file Checkpoint file.
+     * @param suffix Suffix added to the file name.
+     * @return Path of the sibling.
+     */
+    static Path sibling(final Path file, final String suffix) {
+        return file.resolveSibling(file.getFileName() + suffix);
+    }
+
+    /**
+     * Rule number.
+     *
+     * @return Rule number [0-255].
+     */
+    public int getRule() {
+        return rule;
+    }
+
+    /**
+     * Boundary condition.
+     *
+     * @return Boundary condition.
+     */
+    public Boundary getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Row width in cells.
+     *
+     * @return Width.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Seed of the random initial row.
+     *
+     * @return Seed.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Generation of the first row of the run.
+     *
+     * @return First generation.
+     */
+    public long getFirstGeneration() {
+        return firstGeneration;
+    }
+
+    /**
+     * Index of the row in the run, rows before it are already written.
+     *
+     * @return Row index.
+     */
+    public long getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * Generation of the row.
+     *
+     * @return First generation plus row index.
+     */
+    public long getGeneration() {
+        return firstGeneration + rowIndex;
+    }
+
+    /**
+     * Number of rows in the whole run.
+     *
+     * @return Rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Packed row at the row index.
+     *
+     * @return Row shared with the checkpoint.
+     */
+    public long[] getRow() {
+        return row;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * CheckpointWriter.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Row sink which writes a {@link Checkpoint} every n rows.
+ *
+ * The stepping thread only copies the row, the file is written by a
+ * background thread. If the previous checkpoint is still being written
+ * the older pending one is replaced, so a slow disk never stalls the run.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class CheckpointWriter implements RowSink {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(CheckpointWriter.class.getName());
+
+    /**
+     * Longest wait for the last checkpoint on close.
+     */
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Checkpoint file.
+     */
+    private final Path file;
+
+    /**
+     * Run state other than the row, row index and rows are filled in.
+     */
+    private final Checkpoint run;
+
+    /**
+     * Rows between checkpoints.
+     */
+    private final long every;
+
+    /**
+     * Writer thread.
+     */
+    private final ExecutorService writer;
+
+    /**
+     * Newest checkpoint not yet written, null if none.
+     */
+    private final AtomicReference<Checkpoint> pending =
+        new AtomicReference<Checkpoint>();
+
+    /**
+     * First write failure, reported on the next row.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Number of checkpoints written.
+     */
+    private volatile long written;
+
+    /**
+     * Constructs writer.
+     *
+     * @param file Checkpoint file.
+     * @param run State of the run, the row of it is not used.
+     * @param every Rows between checkpoints, at least one.
+     */
+    public CheckpointWriter(final Path file, final Checkpoint run,
+            final long every) {
+        if (every < 1) {
+            throw new IllegalArgumentException(
+                    "Checkpoint interval must be positive: " + every);
+        }
+        this.file = file;
+        this.run = run;
+        this.every = every;
+        writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "drawca-checkpoint");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Number of checkpoints written so far.
+     *
+     * @return Written checkpoints.
+     */
+    public final long getWritten() {
+        return written;
+    }
+
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (generation == run.getRowIndex() || generation % every != 0) {
+            return;
+        }
+        Checkpoint checkpoint = new Checkpoint(run.getRule(),
+                run.getBoundary(), run.getWidth(), run.getSeed(),
+                run.getFirstGeneration(), generation, run.getRows(),
+                row.clone());
+        if (pending.getAndSet(checkpoint) == null) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writePending();
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the newest pending checkpoint on the writer thread.
+     */
+    private void writePending() {
+        Checkpoint checkpoint = pending.getAndSet(null);
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.write(file);
+            written++;
+            LOG.fine("Checkpoint at row " + checkpoint.getRowIndex());
+        } catch (IOException e) {
+            LOG.severe("Writing checkpoint failed: " + e);
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Waits for the pending checkpoint and stops the writer thread.
+     *
+     * @throws IOException If a checkpoint couldn't be written.
+     */
+    @Override
+    public final void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS,
+                        TimeUnit.SECONDS)) {
+                throw new IOException("Checkpoint writer timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for checkpoint", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * CompiledRule.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Elementary rule compiled into primitive lookup tables.
+ *
+ * Besides the 8-entry neighborhood table, window tables map a window of
+ * consecutive cells to several output cells, optionally several
+ * generations ahead. In a window of n + 2g cells bit j is cell (x - g + j)
+ * and the looked up value holds cells x..x+n-1 after g generations, least
+ * significant bit first like in {@link BitRows}.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class CompiledRule {
+    /**
+     * Number of different 3-cell neighborhoods.
+     */
+    public static final int NEIGHBORHOODS = 8;
+
+    /**
+     * Output cells of a byte window table.
+     */
+    public static final int BYTE_CELLS = Byte.SIZE;
+
+    /**
+     * Output cells of a short window table.
+     */
+    public static final int SHORT_CELLS = Short.SIZE;
+
+    /**
+     * Largest supported window in cells, keeps tables addressable by int.
+     */
+    public static final int MAX_WINDOW = 30;
+
+    /**
+     * Rule number [0-255].
+     */
+    private final int number;
+
+    /**
+     * New cell value [0-1] per neighborhood.
+     */
+    private final byte[] bitTable;
+
+    /**
+     * Rule output per neighborhood as all-ones or all-zeroes word.
+     */
+    private final long[] minterms;
+
+    /**
+     * Compiles given rule number.
+     *
+     * @param number Rule number [0-255].
+     */
+    public CompiledRule(final int number) {
+        this.number = number;
+        bitTable = new byte[NEIGHBORHOODS];
+        minterms = new long[NEIGHBORHOODS];
+        for (int i = 0; i < NEIGHBORHOODS; i++) {
+            bitTable[i] = (byte) ((number >>> i) & 1);
+            minterms[i] = bitTable[i] != 0 ? -1L : 0L;
+        }
+    }
+
+    /**
+     * Gets the rule number.
+     *
+     * @return Rule number [0-255].
+     */
+    public int getNumber() {
+        return number;
+    }
+
+    /**
+     * Rule output of a neighborhood as a whole word, for word-wide
+     * evaluation outside of {@link #applyWord(long, long, long)}.
+     *
+     * @param neighborhood Neighborhood as binary number (left, middle, right)
+     * [0-7].
+     * @return All ones if the new cell is one, otherwise zero.
+     */
+    public long minterm(final int neighborhood) {
+        return minterms[neighborhood];
+    }
+
+    /**
+     * Looks up new cell value of a neighborhood.
+     *
+     * @param neighborhood Neighborhood as binary number (left, middle, right)
+     * [0-7].
+     * @return New cell value [0-1].
+     */
+    public int lookup(final int neighborhood) {
+        return bitTable[neighborhood];
+    }
+
+    /**
+     * Looks up new cell value of a neighborhood.
+     *
+     * @param left Left cell value [0-1].
+     * @param middle Middle cell value [0-1].
+     * @param right Right cell value [0-1].
+     * @return New cell value [0-1].
+     */
+    public int lookup(final int left, final int middle, final int right) {
+        return bitTable[(left << 2) | (middle << 1) | right];
+    }
+
+    /**
+     * Evaluates the rule for 64 neighborhoods at once.
+     *
+     * @param l Left neighbors.
+     * @param c Middle cells.
+     * @param r Right neighbors.
+     * @return New cell values.
+     */
+    public long applyWord(final long l, final long c, final long r) {
+        final long[] m = minterms;
+        // Select by right, then middle, then left neighbor.
+        final long h00 = (r & m[1]) | (~r & m[0]);
+        final long h01 = (r & m[3]) | (~r & m[2]);
+        final long h10 = (r & m[5]) | (~r & m[4]);
+        final long h11 = (r & m[7]) | (~r & m[6]);
+        final long g0 = (c & h01) | (~c & h00);
+        final long g1 = (c & h11) | (~c & h10);
+        return (l & g1) | (~l & g0);
+    }
+
+    /**
+     * Applies the rule to a window without wraparound.
+     *
+     * @param window Window cells, least significant bit first.
+     * @param cells Number of cells in the window.
+     * @param generations Generations to compute.
+     * @return The (cells - 2 * generations) cells that stay determined.
+     */
+    public long applyWindow(final long window, final int cells,
+            final int generations) {
+        long v = window;
+        int n = cells;
+        for (int g = 0; g < generations; g++) {
+            v = applyWord(v, v >>> 1, v >>> 2);
+            n -= 2;
+            v &= n == Long.SIZE ? -1L : (1L << n) - 1;
+        }
+        return v;
+    }
+
+    /**
+     * Number of cells in the window of a window table.
+     *
+     * @param outputCells Output cells per lookup.
+     * @param generations Generations per lookup.
+     * @return Window size in cells.
+     */
+    public static int windowCells(final int outputCells,
+            final int generations) {
+        return outputCells + 2 * generations;
+    }
+
+    /**
+     * Size of a window table in bytes.
+     *
+     * @param outputCells Output cells per lookup, {@link #BYTE_CELLS} or
+     * {@link #SHORT_CELLS}.
+     * @param generations Generations per lookup.
+     * @return Table size in bytes.
+     */
+    public static long tableBytes(final int outputCells,
+            final int generations) {
+        return (1L << windowCells(outputCells, generations))
+            * (outputCells / Byte.SIZE);
+    }
+
+    /**
+     * Builds table giving 8 output cells per lookup.
+     *
+     * @param generations Generations per lookup, at least one.
+     * @return Table indexed by a window of 8 + 2 * generations cells.
+     */
+    public byte[] byteTable(final int generations) {
+        final int cells = checkWindow(BYTE_CELLS, generations);
+        final byte[] table = new byte[1 << cells];
+        for (int w = 0; w < table.length; w++) {
+            table[w] = (byte) applyWindow(w, cells, generations);
+        }
+        return table;
+    }
+
+    /**
+     * Builds table giving 16 output cells per lookup.
+     *
+     * @param generations Generations per lookup, at least one.
+     * @return Table indexed by a window of 16 + 2 * generations cells.
+     */
+    public short[] shortTable(final int generations) {
+        final int cells = checkWindow(SHORT_CELLS, generations);
+        final short[] table = new short[1 << cells];
+        for (int w = 0; w < table.length; w++) {
+            table[w] = (short) applyWindow(w, cells, generations);
+        }
+        return table;
+    }
+
+    /**
+     * Validates window table parameters.
+     *
+     * @param outputCells Output cells per lookup.
+     * @param generations Generations per lookup.
+     * @return Window size in cells.
+     */
+    private static int checkWindow(final int outputCells,
+            final int generations) {
+        final int cells = windowCells(outputCells, generations);
+        if (generations < 1 || cells > MAX_WINDOW) {
+            throw new IllegalArgumentException("Unsupported window table: "
+                    + outputCells + " cells, " + generations
+                    + " generations");
+        }
+        return cells;
+    }
+}
@@ -0,0 +1,246 @@
+/**
+ * CycleDetector.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.Arrays;
+
+/**
+ * Finds the cycle a finite lattice ends up in and answers later generations
+ * by jumping around the cycle instead of simulating.
+ *
+ * Uses Brent's algorithm: the fingerprint of a saved row is compared with
+ * every new row and the saved row is replaced whenever the distance reaches
+ * the next power of two. Matching fingerprints are confirmed by comparing
+ * the rows, so only a handful of rows are kept in memory however long the
+ * transient or the period.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class CycleDetector {
+    /**
+     * Engine computing the rows.
+     */
+    private final RowEngine engine;
+
+    /**
+     * First row of the run.
+     */
+    private final long[] initialRow;
+
+    /**
+     * Latest row computed while searching.
+     */
+    private long[] lastRow;
+
+    /**
+     * Generation of {@link #lastRow}.
+     */
+    private long lastGeneration;
+
+    /**
+     * First row of the cycle, null until a cycle is found.
+     */
+    private long[] cycleStart;
+
+    /**
+     * Generation where the cycle starts, -1 until a cycle is found.
+     */
+    private long transientLength = -1;
+
+    /**
+     * Cycle length, -1 until a cycle is found.
+     */
+    private long period = -1;
+
+    /**
+     * Number of generations computed with the engine.
+     */
+    private long steps;
+
+    /**
+     * Constructs detector.
+     *
+     * @param engine Engine computing the rows, periodic for a guaranteed
+     * cycle.
+     * @param initialRow First row, not modified.
+     */
+    public CycleDetector(final RowEngine engine, final long[] initialRow) {
+        this.engine = engine;
+        this.initialRow = initialRow.clone();
+        lastRow = this.initialRow.clone();
+    }
+
+    /**
+     * Searches for the cycle.
+     *
+     * A repeated search with a larger limit starts over from the initial
+     * row.
+     *
+     * @param maxGenerations Last generation computed by the search.
+     * @return True if the cycle was found.
+     */
+    public final boolean detect(final long maxGenerations) {
+        if (period >= 0) {
+            return true;
+        }
+        long[] saved = initialRow.clone();
+        long savedFingerprint = BitRows.fingerprint(saved);
+        long[] row = initialRow.clone();
+        long[] next = BitRows.newRow(engine.getWidth());
+        long power = 1;
+        long distance = 0;
+        long gen = 0;
+        while (gen < maxGenerations) {
+            engine.step(row, next);
+            long[] tmp = row;
+            row = next;
+            next = tmp;
+            gen++;
+            distance++;
+            if (BitRows.fingerprint(row) == savedFingerprint
+                    && Arrays.equals(row, saved)) {
+                period = distance;
+                findTransient();
+                break;
+            }
+            if (distance == power) {
+                System.arraycopy(row, 0, saved, 0, row.length);
+                savedFingerprint = BitRows.fingerprint(saved);
+                power *= 2;
+                distance = 0;
+            }
+        }
+        steps += gen;
+        if (gen > lastGeneration) {
+            lastRow = row;
+            lastGeneration = gen;
+        }
+        return period >= 0;
+    }
+
+    /**
+     * Finds the start of the cycle once the period is known by running two
+     * rows one period apart until they meet.
+     */
+    private void findTransient() {
+        final int width = engine.getWidth();
+        long[] tortoise = initialRow.clone();
+        long[] hare = advance(initialRow.clone(), period);
+        long[] tortoiseNext = BitRows.newRow(width);
+        long[] hareNext = BitRows.newRow(width);
+        long mu = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            engine.step(tortoise, tortoiseNext);
+            long[] tmp = tortoise;
+            tortoise = tortoiseNext;
+            tortoiseNext = tmp;
+            engine.step(hare, hareNext);
+            tmp = hare;
+            hare = hareNext;
+            hareNext = tmp;
+            steps += 2;
+            mu++;
+        }
+        transientLength = mu;
+        cycleStart = tortoise;
+    }
+
+    /**
+     * Tells whether the cycle has been found.
+     *
+     * @return True after a successful {@link #detect(long)}.
+     */
+    public final boolean isDetected() {
+        return period >= 0;
+    }
+
+    /**
+     * Generation where the cycle starts.
+     *
+     * @return Transient length, -1 if no cycle was found.
+     */
+    public final long getTransientLength() {
+        return transientLength;
+    }
+
+    /**
+     * Cycle length.
+     *
+     * @return Period, -1 if no cycle was found.
+     */
+    public final long getPeriod() {
+        return period;
+    }
+
+    /**
+     * Number of generations computed with the engine so far.
+     *
+     * @return Engine steps.
+     */
+    public final long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Computes the row of any generation.
+     *
+     * Generations inside a found cycle are reduced modulo the period and
+     * computed from the first row of the cycle. Otherwise simulation starts
+     * from the closest known row.
+     *
+     * @param generation Generation number, non-negative.
+     * @return New row holding the generation.
+     */
+    public final long[] rowAt(final long generation) {
+        if (generation < 0) {
+            throw new IllegalArgumentException(
+                    "Generation must not be negative: " + generation);
+        }
+        if (period >= 0 && generation >= transientLength) {
+            return advance(cycleStart.clone(),
+                    (generation - transientLength) % period);
+        }
+        if (generation >= lastGeneration) {
+            return advance(lastRow.clone(), generation - lastGeneration);
+        }
+        return advance(initialRow.clone(), generation);
+    }
+
+    /**
+     * Steps a row forward.
+     *
+     * @param row Row to advance, may be replaced.
+     * @param generations Generations to compute.
+     * @return Advanced row.
+     */
+    private long[] advance(final long[] row, final long generations) {
+        long[] current = row;
+        long[] next = BitRows.newRow(engine.getWidth());
+        for (long g = 0; g < generations; g++) {
+            engine.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        steps += generations;
+        return current;
+    }
+}
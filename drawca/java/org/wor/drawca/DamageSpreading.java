@@ -0,0 +1,228 @@
+/**
+ * DamageSpreading.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Advances an original and a perturbed row of the same rule in lockstep
+ * and tracks where they differ.
+ *
+ * After every generation the difference row holds the XOR of the two rows
+ * and the Hamming distance its population count. Both runs share one
+ * engine and the buffers are swapped, never reallocated, so a generation
+ * costs two engine steps and one pass over the words.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class DamageSpreading {
+    /**
+     * CSV header of the distances.
+     */
+    public static final String CSV_HEADER = "generation,hamming";
+
+    /**
+     * Engine stepping both rows.
+     */
+    private final RowEngine engine;
+
+    /**
+     * Original row.
+     */
+    private long[] original;
+
+    /**
+     * Perturbed row.
+     */
+    private long[] perturbed;
+
+    /**
+     * Next generation buffer of the original row.
+     */
+    private long[] originalNext;
+
+    /**
+     * Next generation buffer of the perturbed row.
+     */
+    private long[] perturbedNext;
+
+    /**
+     * XOR of the current rows.
+     */
+    private final long[] difference;
+
+    /**
+     * Population count of the difference.
+     */
+    private long hamming;
+
+    /**
+     * Generations stepped.
+     */
+    private long generation;
+
+    /**
+     * Constructs twin run.
+     *
+     * @param engine Engine stepping both rows.
+     * @param original Original row, copied.
+     * @param perturbed Perturbed row, copied.
+     */
+    public DamageSpreading(final RowEngine engine, final long[] original,
+            final long[] perturbed) {
+        final int words = BitRows.wordCount(engine.getWidth());
+        if (original.length < words || perturbed.length < words) {
+            throw new IllegalArgumentException("Rows narrower than the "
+                    + "engine width " + engine.getWidth());
+        }
+        this.engine = engine;
+        this.original = Arrays.copyOf(original, words);
+        this.perturbed = Arrays.copyOf(perturbed, words);
+        originalNext = new long[words];
+        perturbedNext = new long[words];
+        difference = new long[words];
+        compare();
+    }
+
+    /**
+     * Copies a row with one cell flipped.
+     *
+     * @param row Packed row, not modified.
+     * @param width Row width in cells.
+     * @param cell Cell to flip [0, width).
+     * @return Perturbed copy.
+     */
+    public static long[] flip(final long[] row, final int width,
+            final int cell) {
+        if (cell < 0 || cell >= width) {
+            throw new IllegalArgumentException("Cell out of range: " + cell);
+        }
+        long[] copy = Arrays.copyOf(row, BitRows.wordCount(width));
+        BitRows.set(copy, cell, !BitRows.get(copy, cell));
+        return copy;
+    }
+
+    /**
+     * Advances both rows by a generation.
+     */
+    public final void step() {
+        engine.step(original, originalNext);
+        engine.step(perturbed, perturbedNext);
+        long[] tmp = original;
+        original = originalNext;
+        originalNext = tmp;
+        tmp = perturbed;
+        perturbed = perturbedNext;
+        perturbedNext = tmp;
+        generation++;
+        compare();
+    }
+
+    /**
+     * Updates the difference and the Hamming distance.
+     */
+    private void compare() {
+        long h = 0;
+        for (int k = 0; k < difference.length; k++) {
+            final long d = original[k] ^ perturbed[k];
+            difference[k] = d;
+            h += Long.bitCount(d);
+        }
+        hamming = h;
+    }
+
+    /**
+     * Writes the current and the following generations.
+     *
+     * @param rows Generations to write including the current one.
+     * @param differences Gets the difference rows by row index, or null.
+     * @param distances Gets the Hamming distance of each generation as CSV,
+     * or null. Not closed.
+     * @throws IOException If writing fails.
+     */
+    public final void run(final long rows, final RowSink differences,
+            final Writer distances) throws IOException {
+        if (distances != null) {
+            distances.write(CSV_HEADER + "\n");
+        }
+        for (long t = 0; t < rows; t++) {
+            if (t > 0) {
+                step();
+            }
+            if (differences != null) {
+                differences.writeRow(t, difference);
+            }
+            if (distances != null) {
+                distances.write(generation + "," + hamming + "\n");
+            }
+        }
+        if (distances != null) {
+            distances.flush();
+        }
+    }
+
+    /**
+     * Gets the original row.
+     *
+     * @return Packed row, changed by {@link #step()}.
+     */
+    public final long[] getOriginal() {
+        return original;
+    }
+
+    /**
+     * Gets the perturbed row.
+     *
+     * @return Packed row, changed by {@link #step()}.
+     */
+    public final long[] getPerturbed() {
+        return perturbed;
+    }
+
+    /**
+     * Gets the cells where the rows differ.
+     *
+     * @return XOR of the rows, changed by {@link #step()}.
+     */
+    public final long[] getDifference() {
+        return difference;
+    }
+
+    /**
+     * Gets the number of cells where the rows differ.
+     *
+     * @return Hamming distance.
+     */
+    public final long getHamming() {
+        return hamming;
+    }
+
+    /**
+     * Gets the generations stepped.
+     *
+     * @return Generation, zero for the given rows.
+     */
+    public final long getGeneration() {
+        return generation;
+    }
+}
@@ -20,10 +20,21 @@
  */
 package org.wor.drawca;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -47,6 +58,16 @@ import com.google.common.collect.ImmutableMap;
  * @author "Esa Määttä" (esa.maatta@iki.fi)
  */
 public final class DrawCAMain {
+    /**
+     * Default rows between checkpoints.
+     */
+    private static final long DEFAULT_CHECKPOINT_EVERY = 100000;
+
+    /**
+     * Default block size of the entropy in the row statistics.
+     */
+    private static final int DEFAULT_STATS_BLOCK = 8;
+
     /**
      * Map verbosity level from int [-1,0,1,3,...,7] to Level.
      */
@@ -78,16 +99,86 @@ public final class DrawCAMain {
         // TODO: show defaults in option description
         options.addOption("h", "help", !hasArgs, "Show this help message");
         options.addOption("pci", "perclickiteration", !hasArgs,
-                "Generate one line per mouse click");
+                "Generate lines per mouse click or keys 1-4");
+
+        options.addOption("tile", "tiled", !hasArgs,
+                "Explore an unbounded diagram with pan (drag) and zoom "
+                + "(wheel)");
 
         options.addOption("v", "verbose", hasArgs, "Verbosity level [-1,7]");
+        options.addOption("fps", "fps", hasArgs,
+                "Maximum window repaints per second");
+        options.addOption("bk", "backing", hasArgs,
+                "Window image format: binary (default), indexed or argb");
+        options.addOption("cont", "continuous", !hasArgs,
+                "Keep drawing forever, scrolling the window");
+        options.addOption("rps", "rps", hasArgs,
+                "Target rows per second with --continuous, 0 for unlimited");
         options.addOption("r", "rule", hasArgs, "Rule number to use 0-255");
+        options.addOption("gr", "general", hasArgs,
+                "General rule kind:states:radius:code, kind is wolfram, "
+                + "totalistic or outer-totalistic");
+        options.addOption("pal", "palette", hasArgs,
+                "Colors of --general states, e.g. white,#ff8000,black");
         options.addOption("wh", "windowheigth", hasArgs, "Draw window height");
         options.addOption("ww", "windowwidth", hasArgs, "Draw window width");
         options.addOption("x", "xscalefactor", hasArgs, "X Scale factor");
         options.addOption("y", "yscalefactor", hasArgs, "Y scale factor");
         options.addOption("f", "initline", hasArgs,
-                "File name with Initial line.");
+                "Initial line file: text of ones and zeroes or binary seed");
+        options.addOption("seed", "seed", hasArgs,
+                "Seed of random initial lines, the same seed repeats a run");
+        options.addOption("d", "density", hasArgs,
+                "Probability of a one cell in random initial lines");
+        options.addOption("ss", "saveseed", hasArgs,
+                "Save --initline, or a random row, as a binary seed file");
+        options.addOption("o", "output", hasArgs,
+                "Render without a window to a .png or .pbm file");
+        options.addOption("n", "rows", hasArgs,
+                "Number of rows to render with --output");
+        options.addOption("g", "generation", hasArgs,
+                "First generation rendered with --output/--record");
+        options.addOption("b", "boundary", hasArgs,
+                "Boundary with --output/--record: periodic or fixed");
+        options.addOption("t", "threads", hasArgs,
+                "Worker threads per row with --output/--record");
+        options.addOption("cp", "checkpoint", hasArgs,
+                "Checkpoint file written during --output/--record");
+        options.addOption("ce", "checkpointevery", hasArgs,
+                "Rows between checkpoints");
+        options.addOption("res", "resume", !hasArgs,
+                "Continue the run of --checkpoint, --output gets the "
+                + "remaining rows");
+        options.addOption("st", "stats", hasArgs,
+                "Stream row statistics to a CSV file, JSON lines if it ends "
+                + "with .json or .jsonl, - for standard output");
+        options.addOption("sb", "statsblock", hasArgs,
+                "Block size of the entropy in --stats");
+        options.addOption("se", "statsevery", hasArgs,
+                "Rows between --stats lines");
+        options.addOption("sw", "sweep", hasArgs,
+                "Run rules (all, 30,90 or 0-15) without a window");
+        options.addOption("dmg", "damage", hasArgs,
+                "Also run the initial line with this cell flipped and draw "
+                + "or --output where the runs differ, --csv gets the "
+                + "Hamming distances");
+        options.addOption("serve", "serve", hasArgs,
+                "Serve PNG tiles /rule/{n}/seed/{s}/{z}/{x}/{y} of "
+                + "--windowwidth wide diagrams on this localhost port");
+        options.addOption("tcd", "tilecache", hasArgs,
+                "Disk cache directory of --serve");
+        options.addOption("sd", "servedepth", hasArgs,
+                "Deepest generation served by --serve");
+        options.addOption("ens", "ensemble", hasArgs,
+                "Run the rule from this many random rows and print density "
+                + "statistics");
+        options.addOption("csv", "csv", hasArgs,
+                "CSV output file of --sweep, standard output if not given; "
+                + "per-sample statistics of --ensemble");
+        options.addOption("rec", "record", hasArgs,
+                "Render without a window to a history file");
+        options.addOption("play", "replay", hasArgs,
+                "Show or --output a history file instead of computing");
 
         CommandLineParser parser = new PosixParser();
         CommandLine cmd;
@@ -105,6 +196,7 @@ public final class DrawCAMain {
             return;
         }
         final boolean perClickIteration = cmd.hasOption("pci");
+        final boolean tiled = cmd.hasOption("tile");
 
         // Options with an argument
         final int verbosityLevel = Integer.parseInt(
@@ -120,6 +212,50 @@ public final class DrawCAMain {
         final float yScaleFactor = Float.parseFloat(
                 cmd.getOptionValue('y', "2.0"));
         final String initLineFile = cmd.getOptionValue('f', "");
+        final String outputFile = cmd.getOptionValue('o', "");
+        final long rows = Long.parseLong(cmd.getOptionValue('n',
+                    Integer.toString((int) (windowHeigth / yScaleFactor))));
+        final long firstGeneration = Long.parseLong(
+                cmd.getOptionValue('g', "0"));
+        final Boundary boundary = Boundary.valueOf(
+                cmd.getOptionValue('b', "periodic").toUpperCase());
+        final String recordFile = cmd.getOptionValue("rec", "");
+        final int threads = Integer.parseInt(cmd.getOptionValue('t', "1"));
+        final String sweepRules = cmd.getOptionValue("sw", "");
+        final String csvFile = cmd.getOptionValue("csv", "");
+        final long randomSeed = cmd.hasOption("seed")
+            ? Long.parseLong(cmd.getOptionValue("seed")) : System.nanoTime();
+        final double density = Double.parseDouble(cmd.getOptionValue('d',
+                    Double.toString(SeedGenerator.DEFAULT_DENSITY)));
+        final int damageCell = Integer.parseInt(
+                cmd.getOptionValue("dmg", "-1"));
+        final int servePort = Integer.parseInt(
+                cmd.getOptionValue("serve", "-1"));
+        final String tileCacheDir = cmd.getOptionValue("tcd", "");
+        final long serveDepth = Long.parseLong(cmd.getOptionValue("sd",
+                    Long.toString(TileServer.DEFAULT_MAX_ROWS)));
+        final int ensembleSamples = Integer.parseInt(
+                cmd.getOptionValue("ens", "0"));
+        final String replayFile = cmd.getOptionValue("play", "");
+        final int fps = Integer.parseInt(cmd.getOptionValue("fps",
+                    Integer.toString(RunGUI.DEFAULT_FPS)));
+        final ImageBacking backing = ImageBacking.valueOf(cmd.getOptionValue(
+                    "bk", CAPanel.DEFAULT_BACKING.name()).toUpperCase());
+        final boolean continuous = cmd.hasOption("cont");
+        final double rowsPerSecond = Double.parseDouble(
+                cmd.getOptionValue("rps", "0"));
+        final String generalRule = cmd.getOptionValue("gr", "");
+        final String palette = cmd.getOptionValue("pal", "");
+        final String saveSeedFile = cmd.getOptionValue("ss", "");
+        final String checkpointFile = cmd.getOptionValue("cp", "");
+        final long checkpointEvery = Long.parseLong(cmd.getOptionValue(
+                    "ce", Long.toString(DEFAULT_CHECKPOINT_EVERY)));
+        final boolean resume = cmd.hasOption("res");
+        final String statsFile = cmd.getOptionValue("st", "");
+        final int statsBlock = Integer.parseInt(cmd.getOptionValue("sb",
+                    Integer.toString(DEFAULT_STATS_BLOCK)));
+        final long statsEvery = Long.parseLong(cmd.getOptionValue("se",
+                    "1"));
 
         final Level logLevel = VERBOSITY_MAP.get(verbosityLevel);
         log.setLevel(logLevel);
@@ -130,25 +266,304 @@ public final class DrawCAMain {
         log.addHandler(consoleHandler);
 
         log.info("Log level set to: " + log.getLevel());
+        log.info("Random seed: " + randomSeed);
+        DrawCAMetrics.get().register();
+
+        // Read initial line from a file, general rules have more states.
+        final Path seedPath = initLineFile.length() > 0
+            ? FileSystems.getDefault().getPath(initLineFile) : null;
+        SeedLoader.Seed seed = null;
+        if (seedPath != null && generalRule.length() == 0) {
+            try {
+                seed = SeedLoader.load(seedPath);
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+                return;
+            }
+        }
+        final int width = seed != null ? seed.getWidth()
+            : (int) (windowWidth / xScaleFactor);
+
+        if (cmd.hasOption("dmg")) {
+            if (damageCell < 0 || damageCell >= width) {
+                System.err.println("--damage cell must be in [0, " + width
+                        + ")");
+                return;
+            }
+            if (replayFile.length() > 0 || generalRule.length() > 0
+                    || sweepRules.length() > 0 || cmd.hasOption("ens")
+                    || servePort >= 0 || tiled || recordFile.length() > 0
+                    || resume) {
+                System.err.println("--damage can't be used with --replay, "
+                        + "--general, --sweep, --ensemble, --serve, --tile, "
+                        + "--record or --resume");
+                return;
+            }
+        }
+
+        if (saveSeedFile.length() > 0) {
+            long[] row = seed != null ? seed.getRow()
+                : SeedGenerator.randomRow(width, density, randomSeed);
+            try {
+                SeedLoader.writeBinary(FileSystems.getDefault()
+                        .getPath(saveSeedFile), row, width);
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
+
+        if (sweepRules.length() > 0) {
+            long[] initialRow = seed != null ? seed.getRow()
+                : SeedGenerator.randomRow(width, density, randomSeed);
+            RuleSweep sweep = new RuleSweep(initialRow, width, boundary,
+                    rows);
+            int workers = cmd.hasOption('t') ? threads
+                : Runtime.getRuntime().availableProcessors();
+            // Standard output is flushed after the run, never closed.
+            Writer stdout = new OutputStreamWriter(System.out,
+                    StandardCharsets.UTF_8);
+            try (Writer csv = csvFile.length() > 0
+                    ? Files.newBufferedWriter(FileSystems.getDefault()
+                        .getPath(csvFile), StandardCharsets.UTF_8)
+                    : null) {
+                sweep.run(RuleSweep.parseRules(sweepRules), workers,
+                        csv != null ? csv : stdout);
+                stdout.flush();
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
+
+        if (servePort >= 0) {
+            try {
+                TileServer server = new TileServer(servePort, width, density,
+                        cmd.hasOption('t') ? threads
+                        : Runtime.getRuntime().availableProcessors(),
+                        TileSource.DEFAULT_CACHE_BYTES,
+                        tileCacheDir.length() > 0 ? FileSystems.getDefault()
+                        .getPath(tileCacheDir) : null, serveDepth);
+                server.start();
+                System.out.println("Serving tiles on http://"
+                        + server.getAddress().getHostString() + ":"
+                        + server.getPort()
+                        + "/rule/{n}/seed/{s}/{z}/{x}/{y}");
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
+
+        if (cmd.hasOption("ens")) {
+            // Each group of samples takes a word per cell.
+            final long maxSamples = Math.min(Integer.MAX_VALUE,
+                    (long) (Integer.MAX_VALUE / width)
+                    * EnsembleEngine.GROUP_SAMPLES);
+            if (ensembleSamples < 1 || ensembleSamples > maxSamples) {
+                System.err.println("--ensemble samples must be in [1, "
+                        + maxSamples + "] at width " + width);
+                return;
+            }
+            EnsembleEngine ensemble = new EnsembleEngine(new Rule(rule),
+                    width, ensembleSamples, boundary);
+            ensemble.randomize(randomSeed, density);
+            ensemble.step(Math.max(0, rows - 1));
+            Writer stdout = new OutputStreamWriter(System.out,
+                    StandardCharsets.UTF_8);
+            try {
+                if (csvFile.length() > 0) {
+                    try (Writer csv = Files.newBufferedWriter(
+                                FileSystems.getDefault().getPath(csvFile),
+                                StandardCharsets.UTF_8)) {
+                        ensemble.writeSamples(csv);
+                    }
+                }
+                ensemble.writeSummary(stdout);
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
 
-        // Read initial line from a file
-        String initLine = "";
-        if (initLineFile.length() > 0) {
-            Path initLineFilePath = FileSystems.getDefault()
-                .getPath(initLineFile);
+        if (replayFile.length() > 0) {
+            HistoryStore history;
+            try {
+                history = HistoryStore.open(FileSystems.getDefault()
+                        .getPath(replayFile));
+                if (outputFile.length() > 0) {
+                    long n = cmd.hasOption('n')
+                        ? Math.min(rows, history.getRowCount())
+                        : history.getRowCount();
+                    try (RowSink sink = openImageSink(outputFile,
+                                history.getWidth(), n)) {
+                        history.replay(0, n, sink);
+                    } finally {
+                        history.close();
+                    }
+                    return;
+                }
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+                return;
+            }
+            RunGUI gui = new RunGUI(windowWidth, windowHeigth, xScaleFactor,
+                    yScaleFactor, history, perClickIteration);
+            try {
+                gui.setAnalysis(closeOnExit(openStats(statsFile,
+                                history.getWidth(), statsBlock, statsEvery,
+                                0, 0)));
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+                return;
+            }
+            gui.setFps(fps);
+            gui.setContinuous(continuous, rowsPerSecond);
+            gui.setBacking(backing);
+            SwingUtilities.invokeLater(gui);
+            return;
+        }
+
+        if (generalRule.length() > 0) {
+            GeneralRule general = GeneralRule.parse(generalRule);
+            Palette colors = palette.length() > 0 ? Palette.parse(palette)
+                : Palette.gray(general.getStates());
+            if (colors.size() < general.getStates()) {
+                System.err.format("Palette has %d colors for %d states\n",
+                        colors.size(), general.getStates());
+                return;
+            }
+            byte[] cells = null;
+            IndexedRowRaster raster;
             try {
-                // Should be string of ones and zeros only
-                initLine = new String(Files
-                        .readAllBytes(initLineFilePath), "UTF-8");
+                if (seedPath != null) {
+                    cells = SeedLoader.loadStates(seedPath,
+                            general.getStates());
+                }
+                GeneralEngine engine = new GeneralEngine(general,
+                        cells != null ? cells.length : width, boundary);
+                if (outputFile.length() > 0) {
+                    try (StateSink png = new PngWriter(
+                                new BufferedOutputStream(new FileOutputStream(
+                                        outputFile)), engine.getWidth(), rows,
+                                colors.getColors())) {
+                        renderGeneral(engine, cells, randomSeed,
+                                firstGeneration, rows, png);
+                    }
+                    return;
+                }
+                // Only the rows the window shows are kept in memory.
+                final int shown = (int) Math.max(1, Math.min(rows,
+                            (long) (windowHeigth / yScaleFactor)));
+                raster = new IndexedRowRaster(engine.getWidth(), shown,
+                        colors.getColors());
+                renderGeneral(engine, cells, randomSeed, firstGeneration,
+                        shown, rasterSink(raster));
             } catch (IOException e) {
                 System.err.format("IOException: %s\n", e);
                 return;
             }
+            RunGUI gui = new RunGUI(
+                    raster.getImage().getWidth() * (int) xScaleFactor,
+                    windowHeigth,
+                    xScaleFactor, yScaleFactor, rule);
+            gui.setImage(raster.getImage());
+            SwingUtilities.invokeLater(gui);
+            return;
         }
 
-        SwingUtilities.invokeLater(new RunGUI(windowWidth, windowHeigth,
-                    xScaleFactor, yScaleFactor, rule, initLine,
-                    perClickIteration));
+        if (damageCell >= 0
+                && (outputFile.length() > 0 || csvFile.length() > 0)) {
+            long[] initialRow = seed != null ? seed.getRow()
+                : randomRow(width, density, randomSeed, threads);
+            RowEngine engine = createEngine(new Rule(rule), width, boundary,
+                    threads);
+            skipGenerations(rule, engine, initialRow, firstGeneration);
+            DamageSpreading twin = new DamageSpreading(engine, initialRow,
+                    DamageSpreading.flip(initialRow, width, damageCell));
+            // Standard output is flushed by run, never closed.
+            Writer stdout = new OutputStreamWriter(System.out,
+                    StandardCharsets.UTF_8);
+            try (RowSink differences = outputFile.length() > 0
+                    ? openImageSink(outputFile, width, rows) : null;
+                    Writer csv = csvFile.length() > 0
+                    ? Files.newBufferedWriter(FileSystems.getDefault()
+                        .getPath(csvFile), StandardCharsets.UTF_8)
+                    : null) {
+                twin.run(rows, differences, csv != null ? csv : stdout);
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
+
+        if (outputFile.length() > 0 || recordFile.length() > 0
+                || resume) {
+            final Path checkpointPath = checkpointFile.length() > 0
+                ? FileSystems.getDefault().getPath(checkpointFile) : null;
+            try {
+                Checkpoint start;
+                RowEngine engine;
+                if (resume) {
+                    if (checkpointPath == null) {
+                        System.err.println("--resume needs --checkpoint");
+                        return;
+                    }
+                    if (outputFile.length() > 0 && recordFile.length() == 0) {
+                        System.err.println("--resume with --output needs the "
+                                + "--record file of the run");
+                        return;
+                    }
+                    start = Checkpoint.readLatest(checkpointPath);
+                    if (cmd.hasOption('n')) {
+                        start = new Checkpoint(start.getRule(),
+                                start.getBoundary(), start.getWidth(),
+                                start.getSeed(), start.getFirstGeneration(),
+                                start.getRowIndex(), rows, start.getRow());
+                    }
+                    log.info("Resuming at generation "
+                            + start.getGeneration());
+                    engine = createEngine(new Rule(start.getRule()),
+                            start.getWidth(), start.getBoundary(), threads);
+                } else {
+                    long[] initialRow = seed != null ? seed.getRow()
+                        : randomRow(width, density, randomSeed, threads);
+                    engine = createEngine(new Rule(rule), width, boundary,
+                            threads);
+                    skipGenerations(rule, engine, initialRow,
+                            firstGeneration);
+                    start = new Checkpoint(rule, boundary, width, randomSeed,
+                            firstGeneration, 0, rows, initialRow);
+                }
+                renderHeadless(engine, start, outputFile, recordFile,
+                        checkpointPath, checkpointEvery,
+                        openStats(statsFile, start.getWidth(), statsBlock,
+                            statsEvery, start.getFirstGeneration(),
+                            start.getRowIndex()));
+            } catch (IOException e) {
+                System.err.format("IOException: %s\n", e);
+            }
+            return;
+        }
+
+        RunGUI gui = new RunGUI(windowWidth, windowHeigth, xScaleFactor,
+                yScaleFactor, rule, "", perClickIteration, tiled);
+        if (seed != null) {
+            gui.setInitialRow(seed.getRow(), seed.getWidth());
+        }
+        gui.setRandomSeed(randomSeed, density);
+        gui.setDamageCell(damageCell);
+        try {
+            gui.setAnalysis(closeOnExit(openStats(statsFile, width,
+                            statsBlock, statsEvery, 0, 0)));
+        } catch (IOException e) {
+            System.err.format("IOException: %s\n", e);
+            return;
+        }
+        gui.setFps(fps);
+        gui.setContinuous(continuous, rowsPerSecond);
+        gui.setBacking(backing);
+        SwingUtilities.invokeLater(gui);
     }
 
     /**
@@ -161,6 +576,316 @@ public final class DrawCAMain {
         throw new AssertionError("Utility class instantiation.");
     };
 
+    /**
+     * Creates engine for a run.
+     *
+     * @param rule Rule to use.
+     * @param width Row width in cells.
+     * @param boundary Boundary condition.
+     * @param threads Worker threads computing a row.
+     * @return Parallel engine if more than one thread, otherwise the
+     * fastest single threaded engine.
+     */
+    private static RowEngine createEngine(final Rule rule, final int width,
+            final Boundary boundary, final int threads) {
+        if (threads > 1) {
+            return new ParallelEngine(rule, width, boundary,
+                    new ForkJoinPool(threads),
+                    ParallelEngine.DEFAULT_CHUNK_WORDS,
+                    ParallelEngine.DEFAULT_SYNC_GENERATIONS);
+        }
+        return RowEngines.fastest(rule, width, boundary);
+    }
+
+    /**
+     * Creates a random initial row.
+     *
+     * @param width Row width in cells.
+     * @param density Probability of a one cell.
+     * @param seed Seed.
+     * @param threads Threads filling the row, the row does not depend on
+     * them.
+     * @return Packed row.
+     */
+    private static long[] randomRow(final int width, final double density,
+            final long seed, final int threads) {
+        if (threads < 2) {
+            return SeedGenerator.randomRow(width, density, seed);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return SeedGenerator.randomRow(width, density, seed, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writer to standard output for an owner closing its writer.
+     *
+     * @return Writer whose close only flushes, so that later output and
+     * the logging of shutdown hooks still reach the console.
+     */
+    private static Writer unclosedStdout() {
+        return new FilterWriter(new OutputStreamWriter(System.out,
+                    StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Renders rows to an image and/or history file without opening any
+     * windows.
+     *
+     * @param engine Engine computing the rows.
+     * @param start State of the run at its first row to render, the row
+     * index is zero unless resuming.
+     * @param outputFile Image file name, format chosen by the suffix, or
+     * empty. Gets the rows from the start row on.
+     * @param recordFile History file name or empty, appended to when
+     * resuming.
+     * @param checkpointFile Checkpoint file or null.
+     * @param checkpointEvery Rows between checkpoints.
+     * @param analysis Statistics getting the rows, or null. Closed with
+     * the other sinks.
+     * @throws IOException If writing the files fails.
+     */
+    private static void renderHeadless(final RowEngine engine,
+            final Checkpoint start, final String outputFile,
+            final String recordFile, final Path checkpointFile,
+            final long checkpointEvery, final StatsSink analysis)
+        throws IOException {
+        final int width = start.getWidth();
+        final long first = start.getRowIndex();
+        final long rows = start.getRows();
+        HeadlessRenderer renderer = new HeadlessRenderer(engine,
+                start.getRow());
+
+        List<RowSink> sinks = new ArrayList<RowSink>();
+        if (analysis != null) {
+            sinks.add(analysis);
+        }
+        try {
+            HistoryStore history = null;
+            if (recordFile.length() > 0) {
+                final Path recordPath = FileSystems.getDefault()
+                    .getPath(recordFile);
+                history = first > 0 ? HistoryStore.resume(recordPath, first)
+                    : HistoryStore.create(recordPath, start.getRule(),
+                            width, start.getBoundary());
+                sinks.add(history);
+            }
+            if (outputFile.length() > 0) {
+                // A resumed image gets the recorded rows first.
+                RowSink image = openImageSink(outputFile, width, rows);
+                sinks.add(image);
+                if (first > 0) {
+                    history.replay(0, first, image);
+                }
+            }
+            if (analysis != null && history != null && first > 0) {
+                analysis.prime(first - 1, history.readRow(first - 1));
+            }
+            // Last so that a checkpoint is taken after the row is stored.
+            if (checkpointFile != null) {
+                sinks.add(new CheckpointWriter(checkpointFile, start,
+                            checkpointEvery));
+            }
+        } catch (IOException e) {
+            for (RowSink sink : sinks) {
+                try {
+                    sink.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+
+        try (RowSink sink = new TeeSink(sinks.toArray(
+                        new RowSink[sinks.size()]))) {
+            renderer.render(first, rows, sink);
+        }
+    }
+
+    /**
+     * Opens the row statistics output.
+     *
+     * @param fileName CSV or .json/.jsonl file, - for standard output or
+     * empty for none.
+     * @param width Row width in cells.
+     * @param block Block size of the entropy.
+     * @param every Rows between statistics.
+     * @param firstGeneration Generation of row index zero.
+     * @param resumeRow Row index a resumed run starts from, zero for a new
+     * run. The statistics of later rows are cut from an existing file and
+     * the new ones appended.
+     * @return Statistics sink or null if no file is given.
+     * @throws IOException If opening the file fails.
+     */
+    private static StatsSink openStats(final String fileName,
+            final int width, final int block, final long every,
+            final long firstGeneration, final long resumeRow)
+        throws IOException {
+        if (fileName.length() == 0) {
+            return null;
+        }
+        final StatsSink.Format format = fileName.endsWith(".json")
+            || fileName.endsWith(".jsonl") ? StatsSink.Format.JSON
+            : StatsSink.Format.CSV;
+        if (fileName.equals("-")) {
+            return new StatsSink(unclosedStdout(), format, width, block,
+                    every, firstGeneration, resumeRow == 0);
+        }
+        final Path path = FileSystems.getDefault().getPath(fileName);
+        final boolean append = resumeRow > 0 && Files.exists(path);
+        if (append) {
+            StatsSink.truncate(path, firstGeneration + resumeRow);
+        }
+        final Writer out = append
+            ? Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND)
+            : Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        return new StatsSink(out, format, width, block, every,
+                firstGeneration, !append);
+    }
+
+    /**
+     * Closes a sink when the JVM exits, windows exit without closing.
+     *
+     * @param sink Sink or null.
+     * @return The sink.
+     */
+    private static RowSink closeOnExit(final RowSink sink) {
+        if (sink != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        sink.close();
+                    } catch (IOException e) {
+                        System.err.format("IOException: %s\n", e);
+                    }
+                }
+            });
+        }
+        return sink;
+    }
+
+    /**
+     * Streams rows of a general rule to a sink.
+     *
+     * @param engine Engine computing the rows.
+     * @param initRow Initial states per cell, random if null.
+     * @param seed Seed of the random initial states.
+     * @param firstGeneration Generation of the first rendered row.
+     * @param rows Number of rows to render.
+     * @param sink Sink getting the rows.
+     * @throws IOException If the sink fails.
+     */
+    private static void renderGeneral(final GeneralEngine engine,
+            final byte[] initRow, final long seed,
+            final long firstGeneration, final long rows,
+            final StateSink sink) throws IOException {
+        final int width = engine.getWidth();
+        byte[] row = initRow != null ? initRow
+            : SeedGenerator.randomStates(width,
+                    engine.getRule().getStates(), seed);
+        for (long g = 0; g < firstGeneration; g++) {
+            engine.step(row, row);
+        }
+        for (long y = 0; y < rows; y++) {
+            sink.writeStates(firstGeneration + y, row);
+            if (y < rows - 1) {
+                engine.step(row, row);
+            }
+        }
+    }
+
+    /**
+     * Sink drawing rows of states to image lines from the top.
+     *
+     * @param raster Image of at least as many lines as rows written.
+     * @return Sink writing generation i - first to line i.
+     */
+    private static StateSink rasterSink(final IndexedRowRaster raster) {
+        return new StateSink() {
+            /**
+             * Next image line.
+             */
+            private int y;
+
+            @Override
+            public void writeStates(final long generation,
+                    final byte[] states) {
+                raster.writeIndices(y++, states);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Advances a row without rendering the generations in between.
+     *
+     * Jumps with {@link HashLifeEngine} when the lattice allows it,
+     * otherwise steps with the given engine until the cycle of the lattice
+     * is found and jumps around the cycle.
+     *
+     * @param rule Rule number.
+     * @param engine Engine of the run.
+     * @param row Row to advance in place.
+     * @param generations Generations to skip.
+     */
+    private static void skipGenerations(final int rule,
+            final RowEngine engine, final long[] row,
+            final long generations) {
+        if (generations <= 0) {
+            return;
+        }
+        final int width = engine.getWidth();
+        if (HashLifeEngine.supports(width, engine.getBoundary())) {
+            new HashLifeEngine(new Rule(rule), width).advance(row, row,
+                    generations);
+            return;
+        }
+        CycleDetector detector = new CycleDetector(engine, row);
+        if (detector.detect(generations)) {
+            Logger.getGlobal().info("Transient "
+                    + detector.getTransientLength() + ", period "
+                    + detector.getPeriod());
+        }
+        System.arraycopy(detector.rowAt(generations), 0, row, 0, row.length);
+    }
+
+    /**
+     * Opens streaming image writer matching the file suffix.
+     *
+     * @param fileName Output file name ending with .png or .pbm.
+     * @param width Image width.
+     * @param rows Image height.
+     * @return Image writer.
+     * @throws IOException If the file can't be opened.
+     */
+    private static RowSink openImageSink(final String fileName,
+            final int width, final long rows) throws IOException {
+        final String name = fileName.toLowerCase();
+        if (!name.endsWith(".png") && !name.endsWith(".pbm")) {
+            throw new IOException("Unknown image format: " + fileName);
+        }
+        OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(fileName));
+        if (name.endsWith(".png")) {
+            return new PngWriter(out, width, rows);
+        }
+        return new PbmWriter(out, width, rows);
+    }
+
     /**
      * Prints command line help.
      *
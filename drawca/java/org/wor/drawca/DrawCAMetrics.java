@@ -0,0 +1,344 @@
+/**
+ * DrawCAMetrics.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process wide counters of drawca, published as an MBean under
+ * {@link #OBJECT_NAME} by {@link #register()}.
+ *
+ * Recording is a few atomic additions per row, done by the engines'
+ * callers (the panel producer, the headless renderer and the tile
+ * source).
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class DrawCAMetrics implements DrawCAMetricsMBean {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(DrawCAMetrics.class.getName());
+
+    /**
+     * Object name of the MBean.
+     */
+    public static final String OBJECT_NAME = "org.wor.drawca:type=Metrics";
+
+    /**
+     * Class of the optional flight recorder tracer.
+     */
+    private static final String JFR_TRACER = "org.wor.drawca.JfrRowTracer";
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * The instance.
+     */
+    private static final DrawCAMetrics INSTANCE = new DrawCAMetrics();
+
+    /**
+     * Tracer of row phases.
+     */
+    private final RowTracer tracer = findTracer();
+
+    /**
+     * Start of the measurement.
+     */
+    private volatile long startNanos = System.nanoTime();
+
+    /**
+     * Generations computed.
+     */
+    private final AtomicLong generations = new AtomicLong();
+
+    /**
+     * Cells updated.
+     */
+    private final AtomicLong cells = new AtomicLong();
+
+    /**
+     * Time spent stepping rows.
+     */
+    private final AtomicLong simulationNanos = new AtomicLong();
+
+    /**
+     * Rows rasterised.
+     */
+    private final AtomicLong rasterRows = new AtomicLong();
+
+    /**
+     * Time spent rasterising rows.
+     */
+    private final AtomicLong rasterNanos = new AtomicLong();
+
+    /**
+     * Repaints showing new rows.
+     */
+    private final AtomicLong repaints = new AtomicLong();
+
+    /**
+     * Sum of repaint latencies.
+     */
+    private final AtomicLong repaintNanos = new AtomicLong();
+
+    /**
+     * Longest repaint latency.
+     */
+    private final AtomicLong maxRepaintNanos = new AtomicLong();
+
+    /**
+     * Tiles found in the cache.
+     */
+    private final AtomicLong tileHits = new AtomicLong();
+
+    /**
+     * Tiles computed.
+     */
+    private final AtomicLong tileMisses = new AtomicLong();
+
+    /**
+     * Use {@link #get()}.
+     */
+    private DrawCAMetrics() {
+    }
+
+    /**
+     * The process wide metrics.
+     *
+     * @return Metrics.
+     */
+    public static DrawCAMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Looks up the flight recorder tracer.
+     *
+     * @return JFR tracer, or {@link RowTracer#NONE} if not available.
+     */
+    private static RowTracer findTracer() {
+        try {
+            return Class.forName(JFR_TRACER).asSubclass(RowTracer.class)
+                .getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.log(Level.FINE, "Flight recorder events not available", e);
+            return RowTracer.NONE;
+        }
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server, does nothing if
+     * already registered.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            LOG.fine("Metrics already registered");
+        } catch (JMException e) {
+            LOG.warning("Registering metrics failed: " + e);
+        }
+    }
+
+    /**
+     * Tracer of row phases.
+     *
+     * @return Flight recorder tracer or {@link RowTracer#NONE}.
+     */
+    public RowTracer tracer() {
+        return tracer;
+    }
+
+    /**
+     * Records stepped rows.
+     *
+     * @param rows Rows stepped.
+     * @param width Cells per row.
+     * @param nanos Time taken.
+     */
+    public void recordSimulation(final long rows, final int width,
+            final long nanos) {
+        generations.addAndGet(rows);
+        cells.addAndGet(rows * width);
+        simulationNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records rasterised rows.
+     *
+     * @param rows Rows written.
+     * @param nanos Time taken.
+     */
+    public void recordRaster(final long rows, final long nanos) {
+        rasterRows.addAndGet(rows);
+        rasterNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Records a repaint showing new rows.
+     *
+     * @param latencyNanos Time from computing the newest row to painting
+     * it.
+     */
+    public void recordRepaint(final long latencyNanos) {
+        repaints.incrementAndGet();
+        repaintNanos.addAndGet(latencyNanos);
+        long max = maxRepaintNanos.get();
+        while (latencyNanos > max
+                && !maxRepaintNanos.compareAndSet(max, latencyNanos)) {
+            max = maxRepaintNanos.get();
+        }
+    }
+
+    /**
+     * Records a tile request.
+     *
+     * @param hit Was the tile found in the cache?
+     */
+    public void recordTile(final boolean hit) {
+        (hit ? tileHits : tileMisses).incrementAndGet();
+    }
+
+    /**
+     * Ratio which is zero for an empty denominator.
+     *
+     * @param a Numerator.
+     * @param b Denominator.
+     * @return a / b or zero.
+     */
+    private static double ratio(final double a, final double b) {
+        return b == 0 ? 0 : a / b;
+    }
+
+    /**
+     * Seconds since the start of the measurement.
+     *
+     * @return Elapsed seconds.
+     */
+    private double elapsedSeconds() {
+        return (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+    }
+
+    @Override
+    public long getGenerations() {
+        return generations.get();
+    }
+
+    @Override
+    public long getCellsUpdated() {
+        return cells.get();
+    }
+
+    @Override
+    public double getGenerationsPerSecond() {
+        return ratio(generations.get(), elapsedSeconds());
+    }
+
+    @Override
+    public double getCellsPerSecond() {
+        return ratio(cells.get(), elapsedSeconds());
+    }
+
+    @Override
+    public double getSimulationMicrosPerRow() {
+        return ratio(simulationNanos.get() / NANOS_PER_MICRO,
+                generations.get());
+    }
+
+    @Override
+    public long getRasterRows() {
+        return rasterRows.get();
+    }
+
+    @Override
+    public double getRasterMicrosPerRow() {
+        return ratio(rasterNanos.get() / NANOS_PER_MICRO, rasterRows.get());
+    }
+
+    @Override
+    public long getRepaints() {
+        return repaints.get();
+    }
+
+    @Override
+    public double getRepaintLatencyMillis() {
+        return ratio(repaintNanos.get() / NANOS_PER_MILLI, repaints.get());
+    }
+
+    @Override
+    public double getMaxRepaintLatencyMillis() {
+        return maxRepaintNanos.get() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getTileHits() {
+        return tileHits.get();
+    }
+
+    @Override
+    public long getTileMisses() {
+        return tileMisses.get();
+    }
+
+    @Override
+    public double getTileHitRatio() {
+        final long hits = tileHits.get();
+        return ratio(hits, hits + tileMisses.get());
+    }
+
+    @Override
+    public boolean isFlightRecorderEnabled() {
+        return tracer != RowTracer.NONE;
+    }
+
+    @Override
+    public void reset() {
+        for (AtomicLong counter : new AtomicLong[] {generations, cells,
+            simulationNanos, rasterRows, rasterNanos, repaints,
+            repaintNanos, maxRepaintNanos, tileHits, tileMisses}) {
+            counter.set(0);
+        }
+        startNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * DrawCAMetricsMBean.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Management interface of {@link DrawCAMetrics}.
+ *
+ * Rates and averages are over the time since the start or the last
+ * {@link #reset()}.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public interface DrawCAMetricsMBean {
+    /**
+     * Generations computed.
+     *
+     * @return Rows stepped by the engines.
+     */
+    long getGenerations();
+
+    /**
+     * Cells updated.
+     *
+     * @return Sum of the widths of the stepped rows.
+     */
+    long getCellsUpdated();
+
+    /**
+     * Generations computed per second.
+     *
+     * @return Rate.
+     */
+    double getGenerationsPerSecond();
+
+    /**
+     * Cells updated per second.
+     *
+     * @return Rate.
+     */
+    double getCellsPerSecond();
+
+    /**
+     * Mean time stepping a row.
+     *
+     * @return Microseconds per row.
+     */
+    double getSimulationMicrosPerRow();
+
+    /**
+     * Rows written to images or files.
+     *
+     * @return Rasterised rows.
+     */
+    long getRasterRows();
+
+    /**
+     * Mean time writing a row to an image or file.
+     *
+     * @return Microseconds per row.
+     */
+    double getRasterMicrosPerRow();
+
+    /**
+     * Repaints showing new rows.
+     *
+     * @return Repaint count.
+     */
+    long getRepaints();
+
+    /**
+     * Mean time from computing a row to painting it.
+     *
+     * @return Milliseconds.
+     */
+    double getRepaintLatencyMillis();
+
+    /**
+     * Longest time from computing a row to painting it.
+     *
+     * @return Milliseconds.
+     */
+    double getMaxRepaintLatencyMillis();
+
+    /**
+     * Tiles found in the cache.
+     *
+     * @return Hits.
+     */
+    long getTileHits();
+
+    /**
+     * Tiles which had to be computed.
+     *
+     * @return Misses.
+     */
+    long getTileMisses();
+
+    /**
+     * Fraction of tile requests served from the cache.
+     *
+     * @return Ratio [0-1], zero before any request.
+     */
+    double getTileHitRatio();
+
+    /**
+     * Whether Java Flight Recorder events are emitted.
+     *
+     * @return True if the JFR tracer is in use.
+     */
+    boolean isFlightRecorderEnabled();
+
+    /**
+     * Clears the counters and restarts the rates.
+     */
+    void reset();
+}
@@ -0,0 +1,385 @@
+/**
+ * EnsembleEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Runs one elementary rule on many independent lattices at once.
+ *
+ * The layout is transposed compared to {@link BitRows}: the samples are
+ * split into groups of 64 and bit j of word i of a group is cell i of
+ * sample j of the group. The neighbors of a cell are then whole words and
+ * a single {@link CompiledRule#applyWord(long, long, long)} advances cell i
+ * of 64 samples. Statistics are computed in the same layout, the samples
+ * are never unpacked. The unused lanes of a partial last group are stepped
+ * along and masked out of the statistics.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class EnsembleEngine {
+    /**
+     * Samples per word.
+     */
+    public static final int GROUP_SAMPLES = Long.SIZE;
+
+    /**
+     * CSV header of the per-sample statistics.
+     */
+    public static final String SAMPLE_CSV_HEADER = "sample,ones,density";
+
+    /**
+     * CSV header of the aggregate statistics.
+     */
+    public static final String SUMMARY_CSV_HEADER = "samples,width,"
+        + "generation,mean_density,stddev_density,extinct";
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Number of samples.
+     */
+    private final int samples;
+
+    /**
+     * Number of sample groups, the last one may be partial.
+     */
+    private final int groups;
+
+    /**
+     * Lanes of the samples in the last group.
+     */
+    private final long lastMask;
+
+    /**
+     * Rule to apply.
+     */
+    private final CompiledRule rule;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Current cells, word g * width + i holds cell i of group g.
+     */
+    private long[] current;
+
+    /**
+     * Buffer for the next generation.
+     */
+    private long[] next;
+
+    /**
+     * Generations stepped.
+     */
+    private long generation;
+
+    /**
+     * Constructs engine with all cells zero.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param samples Number of lattices, at least one.
+     * @param boundary Boundary condition.
+     */
+    public EnsembleEngine(final Rule rule, final int width,
+            final int samples, final Boundary boundary) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        if (samples < 1) {
+            throw new IllegalArgumentException("Samples must be positive: "
+                    + samples);
+        }
+        this.width = width;
+        this.samples = samples;
+        groups = (samples + GROUP_SAMPLES - 1) / GROUP_SAMPLES;
+        final int partial = samples % GROUP_SAMPLES;
+        lastMask = partial == 0 ? -1L : (1L << partial) - 1;
+        if ((long) groups * width > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Ensemble too large: "
+                    + samples + " x " + width);
+        }
+        this.rule = rule.compile();
+        this.boundary = boundary;
+        current = new long[groups * width];
+        next = new long[groups * width];
+    }
+
+    /**
+     * Gets the lattice width.
+     *
+     * @return Width in cells.
+     */
+    public final int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the number of lattices.
+     *
+     * @return Samples.
+     */
+    public final int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Gets the generations stepped since the cells were last set.
+     *
+     * @return Generation.
+     */
+    public final long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets every cell of every sample at random with probability one half.
+     *
+     * @param rand Random source.
+     */
+    public final void randomize(final Random rand) {
+        for (int k = 0; k < current.length; k++) {
+            current[k] = rand.nextLong();
+        }
+        generation = 0;
+    }
+
+    /**
+     * Sets every cell of every sample at random.
+     *
+     * @param seed Seed, the same seed gives the same samples.
+     * @param density Probability of a one cell [0-1].
+     */
+    public final void randomize(final long seed, final double density) {
+        new SeedGenerator(seed).fill(current, 0, current.length, density);
+        generation = 0;
+    }
+
+    /**
+     * Sets the cells of one sample.
+     *
+     * @param sample Sample index.
+     * @param row Packed row of the width of the engine.
+     */
+    public final void setSample(final int sample, final long[] row) {
+        final int base = (sample / GROUP_SAMPLES) * width;
+        final long bit = 1L << (sample % GROUP_SAMPLES);
+        for (int i = 0; i < width; i++) {
+            if (BitRows.get(row, i)) {
+                current[base + i] |= bit;
+            } else {
+                current[base + i] &= ~bit;
+            }
+        }
+        generation = 0;
+    }
+
+    /**
+     * Gets the cells of one sample.
+     *
+     * @param sample Sample index.
+     * @return Packed row.
+     */
+    public final long[] getSample(final int sample) {
+        final int base = (sample / GROUP_SAMPLES) * width;
+        final int shift = sample % GROUP_SAMPLES;
+        long[] row = BitRows.newRow(width);
+        for (int i = 0; i < width; i++) {
+            if (((current[base + i] >>> shift) & 1) != 0) {
+                BitRows.set(row, i, true);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Advances every sample by a generation.
+     */
+    public final void step() {
+        final boolean periodic = boundary == Boundary.PERIODIC;
+        final int last = width - 1;
+        for (int g = 0; g < groups; g++) {
+            final int base = g * width;
+            final long first = current[base];
+            final long end = current[base + last];
+            long l = periodic ? end : 0;
+            long c = first;
+            for (int i = 0; i < last; i++) {
+                final long r = current[base + i + 1];
+                next[base + i] = rule.applyWord(l, c, r);
+                l = c;
+                c = r;
+            }
+            next[base + last] = rule.applyWord(l, c, periodic ? first : 0);
+        }
+        long[] tmp = current;
+        current = next;
+        next = tmp;
+        generation++;
+    }
+
+    /**
+     * Advances every sample by several generations.
+     *
+     * @param generations Generations to step.
+     */
+    public final void step(final long generations) {
+        for (long t = 0; t < generations; t++) {
+            step();
+        }
+    }
+
+    /**
+     * Counts the one cells of each sample.
+     *
+     * The words of a group are added into bit-sliced counters, plane p
+     * holding bit p of the 64 counts, so each word costs a few boolean
+     * operations instead of 64 bit extractions.
+     *
+     * @param counts Receives the one cells per sample, length at least
+     * {@link #getSamples()}.
+     */
+    public final void countOnes(final long[] counts) {
+        final long[] planes = new long[Long.SIZE
+            - Long.numberOfLeadingZeros(width)];
+        for (int g = 0; g < groups; g++) {
+            Arrays.fill(planes, 0);
+            final int base = g * width;
+            for (int i = 0; i < width; i++) {
+                long carry = current[base + i];
+                for (int p = 0; carry != 0; p++) {
+                    final long sum = planes[p] ^ carry;
+                    carry &= planes[p];
+                    planes[p] = sum;
+                }
+            }
+            final int lanes = Math.min(GROUP_SAMPLES,
+                    samples - g * GROUP_SAMPLES);
+            for (int j = 0; j < lanes; j++) {
+                long count = 0;
+                for (int p = 0; p < planes.length; p++) {
+                    count |= ((planes[p] >>> j) & 1) << p;
+                }
+                counts[g * GROUP_SAMPLES + j] = count;
+            }
+        }
+    }
+
+    /**
+     * Total number of one cells over all samples.
+     *
+     * @return One cells.
+     */
+    public final long countOnes() {
+        long ones = 0;
+        for (int g = 0; g < groups; g++) {
+            final long mask = laneMask(g);
+            final int base = g * width;
+            for (int i = 0; i < width; i++) {
+                ones += Long.bitCount(current[base + i] & mask);
+            }
+        }
+        return ones;
+    }
+
+    /**
+     * Number of samples having only zero cells.
+     *
+     * @return Extinct samples.
+     */
+    public final int countExtinct() {
+        int extinct = 0;
+        for (int g = 0; g < groups; g++) {
+            long alive = 0;
+            final int base = g * width;
+            for (int i = 0; i < width; i++) {
+                alive |= current[base + i];
+            }
+            final long mask = laneMask(g);
+            extinct += Long.bitCount(mask) - Long.bitCount(alive & mask);
+        }
+        return extinct;
+    }
+
+    /**
+     * Lanes of a group holding samples.
+     *
+     * @param group Group index.
+     * @return Mask of the used bits of the words of the group.
+     */
+    private long laneMask(final int group) {
+        return group == groups - 1 ? lastMask : -1L;
+    }
+
+    /**
+     * Writes the one cells and density of every sample as CSV.
+     *
+     * @param out Destination, not closed.
+     * @throws IOException If writing fails.
+     */
+    public final void writeSamples(final Writer out) throws IOException {
+        final long[] counts = new long[samples];
+        countOnes(counts);
+        out.write(SAMPLE_CSV_HEADER + "\n");
+        for (int s = 0; s < samples; s++) {
+            out.write(String.format(Locale.ROOT, "%d,%d,%.6f\n", s,
+                        counts[s], (double) counts[s] / width));
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the mean and standard deviation of the sample densities and
+     * the number of extinct samples as CSV.
+     *
+     * @param out Destination, not closed.
+     * @throws IOException If writing fails.
+     */
+    public final void writeSummary(final Writer out) throws IOException {
+        final long[] counts = new long[samples];
+        countOnes(counts);
+        double sum = 0;
+        double squares = 0;
+        for (long c : counts) {
+            final double d = (double) c / width;
+            sum += d;
+            squares += d * d;
+        }
+        final double mean = sum / samples;
+        final double variance = Math.max(0, squares / samples - mean * mean);
+        out.write(SUMMARY_CSV_HEADER + "\n");
+        out.write(String.format(Locale.ROOT, "%d,%d,%d,%.6f,%.6f,%d\n",
+                    samples, width, generation, mean, Math.sqrt(variance),
+                    countExtinct()));
+        out.flush();
+    }
+}
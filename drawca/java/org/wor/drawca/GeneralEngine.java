@@ -0,0 +1,209 @@
+/**
+ * GeneralEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.Random;
+
+/**
+ * Engine for {@link GeneralRule}s on rows of one byte per cell.
+ *
+ * The table index of the neighborhood is kept rolling along the row: when
+ * moving one cell right the leaving cell is taken out and the entering
+ * cell added, so each cell costs one table read for any radius.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class GeneralEngine {
+    /**
+     * Rule to apply.
+     */
+    private final GeneralRule rule;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Compiled table of the rule.
+     */
+    private final byte[] table;
+
+    /**
+     * Current row with radius cells of boundary on both sides.
+     */
+    private final int[] padded;
+
+    /**
+     * Constructs engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     */
+    public GeneralEngine(final GeneralRule rule, final int width,
+            final Boundary boundary) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        this.rule = rule;
+        this.width = width;
+        this.boundary = boundary;
+        table = rule.table();
+        padded = new int[width + 2 * rule.getRadius()];
+    }
+
+    /**
+     * Rule of the engine.
+     *
+     * @return Rule.
+     */
+    public final GeneralRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Width of the lattice in cells.
+     *
+     * @return Row width.
+     */
+    public final int getWidth() {
+        return width;
+    }
+
+    /**
+     * Boundary condition of the lattice.
+     *
+     * @return Boundary condition.
+     */
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Computes the next generation.
+     *
+     * @param current Current generation, one state per cell, left
+     * untouched.
+     * @param next Array where the next generation is written, may be the
+     * same array as current.
+     */
+    public final void step(final byte[] current, final byte[] next) {
+        final int r = rule.getRadius();
+        final int k = rule.getStates();
+        final int[] p = padded;
+        for (int i = 0; i < width; i++) {
+            p[r + i] = current[i] & 0xff;
+        }
+        final boolean fixed = boundary == Boundary.FIXED;
+        for (int j = 0; j < r; j++) {
+            final int left = (((j - r) % width) + width) % width;
+            p[j] = fixed ? 0 : current[left] & 0xff;
+            p[r + width + j] = fixed ? 0 : current[(width + j) % width] & 0xff;
+        }
+
+        // Cells i..i+2r-1 of the padded row, the last one is added per cell.
+        final int span = 2 * r;
+        int index = 0;
+        switch (rule.getKind()) {
+        case WOLFRAM:
+            int high = 1;
+            for (int j = 0; j < span; j++) {
+                index = index * k + p[j];
+                high *= k;
+            }
+            for (int i = 0; i < width; i++) {
+                index = index * k + p[i + span];
+                next[i] = table[index];
+                index -= p[i] * high;
+            }
+            break;
+        case TOTALISTIC:
+            for (int j = 0; j < span; j++) {
+                index += p[j];
+            }
+            for (int i = 0; i < width; i++) {
+                index += p[i + span];
+                next[i] = table[index];
+                index -= p[i];
+            }
+            break;
+        default:
+            final int sums = rule.getSumCount();
+            for (int j = 0; j < span; j++) {
+                index += p[j];
+            }
+            for (int i = 0; i < width; i++) {
+                index += p[i + span];
+                next[i] = table[p[i + r] * sums + index];
+                index -= p[i];
+            }
+            break;
+        }
+    }
+
+    /**
+     * Allocates a row with uniformly random cells.
+     *
+     * @param width Row width in cells.
+     * @param states Number of states.
+     * @param rand Random source.
+     * @return New row.
+     */
+    public static byte[] randomRow(final int width, final int states,
+            final Random rand) {
+        final byte[] row = new byte[width];
+        for (int i = 0; i < width; i++) {
+            row[i] = (byte) rand.nextInt(states);
+        }
+        return row;
+    }
+
+    /**
+     * Reads a row of digits, 0-9 followed by a-z for states over ten.
+     *
+     * @param line Row as digits.
+     * @param width Row width in cells, extra characters are ignored and
+     * missing cells are zero.
+     * @param states Number of states.
+     * @return New row.
+     */
+    public static byte[] fromString(final String line, final int width,
+            final int states) {
+        final byte[] row = new byte[width];
+        final int n = Math.min(line.length(), width);
+        for (int i = 0; i < n; i++) {
+            final int d = Character.digit(line.charAt(i), Character.MAX_RADIX);
+            if (d < 0 || d >= states) {
+                throw new IllegalArgumentException("Invalid cell '"
+                        + line.charAt(i) + "' at " + i);
+            }
+            row[i] = (byte) d;
+        }
+        return row;
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * GeneralRule.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.math.BigInteger;
+import java.util.Locale;
+
+/**
+ * One dimensional rule of k states and radius r, given by its code.
+ *
+ * The code read as a base k number lists the new cell value per table
+ * index, least significant digit first. The index of a cell depends on
+ * the {@link Kind} of the rule. The rule is compiled into a primitive
+ * table so that {@link GeneralEngine} computes a cell with one read
+ * however large the neighborhood is.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class GeneralRule {
+    /**
+     * Largest number of states, cells are stored in bytes.
+     */
+    public static final int MAX_STATES = IndexedRowRaster.MAX_COLORS;
+
+    /**
+     * Largest number of table entries.
+     */
+    public static final int MAX_TABLE_SIZE = 1 << 24;
+
+    /**
+     * Separator of the parts of a rule specification.
+     */
+    private static final String SPEC_SEPARATOR = ":";
+
+    /**
+     * Number of parts in a rule specification.
+     */
+    private static final int SPEC_PARTS = 4;
+
+    /**
+     * How the table index of a cell is formed.
+     */
+    public enum Kind {
+        /**
+         * Index is the neighborhood read as a base k number, leftmost cell
+         * most significant. Elementary rule n is Wolfram rule n with k = 2
+         * and r = 1.
+         */
+        WOLFRAM,
+
+        /**
+         * Index is the sum of the neighborhood.
+         */
+        TOTALISTIC,
+
+        /**
+         * Index is k times the sum of the neighborhood without the cell
+         * plus the cell itself.
+         */
+        OUTER_TOTALISTIC;
+    }
+
+    /**
+     * Kind of the rule.
+     */
+    private final Kind kind;
+
+    /**
+     * Number of states.
+     */
+    private final int states;
+
+    /**
+     * Neighbors on each side of a cell.
+     */
+    private final int radius;
+
+    /**
+     * Rule code.
+     */
+    private final BigInteger code;
+
+    /**
+     * New cell value per index, for outer totalistic rules indexed by
+     * (cell * (largest sum + 1) + sum of the whole neighborhood).
+     */
+    private final byte[] table;
+
+    /**
+     * Constructs rule.
+     *
+     * @param kind How the table index of a cell is formed.
+     * @param states Number of states [2, {@link #MAX_STATES}].
+     * @param radius Neighbors on each side of a cell, at least zero.
+     * @param code Rule code, less than states^{@link #getCodeDigits()}.
+     */
+    public GeneralRule(final Kind kind, final int states, final int radius,
+            final BigInteger code) {
+        if (states < 2 || states > MAX_STATES) {
+            throw new IllegalArgumentException("States out of range: "
+                    + states);
+        }
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius: " + radius);
+        }
+        this.kind = kind;
+        this.states = states;
+        this.radius = radius;
+        this.code = code;
+
+        final long digits = codeDigits(kind, states, radius);
+        if (digits > MAX_TABLE_SIZE) {
+            throw new IllegalArgumentException("Rule table too large: "
+                    + digits + " entries");
+        }
+        final BigInteger base = BigInteger.valueOf(states);
+        if (code.signum() < 0 || code.compareTo(base.pow((int) digits)) >= 0) {
+            throw new IllegalArgumentException("Code out of range: " + code);
+        }
+
+        final byte[] values = new byte[(int) digits];
+        BigInteger rest = code;
+        for (int i = 0; i < values.length && rest.signum() > 0; i++) {
+            BigInteger[] qr = rest.divideAndRemainder(base);
+            values[i] = (byte) qr[1].intValue();
+            rest = qr[0];
+        }
+        table = kind == Kind.OUTER_TOTALISTIC ? byCellAndSum(values)
+            : values;
+    }
+
+    /**
+     * Parses a rule such as "totalistic:3:1:777", the parts are kind,
+     * states, radius and decimal code.
+     *
+     * @param spec Rule specification.
+     * @return Parsed rule.
+     */
+    public static GeneralRule parse(final String spec) {
+        final String[] parts = spec.trim().split(SPEC_SEPARATOR);
+        if (parts.length != SPEC_PARTS) {
+            throw new IllegalArgumentException(
+                    "Expected kind:states:radius:code, got: " + spec);
+        }
+        try {
+            return new GeneralRule(Kind.valueOf(parts[0].trim()
+                        .toUpperCase(Locale.ROOT).replace('-', '_')),
+                    Integer.parseInt(parts[1].trim()),
+                    Integer.parseInt(parts[2].trim()),
+                    new BigInteger(parts[3].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid rule: " + spec, e);
+        }
+    }
+
+    /**
+     * Number of digits in the code of a rule.
+     *
+     * @param kind Kind of the rule.
+     * @param states Number of states.
+     * @param radius Neighbors on each side of a cell.
+     * @return Number of table indices.
+     */
+    private static long codeDigits(final Kind kind, final int states,
+            final int radius) {
+        final int cells = 2 * radius + 1;
+        switch (kind) {
+        case WOLFRAM:
+            // Stop early instead of overflowing.
+            long n = 1;
+            for (int i = 0; i < cells && n <= MAX_TABLE_SIZE; i++) {
+                n *= states;
+            }
+            return n;
+        case TOTALISTIC:
+            return (long) cells * (states - 1) + 1;
+        default:
+            return (long) states * ((cells - 1L) * (states - 1) + 1);
+        }
+    }
+
+    /**
+     * Rearranges an outer totalistic table so that it is indexed by the
+     * cell and the sum of the whole neighborhood, which is what the engine
+     * keeps rolling.
+     *
+     * @param values New cell value per (states * outer sum + cell).
+     * @return Table indexed by (cell * (largest sum + 1) + sum).
+     */
+    private byte[] byCellAndSum(final byte[] values) {
+        final int sums = getSumCount();
+        final byte[] t = new byte[states * sums];
+        for (int cell = 0; cell < states; cell++) {
+            for (int outer = 0; outer + cell < sums
+                    && outer * states + cell < values.length; outer++) {
+                t[cell * sums + outer + cell] = values[outer * states + cell];
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Kind of the rule.
+     *
+     * @return How the table index of a cell is formed.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Number of states.
+     *
+     * @return States k.
+     */
+    public int getStates() {
+        return states;
+    }
+
+    /**
+     * Neighbors on each side of a cell.
+     *
+     * @return Radius r.
+     */
+    public int getRadius() {
+        return radius;
+    }
+
+    /**
+     * Rule code.
+     *
+     * @return Code.
+     */
+    public BigInteger getCode() {
+        return code;
+    }
+
+    /**
+     * Number of base k digits in a code of this kind, states and radius.
+     *
+     * @return Number of table indices.
+     */
+    public int getCodeDigits() {
+        return (int) codeDigits(kind, states, radius);
+    }
+
+    /**
+     * Number of different neighborhood sums.
+     *
+     * @return Largest sum plus one.
+     */
+    public int getSumCount() {
+        return (2 * radius + 1) * (states - 1) + 1;
+    }
+
+    /**
+     * Compiled table, indexed as described in {@link Kind} except for
+     * outer totalistic rules which are indexed by (cell * {@link
+     * #getSumCount()} + sum of the whole neighborhood).
+     *
+     * @return Table shared with the rule, must not be modified.
+     */
+    byte[] table() {
+        return table;
+    }
+
+    /**
+     * Formats the rule so that {@link #parse(String)} reads it back.
+     *
+     * @return Rule specification.
+     */
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase(Locale.ROOT) + SPEC_SEPARATOR + states
+            + SPEC_SEPARATOR + radius + SPEC_SEPARATOR + code;
+    }
+}
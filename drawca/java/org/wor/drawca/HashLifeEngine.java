@@ -0,0 +1,545 @@
+/**
+ * HashLifeEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Elementary cellular automata engine skipping far ahead with memoized
+ * macrocells (HashLife in one dimension).
+ *
+ * A row is stored as a binary tree of hash-consed blocks: leaves hold 64
+ * cells and a node of level k covers 2^k cells. The result of a node is its
+ * center half after up to 2^(k-2) generations, computed recursively from
+ * the results of its sub-blocks and memoized per node. Configurations with
+ * repeating structure share blocks, so advancing by 2^j generations costs
+ * time in the number of distinct blocks rather than in cells times
+ * generations.
+ *
+ * Only periodic lattices whose width is a power of two are supported. The
+ * lattice is repeated by doubling the root node, which is cheap since the
+ * copies are the same node. Both the block table and the result memo are
+ * LRU maps with a bounded number of entries; evicted blocks are recreated
+ * when needed.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class HashLifeEngine implements RowEngine {
+    /**
+     * Default bound for entries in the block table and in the result memo.
+     */
+    public static final int DEFAULT_MAX_NODES = 1 << 18;
+
+    /**
+     * Level of a leaf block, 64 cells.
+     */
+    private static final int LEAF_LEVEL = BitRows.WORD_SHIFT;
+
+    /**
+     * Level whose results are computed directly from two leaves.
+     */
+    private static final int BASE_LEVEL = LEAF_LEVEL + 1;
+
+    /**
+     * Largest supported generation step exponent.
+     */
+    private static final int MAX_STEP_LOG = Long.SIZE - 2;
+
+    /**
+     * Multiplier mixing child hashes.
+     */
+    private static final int HASH_MULTIPLIER = 0x9e3779b1;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Level of a block covering the lattice, at least {@link #LEAF_LEVEL}.
+     */
+    private final int rowLevel;
+
+    /**
+     * Rule to apply.
+     */
+    private final CompiledRule rule;
+
+    /**
+     * Canonical blocks.
+     */
+    private final Map<Node, Node> nodes;
+
+    /**
+     * Results of blocks, indexed by the generation step exponent.
+     */
+    private final Map<Node, Node[]> results;
+
+    /**
+     * Number of results found in the memo.
+     */
+    private long hits;
+
+    /**
+     * Number of results computed.
+     */
+    private long misses;
+
+    /**
+     * Constructs engine with the default cache bound.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, a power of two.
+     */
+    public HashLifeEngine(final Rule rule, final int width) {
+        this(rule, width, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Constructs engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, a power of two.
+     * @param maxNodes Bound for entries in the block table and in the result
+     * memo.
+     */
+    public HashLifeEngine(final Rule rule, final int width,
+            final int maxNodes) {
+        if (!supports(width, Boundary.PERIODIC)) {
+            throw new IllegalArgumentException(
+                    "Width must be a power of two: " + width);
+        }
+        if (maxNodes < 1) {
+            throw new IllegalArgumentException(
+                    "Cache bound must be positive: " + maxNodes);
+        }
+        this.width = width;
+        rowLevel = Math.max(LEAF_LEVEL, Integer.numberOfTrailingZeros(width));
+        this.rule = rule.compile();
+        nodes = new LruMap<Node, Node>(maxNodes);
+        results = new LruMap<Node, Node[]>(maxNodes);
+    }
+
+    /**
+     * Tells whether a lattice can be run with this engine.
+     *
+     * @param width Lattice width in cells.
+     * @param boundary Boundary condition.
+     * @return True for periodic lattices whose width is a power of two.
+     */
+    public static boolean supports(final int width, final Boundary boundary) {
+        return boundary == Boundary.PERIODIC && width > 0
+            && Integer.bitCount(width) == 1;
+    }
+
+    @Override
+    public final int getWidth() {
+        return width;
+    }
+
+    @Override
+    public final Boundary getBoundary() {
+        return Boundary.PERIODIC;
+    }
+
+    /**
+     * Number of results served from the memo.
+     *
+     * @return Memo hits.
+     */
+    public final long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of results which had to be computed.
+     *
+     * @return Memo misses.
+     */
+    public final long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Number of blocks in the block table.
+     *
+     * @return Canonical block count.
+     */
+    public final int getNodeCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public final void step(final long[] current, final long[] next) {
+        advance(current, next, 1);
+    }
+
+    /**
+     * Computes a generation any number of generations ahead.
+     *
+     * @param current Current generation, left untouched.
+     * @param next Array where the result is written, may be the same array
+     * as current.
+     * @param generations Number of generations to advance, non-negative.
+     */
+    public final void advance(final long[] current, final long[] next,
+            final long generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException(
+                    "Generations must not be negative: " + generations);
+        }
+        Node row = build(current);
+        for (int j = 0; j <= MAX_STEP_LOG; j++) {
+            if ((generations & (1L << j)) != 0) {
+                row = advancePow2(row, j);
+            }
+        }
+        flatten(row, next);
+    }
+
+    /**
+     * Advances a lattice block by 2^j generations.
+     *
+     * The block is repeated until the center half of the result, which
+     * starts at a multiple of the lattice width, is determined.
+     *
+     * @param row Block covering the lattice.
+     * @param j Generation step exponent.
+     * @return Block covering the advanced lattice.
+     */
+    private Node advancePow2(final Node row, final int j) {
+        final int level = Math.max(rowLevel + 2, j + 2);
+        Node repeated = row;
+        while (repeated.level < level) {
+            repeated = join(repeated, repeated);
+        }
+        Node r = result(repeated, j);
+        while (r.level > rowLevel) {
+            r = r.left;
+        }
+        return r;
+    }
+
+    /**
+     * Center half of a block after 2^j generations.
+     *
+     * @param node Block of level k.
+     * @param j Generation step exponent, at most k - 2.
+     * @return Block of level k - 1.
+     */
+    private Node result(final Node node, final int j) {
+        Node[] memo = results.get(node);
+        if (memo != null && memo[j] != null) {
+            hits++;
+            return memo[j];
+        }
+        misses++;
+
+        final Node r;
+        if (node.level == BASE_LEVEL) {
+            r = baseResult(node, j);
+        } else {
+            final Node a = node.left;
+            final Node b = node.right;
+            final Node mid = join(a.right, b.left);
+            final Node r0;
+            final Node r1;
+            final Node r2;
+            final int full = node.level - 2;
+            if (j == full) {
+                // Both halves of the time step run on sub-block results.
+                r0 = result(a, full - 1);
+                r1 = result(mid, full - 1);
+                r2 = result(b, full - 1);
+                r = join(result(join(r0, r1), full - 1),
+                        result(join(r1, r2), full - 1));
+            } else {
+                r0 = center(a);
+                r1 = center(mid);
+                r2 = center(b);
+                r = join(result(join(r0, r1), j), result(join(r1, r2), j));
+            }
+        }
+
+        memo = results.get(node);
+        if (memo == null) {
+            memo = new Node[node.level - 1];
+            results.put(node, memo);
+        }
+        memo[j] = r;
+        return r;
+    }
+
+    /**
+     * Center half of a block without advancing.
+     *
+     * @param node Block of level at least {@link #BASE_LEVEL}.
+     * @return Block of one level lower.
+     */
+    private Node center(final Node node) {
+        if (node.level == BASE_LEVEL) {
+            final int half = BitRows.WORD_BITS / 2;
+            return leaf((node.left.cells >>> half)
+                    | (node.right.cells << half));
+        }
+        return join(node.left.right, node.right.left);
+    }
+
+    /**
+     * Result of a block of two leaves computed with word operations.
+     *
+     * @param node Block of {@link #BASE_LEVEL}.
+     * @param j Generation step exponent, at most {@link #BASE_LEVEL} - 2.
+     * @return Leaf.
+     */
+    private Node baseResult(final Node node, final int j) {
+        long lo = node.left.cells;
+        long hi = node.right.cells;
+        final int steps = 1 << j;
+        final int last = BitRows.WORD_BITS - 1;
+        // Cells near the outer edges get garbage, which only reaches the
+        // center after more than 32 generations.
+        for (int s = 0; s < steps; s++) {
+            final long nlo = rule.applyWord(lo << 1, lo,
+                    (lo >>> 1) | (hi << last));
+            final long nhi = rule.applyWord((hi << 1) | (lo >>> last), hi,
+                    hi >>> 1);
+            lo = nlo;
+            hi = nhi;
+        }
+        final int half = BitRows.WORD_BITS / 2;
+        return leaf((lo >>> half) | (hi << half));
+    }
+
+    /**
+     * Builds the block tree of a packed row.
+     *
+     * @param row Packed row.
+     * @return Block of level {@link #rowLevel}.
+     */
+    private Node build(final long[] row) {
+        Node[] level;
+        if (width < BitRows.WORD_BITS) {
+            // Repeat a narrow lattice to fill one leaf.
+            long cells = row[0];
+            for (int w = width; w < BitRows.WORD_BITS; w *= 2) {
+                cells |= cells << w;
+            }
+            return leaf(cells);
+        }
+        level = new Node[row.length];
+        for (int k = 0; k < row.length; k++) {
+            level[k] = leaf(row[k]);
+        }
+        for (int n = level.length; n > 1; n /= 2) {
+            for (int k = 0; k < n / 2; k++) {
+                level[k] = join(level[2 * k], level[2 * k + 1]);
+            }
+        }
+        return level[0];
+    }
+
+    /**
+     * Writes the cells of a block to a packed row.
+     *
+     * @param node Block of level {@link #rowLevel}.
+     * @param row Destination row.
+     */
+    private void flatten(final Node node, final long[] row) {
+        if (width < BitRows.WORD_BITS) {
+            row[0] = node.cells & BitRows.lastWordMask(width);
+            return;
+        }
+        flatten(node, row, 0);
+    }
+
+    /**
+     * Writes the cells of a block to a packed row.
+     *
+     * @param node Block.
+     * @param row Destination row.
+     * @param word Index of the first word of the block.
+     */
+    private void flatten(final Node node, final long[] row, final int word) {
+        if (node.level == LEAF_LEVEL) {
+            row[word] = node.cells;
+            return;
+        }
+        flatten(node.left, row, word);
+        flatten(node.right, row,
+                word + (1 << (node.level - 1 - LEAF_LEVEL)));
+    }
+
+    /**
+     * Canonical leaf.
+     *
+     * @param cells Cells of the leaf.
+     * @return Leaf block.
+     */
+    private Node leaf(final long cells) {
+        return canonical(new Node(cells));
+    }
+
+    /**
+     * Canonical block of two halves.
+     *
+     * @param left Left half.
+     * @param right Right half of the same level.
+     * @return Block one level above the halves.
+     */
+    private Node join(final Node left, final Node right) {
+        return canonical(new Node(left, right));
+    }
+
+    /**
+     * Looks up the canonical instance of a block.
+     *
+     * @param probe New block.
+     * @return Equal block from the table or the probe itself.
+     */
+    private Node canonical(final Node probe) {
+        Node node = nodes.get(probe);
+        if (node == null) {
+            nodes.put(probe, probe);
+            node = probe;
+        }
+        return node;
+    }
+
+    /**
+     * Immutable block of cells.
+     *
+     * Blocks are equal if they are leaves with the same cells or have the
+     * same (identical) halves.
+     */
+    private static final class Node {
+        /**
+         * Level, the block covers 2^level cells.
+         */
+        private final int level;
+
+        /**
+         * Cells of a leaf.
+         */
+        private final long cells;
+
+        /**
+         * Left half, null for a leaf.
+         */
+        private final Node left;
+
+        /**
+         * Right half, null for a leaf.
+         */
+        private final Node right;
+
+        /**
+         * Precomputed hash code.
+         */
+        private final int hash;
+
+        /**
+         * Constructs leaf.
+         *
+         * @param cells Leaf cells.
+         */
+        Node(final long cells) {
+            level = LEAF_LEVEL;
+            this.cells = cells;
+            left = null;
+            right = null;
+            hash = (int) (cells ^ (cells >>> Integer.SIZE)) * HASH_MULTIPLIER;
+        }
+
+        /**
+         * Constructs inner block.
+         *
+         * @param left Left half.
+         * @param right Right half.
+         */
+        Node(final Node left, final Node right) {
+            level = left.level + 1;
+            cells = 0;
+            this.left = left;
+            this.right = right;
+            hash = (left.hash * HASH_MULTIPLIER + right.hash) ^ level;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Node)) {
+                return false;
+            }
+            final Node n = (Node) o;
+            return hash == n.hash && level == n.level && cells == n.cells
+                && left == n.left && right == n.right;
+        }
+    }
+
+    /**
+     * Access ordered map dropping the least recently used entry when full.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     */
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+        /**
+         * Serial version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Initial capacity of the map.
+         */
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * Load factor of the map.
+         */
+        private static final float LOAD_FACTOR = 0.75f;
+
+        /**
+         * Maximum number of entries.
+         */
+        private final int maxEntries;
+
+        /**
+         * Constructs map.
+         *
+         * @param maxEntries Maximum number of entries.
+         */
+        LruMap(final int maxEntries) {
+            super(INITIAL_CAPACITY, LOAD_FACTOR, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
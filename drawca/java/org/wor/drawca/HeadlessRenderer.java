@@ -0,0 +1,113 @@
+/**
+ * HeadlessRenderer.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * Runs a cellular automata without any windows and streams the rows to a
+ * {@link RowSink}.
+ *
+ * Only the current and the next row are kept in memory.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class HeadlessRenderer {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(HeadlessRenderer.class.getName());
+
+    /**
+     * Engine computing the rows.
+     */
+    private final RowEngine engine;
+
+    /**
+     * First row of the run.
+     */
+    private final long[] initialRow;
+
+    /**
+     * Constructs renderer.
+     *
+     * @param engine Engine computing the rows.
+     * @param initialRow First row, not modified.
+     */
+    public HeadlessRenderer(final RowEngine engine, final long[] initialRow) {
+        this.engine = engine;
+        this.initialRow = initialRow;
+    }
+
+    /**
+     * Computes rows and writes them to the sink.
+     *
+     * @param rows Number of rows including the initial row.
+     * @param sink Receiver of the rows, not closed.
+     * @throws IOException If the sink fails.
+     */
+    public final void render(final long rows, final RowSink sink)
+        throws IOException {
+        render(0, rows, sink);
+    }
+
+    /**
+     * Computes rows of a run continued from a later row, such as one of a
+     * {@link Checkpoint}, and writes them to the sink.
+     *
+     * @param first Index of the initial row in the run.
+     * @param rows Number of rows in the whole run.
+     * @param sink Receiver of rows first..rows-1, not closed.
+     * @throws IOException If the sink fails.
+     */
+    public final void render(final long first, final long rows,
+            final RowSink sink) throws IOException {
+        long[] current = initialRow.clone();
+        long[] next = BitRows.newRow(engine.getWidth());
+        final long start = System.nanoTime();
+
+        final DrawCAMetrics metrics = DrawCAMetrics.get();
+        final RowTracer tracer = metrics.tracer();
+        final int width = engine.getWidth();
+        for (long gen = first; gen < rows; gen++) {
+            if (gen > first) {
+                final long t0 = System.nanoTime();
+                RowTracer.Span span = tracer.begin(RowTracer.SIMULATION);
+                engine.step(current, next);
+                span.end(gen, width);
+                metrics.recordSimulation(1, width, System.nanoTime() - t0);
+                long[] tmp = current;
+                current = next;
+                next = tmp;
+            }
+            final long t1 = System.nanoTime();
+            RowTracer.Span span = tracer.begin(RowTracer.RASTER);
+            sink.writeRow(gen, current);
+            span.end(gen, width);
+            metrics.recordRaster(1, System.nanoTime() - t1);
+        }
+
+        LOG.info("Rendered " + (rows - first) + " rows in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
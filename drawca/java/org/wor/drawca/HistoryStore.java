@@ -0,0 +1,524 @@
+/**
+ * HistoryStore.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory-mapped file of cellular automata generations.
+ *
+ * The file starts with a fixed size header (rule, width, boundary and row
+ * count) followed by the generations as packed rows (see {@link BitRows})
+ * of little-endian longs. Any row or window of rows is found by computing
+ * its offset, no scanning needed. The file is mapped in segments of at most
+ * {@link #SEGMENT_BYTES} bytes so it can grow past 2 GB.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class HistoryStore implements RowSink {
+    /**
+     * File magic, "DCAH".
+     */
+    private static final int MAGIC = 0x44434148;
+
+    /**
+     * File format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header in bytes.
+     */
+    private static final int HEADER_BYTES = 64;
+
+    /**
+     * Header offset of the version.
+     */
+    private static final int VERSION_OFFSET = 4;
+
+    /**
+     * Header offset of the rule number.
+     */
+    private static final int RULE_OFFSET = 8;
+
+    /**
+     * Header offset of the boundary condition.
+     */
+    private static final int BOUNDARY_OFFSET = 12;
+
+    /**
+     * Header offset of the width.
+     */
+    private static final int WIDTH_OFFSET = 16;
+
+    /**
+     * Header offset of the row count.
+     */
+    private static final int ROWS_OFFSET = 24;
+
+    /**
+     * Maximum size of one mapped segment.
+     */
+    public static final int SEGMENT_BYTES = 1 << 30;
+
+    /**
+     * File channel.
+     */
+    private final FileChannel channel;
+
+    /**
+     * Can rows be appended.
+     */
+    private final boolean writable;
+
+    /**
+     * Mapped header.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * Mapped row segments.
+     */
+    private final List<MappedByteBuffer> segments;
+
+    /**
+     * Long views of the row segments.
+     */
+    private final List<LongBuffer> segmentLongs;
+
+    /**
+     * Rule number.
+     */
+    private final int rule;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Words per row.
+     */
+    private final int words;
+
+    /**
+     * Rows per mapped segment.
+     */
+    private final int rowsPerSegment;
+
+    /**
+     * Number of rows stored.
+     */
+    private volatile long rowCount;
+
+    /**
+     * Constructs store on an open channel.
+     *
+     * @param channel File channel.
+     * @param writable Can rows be appended.
+     * @param header Mapped header.
+     * @param rule Rule number.
+     * @param boundary Boundary condition.
+     * @param width Row width in cells.
+     * @param rowCount Number of rows already stored.
+     */
+    private HistoryStore(final FileChannel channel, final boolean writable,
+            final MappedByteBuffer header, final int rule,
+            final Boundary boundary, final int width, final long rowCount) {
+        this.channel = channel;
+        this.writable = writable;
+        this.header = header;
+        this.rule = rule;
+        this.boundary = boundary;
+        this.width = width;
+        this.rowCount = rowCount;
+        words = BitRows.wordCount(width);
+        rowsPerSegment = Math.max(1, SEGMENT_BYTES / rowBytes(words));
+        segments = new ArrayList<MappedByteBuffer>();
+        segmentLongs = new ArrayList<LongBuffer>();
+    }
+
+    /**
+     * Creates a new empty store, replacing any existing file.
+     *
+     * @param file File path.
+     * @param rule Rule number of the stored run.
+     * @param width Row width in cells.
+     * @param boundary Boundary condition of the stored run.
+     * @return Writable store.
+     * @throws IOException If the file can't be created.
+     */
+    public static HistoryStore create(final Path file, final int rule,
+            final int width, final Boundary boundary) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        MappedByteBuffer header = channel.map(MapMode.READ_WRITE, 0,
+                HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putInt(RULE_OFFSET, rule);
+        header.putInt(BOUNDARY_OFFSET, boundary.ordinal());
+        header.putInt(WIDTH_OFFSET, width);
+        header.putLong(ROWS_OFFSET, 0);
+        return new HistoryStore(channel, true, header, rule, boundary, width,
+                0);
+    }
+
+    /**
+     * Opens an existing store for reading.
+     *
+     * @param file File path.
+     * @return Read-only store.
+     * @throws IOException If the file can't be read or isn't a store.
+     */
+    public static HistoryStore open(final Path file) throws IOException {
+        return open(file, -1);
+    }
+
+    /**
+     * Opens an existing store for appending after the given number of
+     * rows, for example to continue a run from a {@link Checkpoint}. Rows
+     * after them are dropped.
+     *
+     * @param file File path.
+     * @param rows Rows to keep.
+     * @return Writable store.
+     * @throws IOException If the file can't be opened, isn't a store or has
+     * fewer rows.
+     */
+    public static HistoryStore resume(final Path file, final long rows)
+        throws IOException {
+        if (rows < 0) {
+            throw new IllegalArgumentException("Negative rows: " + rows);
+        }
+        return open(file, rows);
+    }
+
+    /**
+     * Opens an existing store.
+     *
+     * @param file File path.
+     * @param keepRows Rows to keep in a writable store, negative to open
+     * read-only.
+     * @return Store.
+     * @throws IOException If the file can't be opened or isn't a store.
+     */
+    private static HistoryStore open(final Path file, final long keepRows)
+        throws IOException {
+        final boolean writable = keepRows >= 0;
+        FileChannel channel = writable
+            ? FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)
+            : FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a history file: " + file);
+            }
+            MappedByteBuffer header = channel.map(writable
+                    ? MapMode.READ_WRITE : MapMode.READ_ONLY, 0,
+                    HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC
+                    || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException("Not a history file: " + file);
+            }
+            final int width = header.getInt(WIDTH_OFFSET);
+            long rows = header.getLong(ROWS_OFFSET);
+            if (width < 1 || channel.size() < HEADER_BYTES
+                    + rows * rowBytes(BitRows.wordCount(width))) {
+                throw new IOException("Truncated history file: " + file);
+            }
+            if (writable) {
+                if (keepRows > rows) {
+                    throw new IOException("History file has " + rows
+                            + " rows, " + keepRows + " needed: " + file);
+                }
+                rows = keepRows;
+                header.putLong(ROWS_OFFSET, rows);
+            }
+            return new HistoryStore(channel, writable, header,
+                    header.getInt(RULE_OFFSET),
+                    Boundary.values()[header.getInt(BOUNDARY_OFFSET)], width,
+                    rows);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Bytes per stored row.
+     *
+     * @param words Words per row.
+     * @return Row size in bytes.
+     */
+    private static int rowBytes(final int words) {
+        return words * (Long.SIZE / Byte.SIZE);
+    }
+
+    /**
+     * Rule number of the stored run.
+     *
+     * @return Rule number.
+     */
+    public final int getRule() {
+        return rule;
+    }
+
+    /**
+     * Boundary condition of the stored run.
+     *
+     * @return Boundary condition.
+     */
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Row width in cells.
+     *
+     * @return Width.
+     */
+    public final int getWidth() {
+        return width;
+    }
+
+    /**
+     * Number of stored rows.
+     *
+     * @return Row count.
+     */
+    public final long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param row Packed row.
+     * @throws IOException If mapping more of the file fails.
+     */
+    public final void append(final long[] row) throws IOException {
+        if (!writable) {
+            throw new IOException("History store is read-only");
+        }
+        LongBuffer view = rowView(rowCount);
+        view.put(row, 0, words);
+        rowCount++;
+        header.putLong(ROWS_OFFSET, rowCount);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Generations must be appended in order without gaps.
+     */
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        if (generation != rowCount) {
+            throw new IOException("Expected generation " + rowCount
+                    + ", got " + generation);
+        }
+        append(row);
+    }
+
+    /**
+     * Reads one row.
+     *
+     * @param t Generation of the row.
+     * @return Packed row.
+     * @throws IOException If mapping the file fails.
+     */
+    public final long[] readRow(final long t) throws IOException {
+        long[] row = BitRows.newRow(width);
+        readRow(t, row);
+        return row;
+    }
+
+    /**
+     * Reads one row into an existing array.
+     *
+     * @param t Generation of the row.
+     * @param row Destination with room for a full row.
+     * @throws IOException If mapping the file fails.
+     */
+    public final void readRow(final long t, final long[] row)
+        throws IOException {
+        checkRows(t, 1);
+        rowView(t).get(row, 0, words);
+    }
+
+    /**
+     * Reads a rectangular window of cells.
+     *
+     * @param t Generation of the first row.
+     * @param rows Number of rows.
+     * @param x Index of the first cell.
+     * @param cells Number of cells per row.
+     * @return Packed rows of the window, cell x is the first cell.
+     * @throws IOException If mapping the file fails.
+     */
+    public final long[][] readWindow(final long t, final int rows,
+            final int x, final int cells) throws IOException {
+        checkRows(t, rows);
+        if (x < 0 || cells < 1 || (long) x + cells > width) {
+            throw new IndexOutOfBoundsException("Cells " + x + "+" + cells
+                    + " outside width " + width);
+        }
+        final int outWords = BitRows.wordCount(cells);
+        final int shift = x & BitRows.BIT_MASK;
+        final int first = x >>> BitRows.WORD_SHIFT;
+        long[][] window = new long[rows][outWords];
+        for (int r = 0; r < rows; r++) {
+            LongBuffer view = rowView(t + r);
+            final int base = view.position();
+            for (int j = 0; j < outWords; j++) {
+                final int k = first + j;
+                long w = view.get(base + k) >>> shift;
+                if (shift != 0 && k + 1 < words) {
+                    w |= view.get(base + k + 1) << (BitRows.WORD_BITS - shift);
+                }
+                window[r][j] = w;
+            }
+            window[r][outWords - 1] &= BitRows.lastWordMask(cells);
+        }
+        return window;
+    }
+
+    /**
+     * Writes stored rows to a sink.
+     *
+     * @param t Generation of the first row.
+     * @param rows Number of rows.
+     * @param sink Receiver of the rows, not closed.
+     * @throws IOException If reading or the sink fails.
+     */
+    public final void replay(final long t, final long rows,
+            final RowSink sink) throws IOException {
+        checkRows(t, rows);
+        long[] row = BitRows.newRow(width);
+        for (long i = t; i < t + rows; i++) {
+            readRow(i, row);
+            sink.writeRow(i, row);
+        }
+    }
+
+    /**
+     * Writes mapped changes to the storage device.
+     */
+    public final void flush() {
+        if (writable) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            header.force();
+        }
+    }
+
+    /**
+     * Flushes and closes the store, trimming the file to the stored rows.
+     *
+     * @throws IOException If closing fails.
+     */
+    @Override
+    public final void close() throws IOException {
+        try {
+            if (writable) {
+                flush();
+                channel.truncate(HEADER_BYTES
+                        + rowCount * rowBytes(words));
+            }
+        } finally {
+            segments.clear();
+            segmentLongs.clear();
+            channel.close();
+        }
+    }
+
+    /**
+     * Validates a range of rows.
+     *
+     * @param t First row.
+     * @param rows Number of rows.
+     */
+    private void checkRows(final long t, final long rows) {
+        if (t < 0 || rows < 0 || t + rows > rowCount) {
+            throw new IndexOutOfBoundsException("Rows " + t + "+" + rows
+                    + " outside " + rowCount + " stored rows");
+        }
+    }
+
+    /**
+     * View positioned at the start of a row.
+     *
+     * @param t Row index.
+     * @return Independent long view of the row's segment.
+     * @throws IOException If mapping the segment fails.
+     */
+    private LongBuffer rowView(final long t) throws IOException {
+        final int s = (int) (t / rowsPerSegment);
+        while (segmentLongs.size() <= s) {
+            mapSegment(segmentLongs.size());
+        }
+        LongBuffer view = segmentLongs.get(s).duplicate();
+        view.position((int) (t % rowsPerSegment) * words);
+        return view;
+    }
+
+    /**
+     * Maps one segment of rows.
+     *
+     * @param s Segment index.
+     * @throws IOException If mapping fails.
+     */
+    private void mapSegment(final int s) throws IOException {
+        final long segmentBytes = (long) rowsPerSegment * rowBytes(words);
+        final long start = HEADER_BYTES + s * segmentBytes;
+        MappedByteBuffer segment;
+        if (writable) {
+            segment = channel.map(MapMode.READ_WRITE, start, segmentBytes);
+        } else {
+            segment = channel.map(MapMode.READ_ONLY, start,
+                    Math.min(segmentBytes, channel.size() - start));
+        }
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segments.add(segment);
+        segmentLongs.add(segment.asLongBuffer());
+    }
+}
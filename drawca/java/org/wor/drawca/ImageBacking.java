@@ -0,0 +1,67 @@
+/**
+ * ImageBacking.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Pixel format of the image cellular automata rows are drawn to.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public enum ImageBacking {
+    /**
+     * 32-bit ARGB pixels.
+     */
+    ARGB {
+        @Override
+        public RowRaster create(final int width, final int height) {
+            return new ArgbRowRaster(width, height);
+        }
+    },
+
+    /**
+     * One bit per cell with a two color palette.
+     */
+    BINARY {
+        @Override
+        public RowRaster create(final int width, final int height) {
+            return new BinaryRowRaster(width, height);
+        }
+    },
+
+    /**
+     * One byte per cell indexing a small palette.
+     */
+    INDEXED {
+        @Override
+        public RowRaster create(final int width, final int height) {
+            return new IndexedRowRaster(width, height);
+        }
+    };
+
+    /**
+     * Allocates an image of this format.
+     *
+     * @param width Image width in cells.
+     * @param height Image height in rows.
+     * @return New raster.
+     */
+    public abstract RowRaster create(int width, int height);
+}
@@ -0,0 +1,143 @@
+/**
+ * IndexedRowRaster.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+
+/**
+ * Row raster storing one palette index byte per cell.
+ *
+ * Binary rows use the first two colors. Cells of more states, or extra
+ * overlay colors, can be written as index bytes.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class IndexedRowRaster implements RowRaster {
+    /**
+     * Largest palette size.
+     */
+    public static final int MAX_COLORS = 256;
+
+    /**
+     * Image rows are written to.
+     */
+    private final BufferedImage image;
+
+    /**
+     * Palette indices of the image.
+     */
+    private final byte[] data;
+
+    /**
+     * Allocates image with the two colors of {@link Rule#COLOR_TO_CHAR}.
+     *
+     * @param width Image width in cells.
+     * @param height Image height in rows.
+     */
+    public IndexedRowRaster(final int width, final int height) {
+        this(width, height, new int[] {
+            Rule.COLOR_TO_CHAR.inverse().get('0'),
+            Rule.COLOR_TO_CHAR.inverse().get('1')});
+    }
+
+    /**
+     * Allocates image with a palette.
+     *
+     * @param width Image width in cells.
+     * @param height Image height in rows.
+     * @param colors RGB colors, at most {@link #MAX_COLORS}.
+     */
+    public IndexedRowRaster(final int width, final int height,
+            final int[] colors) {
+        if (colors.length < 2 || colors.length > MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size out of range: "
+                    + colors.length);
+        }
+        image = new BufferedImage(width, height,
+                BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(
+                    Byte.SIZE, colors.length, colors, 0, false, -1,
+                    DataBuffer.TYPE_BYTE));
+        data = ((DataBufferByte) image.getRaster().getDataBuffer())
+            .getData();
+    }
+
+    @Override
+    public final BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public final void writeRow(final int y, final long[] row) {
+        final int w = image.getWidth();
+        int p = y * w;
+        for (int k = 0; k < row.length; k++) {
+            long word = row[k];
+            final int end = Math.min(w - k * BitRows.WORD_BITS,
+                    BitRows.WORD_BITS);
+            for (int i = 0; i < end; i++) {
+                data[p++] = (byte) (word & 1);
+                word >>>= 1;
+            }
+        }
+    }
+
+    /**
+     * Writes a binary row and paints the set cells of an overlay row with
+     * another palette index.
+     *
+     * @param y Image line.
+     * @param row Packed row, drawn with indices 0 and 1.
+     * @param overlay Packed row of highlighted cells.
+     * @param index Palette index of the highlighted cells.
+     */
+    public final void writeOverlay(final int y, final long[] row,
+            final long[] overlay, final byte index) {
+        writeRow(y, row);
+        final int w = image.getWidth();
+        final int p = y * w;
+        for (int k = 0; k < overlay.length; k++) {
+            long word = overlay[k];
+            while (word != 0) {
+                final int i = k * BitRows.WORD_BITS
+                    + Long.numberOfTrailingZeros(word);
+                if (i >= w) {
+                    break;
+                }
+                data[p + i] = index;
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Writes palette indices to an image line.
+     *
+     * @param y Image line.
+     * @param indices Palette index per cell.
+     */
+    public final void writeIndices(final int y, final byte[] indices) {
+        final int w = image.getWidth();
+        System.arraycopy(indices, 0, data, y * w, w);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Palette.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Colors of cell states, state i is drawn with color i.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class Palette {
+    /**
+     * Radix of hexadecimal colors.
+     */
+    private static final int HEX_RADIX = 16;
+
+    /**
+     * Largest channel value.
+     */
+    private static final int CHANNEL_MAX = 255;
+
+    /**
+     * RGB colors per state.
+     */
+    private final int[] colors;
+
+    /**
+     * Constructs palette.
+     *
+     * @param colors RGB colors per state, at least two and at most
+     * {@link IndexedRowRaster#MAX_COLORS}.
+     */
+    public Palette(final int[] colors) {
+        if (colors.length < 2 || colors.length > IndexedRowRaster.MAX_COLORS) {
+            throw new IllegalArgumentException("Palette size out of range: "
+                    + colors.length);
+        }
+        this.colors = colors.clone();
+    }
+
+    /**
+     * Default palette from white to black, two states match
+     * {@link Rule#COLOR_TO_CHAR}.
+     *
+     * @param states Number of states.
+     * @return Gray scale palette.
+     */
+    public static Palette gray(final int states) {
+        final int[] colors = new int[states];
+        for (int i = 0; i < states; i++) {
+            final int v = CHANNEL_MAX - i * CHANNEL_MAX / (states - 1);
+            colors[i] = new Color(v, v, v).getRGB();
+        }
+        return new Palette(colors);
+    }
+
+    /**
+     * Parses a comma separated list of colors, each a name of a
+     * {@link Color} constant such as "red" or a hex value such as
+     * "#ff8000".
+     *
+     * @param spec Color list.
+     * @return Parsed palette.
+     */
+    public static Palette parse(final String spec) {
+        final String[] names = spec.split(",");
+        final int[] colors = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            colors[i] = parseColor(names[i].trim());
+        }
+        return new Palette(colors);
+    }
+
+    /**
+     * Parses one color.
+     *
+     * @param name Color name or hex value.
+     * @return RGB color.
+     */
+    private static int parseColor(final String name) {
+        if (name.startsWith("#")) {
+            try {
+                return new Color(Integer.parseInt(name.substring(1),
+                            HEX_RADIX)).getRGB();
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid color: " + name,
+                        e);
+            }
+        }
+        try {
+            return ((Color) Color.class.getField(name.toUpperCase(
+                            Locale.ROOT)).get(null)).getRGB();
+        } catch (NoSuchFieldException | IllegalAccessException
+                | ClassCastException e) {
+            throw new IllegalArgumentException("Unknown color: " + name, e);
+        }
+    }
+
+    /**
+     * Number of colors.
+     *
+     * @return Palette size.
+     */
+    public int size() {
+        return colors.length;
+    }
+
+    /**
+     * Colors of the palette.
+     *
+     * @return Copy of the RGB colors per state.
+     */
+    public int[] getColors() {
+        return colors.clone();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        return o instanceof Palette
+            && Arrays.equals(colors, ((Palette) o).colors);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(colors);
+    }
+}
@@ -0,0 +1,344 @@
+/**
+ * ParallelEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Elementary cellular automata engine which splits rows into chunks computed
+ * on a {@link ForkJoinPool}.
+ *
+ * Every chunk copies its words plus a halo of neighbor cells on both sides
+ * into a private buffer, steps the buffer several generations on its own and
+ * writes back the part which is still exact. Cells invalidated by the
+ * missing neighbors beyond the halo move inwards one cell per generation,
+ * so a halo of h words allows up to 64 * h generations between
+ * synchronisations of the whole row.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class ParallelEngine implements RowEngine {
+    /**
+     * Default chunk size in words (256k cells).
+     */
+    public static final int DEFAULT_CHUNK_WORDS = 4096;
+
+    /**
+     * Default generations between synchronisations.
+     */
+    public static final int DEFAULT_SYNC_GENERATIONS = BitRows.WORD_BITS;
+
+    /**
+     * Rule to apply.
+     */
+    private final CompiledRule rule;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Words in a row.
+     */
+    private final int words;
+
+    /**
+     * Mask of valid cells in the last word of a row.
+     */
+    private final long lastMask;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Pool running the chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Maximum chunk size in words.
+     */
+    private final int chunkWords;
+
+    /**
+     * Generations computed per chunk between synchronisations.
+     */
+    private final int syncGenerations;
+
+    /**
+     * Halo size in words on each side of a chunk.
+     */
+    private final int haloWords;
+
+    /**
+     * Per worker local buffers.
+     */
+    private final ThreadLocal<long[][]> buffers = new ThreadLocal<long[][]>();
+
+    /**
+     * Row used between synchronisations of a multi-block advance.
+     */
+    private long[] scratch;
+
+    /**
+     * Constructs periodic engine with default chunking on a new pool using
+     * all processors.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     */
+    public ParallelEngine(final Rule rule, final int width) {
+        this(rule, width, Boundary.PERIODIC, new ForkJoinPool(),
+                DEFAULT_CHUNK_WORDS, DEFAULT_SYNC_GENERATIONS);
+    }
+
+    /**
+     * Constructs engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     * @param pool Pool running the chunks.
+     * @param chunkWords Maximum chunk size in words.
+     * @param syncGenerations Generations computed per chunk between
+     * synchronisations of the whole row.
+     */
+    public ParallelEngine(final Rule rule, final int width,
+            final Boundary boundary, final ForkJoinPool pool,
+            final int chunkWords, final int syncGenerations) {
+        if (width < 1 || chunkWords < 1 || syncGenerations < 1) {
+            throw new IllegalArgumentException("Invalid parallel engine: width "
+                    + width + ", chunk " + chunkWords + ", generations "
+                    + syncGenerations);
+        }
+        this.rule = rule.compile();
+        this.width = width;
+        this.boundary = boundary;
+        this.pool = pool;
+        this.chunkWords = chunkWords;
+        this.syncGenerations = syncGenerations;
+        words = BitRows.wordCount(width);
+        lastMask = BitRows.lastWordMask(width);
+        haloWords = BitRows.wordCount(syncGenerations);
+    }
+
+    @Override
+    public final int getWidth() {
+        return width;
+    }
+
+    @Override
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    @Override
+    public final void step(final long[] current, final long[] next) {
+        pool.invoke(new Chunk(current, next, 0, words, 1));
+    }
+
+    /**
+     * Computes several generations, synchronising the whole row only every
+     * {@code syncGenerations} generations.
+     *
+     * Not thread-safe, an engine must be advanced by one thread at a time.
+     *
+     * @param current Current generation, left untouched.
+     * @param next Array where the result is written, must not be the same
+     * array as current.
+     * @param generations Number of generations to compute.
+     */
+    public final void advance(final long[] current, final long[] next,
+            final long generations) {
+        if (generations <= 0) {
+            System.arraycopy(current, 0, next, 0, words);
+            return;
+        }
+        if (scratch == null) {
+            scratch = BitRows.newRow(width);
+        }
+        long[] src = current;
+        long[] dst = next;
+        long remaining = generations;
+        while (remaining > 0) {
+            final int g = (int) Math.min(remaining, syncGenerations);
+            pool.invoke(new Chunk(src, dst, 0, words, g));
+            remaining -= g;
+            src = dst;
+            dst = dst == next ? scratch : next;
+        }
+        if (src != next) {
+            System.arraycopy(src, 0, next, 0, words);
+        }
+    }
+
+    /**
+     * Local buffers of the calling worker.
+     *
+     * @return Two buffers big enough for a chunk with halos.
+     */
+    private long[][] localBuffers() {
+        long[][] b = buffers.get();
+        final int size = Math.min(chunkWords, words) + 2 * haloWords;
+        if (b == null || b[0].length < size) {
+            b = new long[][] {new long[size], new long[size]};
+            buffers.set(b);
+        }
+        return b;
+    }
+
+    /**
+     * Zeroes cells of a local buffer which lie outside a fixed lattice.
+     *
+     * @param buf Local buffer.
+     * @param n Used words of the buffer.
+     * @param pos0 Lattice position of the first buffer cell.
+     */
+    private void clearOutside(final long[] buf, final int n,
+            final long pos0) {
+        for (int j = 0; j < n && pos0 + (long) j * BitRows.WORD_BITS < 0;
+                j++) {
+            final long start = pos0 + (long) j * BitRows.WORD_BITS;
+            buf[j] &= start <= -BitRows.WORD_BITS ? 0 : -1L << -start;
+        }
+        for (int j = n - 1; j >= 0
+                && pos0 + (long) (j + 1) * BitRows.WORD_BITS > width; j--) {
+            final long start = pos0 + (long) j * BitRows.WORD_BITS;
+            buf[j] &= start >= width ? 0 : BitRows.lastWordMask(width);
+        }
+    }
+
+    /**
+     * Steps a local buffer one generation, reading zeroes past its ends.
+     *
+     * @param src Source buffer.
+     * @param dst Destination buffer.
+     * @param n Used words of the buffers.
+     */
+    private void stepLocal(final long[] src, final long[] dst, final int n) {
+        long carry = 0;
+        for (int k = 0; k < n; k++) {
+            final long c = src[k];
+            final long l = (c << 1) | carry;
+            long r = c >>> 1;
+            if (k + 1 < n) {
+                r |= src[k + 1] << (BitRows.WORD_BITS - 1);
+            }
+            carry = c >>> (BitRows.WORD_BITS - 1);
+            dst[k] = rule.applyWord(l, c, r);
+        }
+    }
+
+    /**
+     * Fork/join task computing a range of words.
+     */
+    private final class Chunk extends RecursiveAction {
+        /**
+         * serialVersionUID needed for serializable class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Source row.
+         */
+        private final long[] src;
+
+        /**
+         * Destination row.
+         */
+        private final long[] dst;
+
+        /**
+         * First word of the range.
+         */
+        private final int from;
+
+        /**
+         * End of the range, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Generations to compute.
+         */
+        private final int generations;
+
+        /**
+         * Constructs task.
+         *
+         * @param src Source row.
+         * @param dst Destination row.
+         * @param from First word.
+         * @param to End word, exclusive.
+         * @param generations Generations to compute, at most
+         * syncGenerations.
+         */
+        Chunk(final long[] src, final long[] dst, final int from,
+                final int to, final int generations) {
+            this.src = src;
+            this.dst = dst;
+            this.from = from;
+            this.to = to;
+            this.generations = generations;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkWords) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Chunk(src, dst, from, mid, generations),
+                        new Chunk(src, dst, mid, to, generations));
+                return;
+            }
+
+            final long[][] b = localBuffers();
+            long[] a = b[0];
+            long[] c = b[1];
+            final int n = to - from + 2 * haloWords;
+            final long pos0 = (long) (from - haloWords) * BitRows.WORD_BITS;
+
+            // Gather the chunk and its halo as one contiguous run of cells.
+            for (int j = 0; j < n; j++) {
+                a[j] = BitRows.window(src, width,
+                        pos0 + (long) j * BitRows.WORD_BITS, boundary);
+            }
+            final boolean fixed = boundary == Boundary.FIXED;
+            for (int g = 0; g < generations; g++) {
+                stepLocal(a, c, n);
+                if (fixed) {
+                    clearOutside(c, n, pos0);
+                }
+                long[] tmp = a;
+                a = c;
+                c = tmp;
+            }
+
+            System.arraycopy(a, haloWords, dst, from, to - from);
+            if (to == words) {
+                dst[words - 1] &= lastMask;
+            }
+        }
+    }
+}
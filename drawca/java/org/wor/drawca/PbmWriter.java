@@ -0,0 +1,98 @@
+/**
+ * PbmWriter.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams rows into a binary (P4) portable bitmap.
+ *
+ * Only one row is buffered at a time so the image can be arbitrarily tall.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class PbmWriter implements RowSink {
+    /**
+     * Output stream.
+     */
+    private final OutputStream out;
+
+    /**
+     * Image height in rows.
+     */
+    private final long height;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Buffer for one packed row.
+     */
+    private final byte[] line;
+
+    /**
+     * Number of rows written.
+     */
+    private long written;
+
+    /**
+     * Constructs writer and writes the header.
+     *
+     * @param out Output stream, closed by {@link #close()}.
+     * @param width Row width in cells.
+     * @param height Number of rows which will be written.
+     * @throws IOException If writing the header fails.
+     */
+    public PbmWriter(final OutputStream out, final int width,
+            final long height) throws IOException {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        line = new byte[BitRows.byteCount(width)];
+        out.write(("P4\n" + width + " " + height + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        if (written == height) {
+            throw new IOException("Image already has " + height + " rows");
+        }
+        // PBM uses one for black which is also the color of a one cell.
+        BitRows.packMsbFirst(row, width, line);
+        out.write(line);
+        written++;
+    }
+
+    @Override
+    public final void close() throws IOException {
+        out.close();
+        if (written != height) {
+            throw new IOException("Expected " + height + " rows, got "
+                    + written);
+        }
+    }
+}
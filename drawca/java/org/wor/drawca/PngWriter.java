@@ -0,0 +1,299 @@
+/**
+ * PngWriter.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streams rows into a palette PNG image.
+ *
+ * Rows are compressed as they arrive and emitted as a sequence of IDAT
+ * chunks, so memory use does not depend on the image height. Binary rows
+ * are written with 1 bit per pixel and the palette of
+ * {@link Rule#COLOR_TO_CHAR}, rows of states with 8 bits per pixel and a
+ * palette of up to {@link IndexedRowRaster#MAX_COLORS} colors.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class PngWriter implements RowSink, StateSink {
+    /**
+     * PNG file signature.
+     */
+    private static final byte[] SIGNATURE = {
+        (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+
+    /**
+     * Bit depth of binary images.
+     */
+    private static final int BINARY_DEPTH = 1;
+
+    /**
+     * Bit depth of images of states.
+     */
+    private static final int STATE_DEPTH = 8;
+
+    /**
+     * Color type for palette images.
+     */
+    private static final int COLOR_TYPE_PALETTE = 3;
+
+    /**
+     * Maximum size of one IDAT chunk.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Largest height allowed by the PNG header.
+     */
+    private static final long MAX_DIMENSION = Integer.MAX_VALUE;
+
+    /**
+     * Bits in a byte used for masking color components.
+     */
+    private static final int BYTE_MASK = 0xff;
+
+    /**
+     * Underlying output.
+     */
+    private final DataOutputStream out;
+
+    /**
+     * Compressed image data stream.
+     */
+    private final DeflaterOutputStream idat;
+
+    /**
+     * Deflater of the image data.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Image height in rows.
+     */
+    private final long height;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Bits per pixel, {@link #BINARY_DEPTH} or {@link #STATE_DEPTH}.
+     */
+    private final int depth;
+
+    /**
+     * Buffer for one scanline, filter type byte followed by packed row.
+     */
+    private final byte[] line;
+
+    /**
+     * Number of rows written.
+     */
+    private long written;
+
+    /**
+     * Constructs writer of a binary image and writes the image header.
+     *
+     * @param out Output stream, closed by {@link #close()}.
+     * @param width Row width in cells.
+     * @param height Number of rows which will be written.
+     * @throws IOException If writing the header fails.
+     */
+    public PngWriter(final OutputStream out, final int width,
+            final long height) throws IOException {
+        this(out, width, height, BINARY_DEPTH, new int[] {
+            Rule.COLOR_TO_CHAR.inverse().get('0'),
+            Rule.COLOR_TO_CHAR.inverse().get('1')});
+    }
+
+    /**
+     * Constructs writer of an image of states and writes the image header.
+     *
+     * @param out Output stream, closed by {@link #close()}.
+     * @param width Row width in cells.
+     * @param height Number of rows which will be written.
+     * @param colors RGB colors, state i is drawn with color i.
+     * @throws IOException If writing the header fails.
+     */
+    public PngWriter(final OutputStream out, final int width,
+            final long height, final int[] colors) throws IOException {
+        this(out, width, height, STATE_DEPTH, colors);
+    }
+
+    /**
+     * Constructs writer and writes the image header.
+     *
+     * @param out Output stream, closed by {@link #close()}.
+     * @param width Row width in cells.
+     * @param height Number of rows which will be written.
+     * @param depth Bits per pixel.
+     * @param colors RGB colors of the palette.
+     * @throws IOException If writing the header fails.
+     */
+    private PngWriter(final OutputStream out, final int width,
+            final long height, final int depth, final int[] colors)
+        throws IOException {
+        if (width < 1 || height < 1 || height > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Invalid PNG size: " + width
+                    + "x" + height);
+        }
+        if (colors.length < 2 || colors.length > 1 << depth) {
+            throw new IllegalArgumentException("Palette size out of range: "
+                    + colors.length);
+        }
+        this.out = new DataOutputStream(out);
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        line = new byte[1 + (depth == BINARY_DEPTH
+                    ? BitRows.byteCount(width) : width)];
+
+        this.out.write(SIGNATURE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream h = new DataOutputStream(header);
+        h.writeInt(width);
+        h.writeInt((int) height);
+        h.writeByte(depth);
+        h.writeByte(COLOR_TYPE_PALETTE);
+        h.writeByte(0); // Compression method
+        h.writeByte(0); // Filter method
+        h.writeByte(0); // Interlace method
+        writeChunk("IHDR", header.toByteArray(), 0, header.size());
+
+        byte[] palette = new byte[colors.length * 3];
+        for (int i = 0; i < colors.length; i++) {
+            int rgb = colors[i];
+            palette[3 * i] = (byte) ((rgb >>> 16) & BYTE_MASK);
+            palette[3 * i + 1] = (byte) ((rgb >>> 8) & BYTE_MASK);
+            palette[3 * i + 2] = (byte) (rgb & BYTE_MASK);
+        }
+        writeChunk("PLTE", palette, 0, palette.length);
+
+        deflater = new Deflater();
+        idat = new DeflaterOutputStream(new ChunkStream(), deflater,
+                CHUNK_SIZE);
+    }
+
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        if (depth == BINARY_DEPTH) {
+            BitRows.packMsbFirst(row, width, line, 1);
+        } else {
+            for (int i = 0; i < width; i++) {
+                line[1 + i] = (byte) (BitRows.get(row, i) ? 1 : 0);
+            }
+        }
+        writeLine();
+    }
+
+    @Override
+    public final void writeStates(final long generation,
+            final byte[] states) throws IOException {
+        if (depth != STATE_DEPTH) {
+            throw new IllegalStateException("Binary image has no states");
+        }
+        System.arraycopy(states, 0, line, 1, width);
+        writeLine();
+    }
+
+    /**
+     * Compresses the filled scanline buffer.
+     *
+     * @throws IOException If writing fails or the image is full.
+     */
+    private void writeLine() throws IOException {
+        if (written == height) {
+            throw new IOException("Image already has " + height + " rows");
+        }
+        // Filter type 0 (none) is already in line[0].
+        idat.write(line);
+        written++;
+    }
+
+    @Override
+    public final void close() throws IOException {
+        try {
+            idat.finish();
+            writeChunk("IEND", new byte[0], 0, 0);
+            out.close();
+        } finally {
+            deflater.end();
+        }
+        if (written != height) {
+            throw new IOException("Expected " + height + " rows, got "
+                    + written);
+        }
+    }
+
+    /**
+     * Writes one chunk with length and CRC.
+     *
+     * @param type Chunk type.
+     * @param data Chunk data.
+     * @param offset Index of the first data byte.
+     * @param length Number of data bytes.
+     * @throws IOException If writing fails.
+     */
+    private void writeChunk(final String type, final byte[] data,
+            final int offset, final int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, offset, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Stream which splits compressed data into IDAT chunks.
+     */
+    private final class ChunkStream extends OutputStream {
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+            int pos = off;
+            int remaining = len;
+            while (remaining > 0) {
+                int n = Math.min(remaining, CHUNK_SIZE);
+                writeChunk("IDAT", b, pos, n);
+                pos += n;
+                remaining -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * RowEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Simulation core which computes the next generation of a packed row.
+ *
+ * Rows are laid out as described in {@link BitRows}.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public interface RowEngine {
+    /**
+     * Width of the lattice in cells.
+     *
+     * @return Row width.
+     */
+    int getWidth();
+
+    /**
+     * Boundary condition of the lattice.
+     *
+     * @return Boundary condition.
+     */
+    Boundary getBoundary();
+
+    /**
+     * Computes the next generation.
+     *
+     * @param current Current generation, left untouched.
+     * @param next Array where the next generation is written, must not be
+     * the same array as current.
+     */
+    void step(long[] current, long[] next);
+}
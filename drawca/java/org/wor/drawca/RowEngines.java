@@ -0,0 +1,137 @@
+/**
+ * RowEngines.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Factory for the single threaded bit-packed row engines.
+ *
+ * {@code VectorEngine} is compiled from a separate source root and needs the
+ * jdk.incubator.vector module at run time, so it is only looked up
+ * reflectively. When it cannot be loaded the scalar {@link BitPackedEngine}
+ * is used instead.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class RowEngines {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(RowEngines.class.getName());
+
+    /**
+     * Fully qualified name of the vector engine.
+     */
+    private static final String VECTOR_ENGINE = "org.wor.drawca.VectorEngine";
+
+    /**
+     * Constructor of the vector engine, null if it is not available.
+     */
+    private static final Constructor<? extends RowEngine> VECTOR_CONSTRUCTOR =
+        findVectorConstructor();
+
+    /**
+     * Private utility class constructor.
+     */
+    private RowEngines() {
+        throw new AssertionError("Utility class instantiation.");
+    }
+
+    /**
+     * Looks up the vector engine constructor.
+     *
+     * @return Constructor or null if the class or the vector module is
+     * missing.
+     */
+    private static Constructor<? extends RowEngine> findVectorConstructor() {
+        try {
+            Class<? extends RowEngine> c = Class.forName(VECTOR_ENGINE)
+                .asSubclass(RowEngine.class);
+            Constructor<? extends RowEngine> constructor = c.getConstructor(
+                    Rule.class, int.class, Boundary.class);
+            // Fails here if the module is missing.
+            c.getMethod("getLanes").invoke(null);
+            return constructor;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOG.log(Level.FINE, "Vector engine not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether {@code VectorEngine} can be used.
+     *
+     * @return True if the vector engine and module were found.
+     */
+    public static boolean isVectorAvailable() {
+        return VECTOR_CONSTRUCTOR != null;
+    }
+
+    /**
+     * Creates the vector engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     * @return New vector engine.
+     * @throws UnsupportedOperationException If the vector engine is not
+     * available.
+     */
+    public static RowEngine vector(final Rule rule, final int width,
+            final Boundary boundary) {
+        if (VECTOR_CONSTRUCTOR == null) {
+            throw new UnsupportedOperationException("Vector engine not "
+                    + "available, compile drawca/vector and run with "
+                    + "--add-modules jdk.incubator.vector");
+        }
+        try {
+            return VECTOR_CONSTRUCTOR.newInstance(rule, width, boundary);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates the fastest available single threaded engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     * @return Vector engine if available, otherwise {@link BitPackedEngine}.
+     */
+    public static RowEngine fastest(final Rule rule, final int width,
+            final Boundary boundary) {
+        if (isVectorAvailable()) {
+            return vector(rule, width, boundary);
+        }
+        return new BitPackedEngine(rule, width, boundary);
+    }
+}
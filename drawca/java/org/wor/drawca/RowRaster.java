@@ -0,0 +1,48 @@
+/**
+ * RowRaster.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Image which cellular automata rows are written into one line at a time.
+ *
+ * Implementations write straight into the data buffer of their image, so
+ * only the new line is touched.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public interface RowRaster {
+    /**
+     * The image rows are written to.
+     *
+     * @return Image, width is the row width.
+     */
+    BufferedImage getImage();
+
+    /**
+     * Writes a packed row to an image line.
+     *
+     * @param y Image line.
+     * @param row Packed row, laid out as in {@link BitRows}.
+     */
+    void writeRow(int y, long[] row);
+}
@@ -0,0 +1,87 @@
+/**
+ * RowTracer.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+/**
+ * Marks phases of row computation for profilers.
+ *
+ * {@link DrawCAMetrics#tracer()} returns a tracer emitting Java Flight
+ * Recorder events if the classes in drawca/jfr are compiled and the JVM
+ * supports them, otherwise {@link #NONE}.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public interface RowTracer {
+    /**
+     * Phase stepping a row to the next generation.
+     */
+    String SIMULATION = "simulation";
+
+    /**
+     * Phase writing a row to an image or file.
+     */
+    String RASTER = "raster";
+
+    /**
+     * Phase computing a tile.
+     */
+    String TILE = "tile";
+
+    /**
+     * Tracer which records nothing.
+     */
+    RowTracer NONE = new RowTracer() {
+        /**
+         * Span which records nothing.
+         */
+        private final Span none = new Span() {
+            @Override
+            public void end(final long generation, final long cells) {
+            }
+        };
+
+        @Override
+        public Span begin(final String phase) {
+            return none;
+        }
+    };
+
+    /**
+     * Starts a phase.
+     *
+     * @param phase Phase name such as {@link #SIMULATION}.
+     * @return Span to end when the phase is done.
+     */
+    Span begin(String phase);
+
+    /**
+     * Running phase.
+     */
+    interface Span {
+        /**
+         * Ends the phase.
+         *
+         * @param generation Generation or row index worked on.
+         * @param cells Number of cells processed.
+         */
+        void end(long generation, long cells);
+    }
+}
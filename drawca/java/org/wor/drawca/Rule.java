@@ -46,6 +46,21 @@ public class Rule {
      */
     private Map<String, Character> rule;
 
+    /**
+     * Rule number [0-255].
+     */
+    private final int number;
+
+    /**
+     * Rule compiled into primitive lookup tables.
+     */
+    private final CompiledRule compiled;
+
+    /**
+     * Character values indexed by cell value [0-1].
+     */
+    private static final Character[] BIT_TO_CHAR = {'0', '1'};
+
     /**
      * 2-way color (int/RGB) to character mapping.
      *
@@ -57,12 +72,24 @@ public class Rule {
                 Color.WHITE.getRGB(), '0',
                 Color.BLACK.getRGB(), '1');
 
+    /**
+     * Color of a zero cell.
+     */
+    private static final int ZERO_COLOR = COLOR_TO_CHAR.inverse().get('0');
+
+    /**
+     * Color of a one cell.
+     */
+    private static final int ONE_COLOR = COLOR_TO_CHAR.inverse().get('1');
+
     /**
      * Constructs rule from integer number.
      *
      * @param num Rule number to construct [0-255].
      */
     public Rule(final int num) {
+        number = num;
+        compiled = new CompiledRule(num);
         // Transform integer rule to binary rule as a String.
         final String ruleStr = String.format("%8s",
                 Integer.toBinaryString(num)).replace(' ', '0');
@@ -89,6 +116,27 @@ public class Rule {
         LOG.info(rule.toString());
     }
 
+    /**
+     * Gets the rule number.
+     *
+     * Bit i of the number is the new value of a cell whose neighborhood,
+     * read as a binary number (left, middle, right), is i.
+     *
+     * @return Rule number [0-255].
+     */
+    public final int getNumber() {
+        return number;
+    }
+
+    /**
+     * Gets the rule compiled into primitive lookup tables.
+     *
+     * @return Compiled rule.
+     */
+    public final CompiledRule compile() {
+        return compiled;
+    }
+
     /**
      * Gets matching Character value for the given neighborhood.
      *
@@ -111,9 +159,23 @@ public class Rule {
      * @return Character which matches given neighborhood.
      */
     public final Character getValue(final int a, final int b, final int c) {
-        String neighborhood = COLOR_TO_CHAR.get(a).toString()
-            + COLOR_TO_CHAR.get(b) + COLOR_TO_CHAR.get(c);
-        return rule.get(neighborhood);
+        return BIT_TO_CHAR[compiled.lookup(colorToBit(a), colorToBit(b),
+                colorToBit(c))];
     }
-}
 
+    /**
+     * Maps a RGB color value to a cell value.
+     *
+     * @param color RGB color value from {@link #COLOR_TO_CHAR}.
+     * @return Cell value [0-1].
+     */
+    private static int colorToBit(final int color) {
+        if (color == ONE_COLOR) {
+            return 1;
+        } else if (color == ZERO_COLOR) {
+            return 0;
+        }
+        throw new IllegalArgumentException("Unknown cell color: "
+                + Integer.toHexString(color));
+    }
+}
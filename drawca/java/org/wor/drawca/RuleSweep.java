@@ -0,0 +1,302 @@
+/**
+ * RuleSweep.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs many rules from the same initial row on a worker pool and collects
+ * per-rule statistics without rendering anything.
+ *
+ * Runs stop early once {@link CycleDetector} finds the cycle of the
+ * lattice, the last row is then computed by a jump around the cycle.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class RuleSweep {
+    /**
+     * Number of elementary rules.
+     */
+    public static final int RULE_COUNT = 256;
+
+    /**
+     * CSV header line.
+     */
+    public static final String CSV_HEADER =
+        "rule,rows,final_density,rows_per_sec,transient,period";
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * First row of every run.
+     */
+    private final long[] initialRow;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Rows per run including the initial row.
+     */
+    private final long rows;
+
+    /**
+     * Constructs sweep.
+     *
+     * @param initialRow First row of every run, not modified.
+     * @param width Row width in cells.
+     * @param boundary Boundary condition.
+     * @param rows Rows per run including the initial row.
+     */
+    public RuleSweep(final long[] initialRow, final int width,
+            final Boundary boundary, final long rows) {
+        this.initialRow = initialRow;
+        this.width = width;
+        this.boundary = boundary;
+        this.rows = rows;
+    }
+
+    /**
+     * Parses a rule list such as "all", "30,90,110" or "0-15,30".
+     *
+     * @param spec Rule list.
+     * @return Rule numbers in the given order.
+     */
+    public static List<Integer> parseRules(final String spec) {
+        List<Integer> rules = new ArrayList<Integer>();
+        if ("all".equalsIgnoreCase(spec.trim())) {
+            for (int i = 0; i < RULE_COUNT; i++) {
+                rules.add(i);
+            }
+            return rules;
+        }
+        for (String part : spec.split(",")) {
+            String[] range = part.trim().split("-");
+            int first = Integer.parseInt(range[0].trim());
+            int last = range.length > 1
+                ? Integer.parseInt(range[1].trim()) : first;
+            if (range.length > 2 || first < 0 || last >= RULE_COUNT
+                    || first > last) {
+                throw new IllegalArgumentException("Invalid rule range: "
+                        + part);
+            }
+            for (int i = first; i <= last; i++) {
+                rules.add(i);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Runs one rule.
+     *
+     * @param ruleNumber Rule number [0-255].
+     * @return Statistics of the run.
+     */
+    public final Result measure(final int ruleNumber) {
+        RowEngine engine = new BitPackedEngine(new Rule(ruleNumber), width,
+                boundary);
+        CycleDetector detector = new CycleDetector(engine, initialRow);
+
+        final long start = System.nanoTime();
+        // Once the cycle is found the last row is a jump around the cycle.
+        final long last = Math.max(0, rows - 1);
+        detector.detect(last);
+        long[] current = detector.rowAt(last);
+        final long elapsed = Math.max(1, System.nanoTime() - start);
+
+        return new Result(ruleNumber, rows,
+                (double) BitRows.countOnes(current) / width,
+                rows * NANOS_PER_SECOND / elapsed,
+                detector.getTransientLength(), detector.getPeriod());
+    }
+
+    /**
+     * Runs rules concurrently and streams a CSV line per rule as soon as it
+     * finishes.
+     *
+     * @param rules Rule numbers.
+     * @param threads Number of worker threads.
+     * @param csv Output for the CSV lines, header is written first.
+     * @throws IOException If writing fails.
+     */
+    public final void run(final List<Integer> rules, final int threads,
+            final Writer csv) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Result> done =
+                new ExecutorCompletionService<Result>(pool);
+            for (final Integer rule : rules) {
+                done.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return measure(rule);
+                    }
+                });
+            }
+
+            csv.write(CSV_HEADER + "\n");
+            for (int i = 0; i < rules.size(); i++) {
+                csv.write(done.take().get().toCsv() + "\n");
+                csv.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sweep interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Sweep failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Statistics of one rule.
+     */
+    public static final class Result {
+        /**
+         * Rule number.
+         */
+        private final int rule;
+
+        /**
+         * Rows computed.
+         */
+        private final long rows;
+
+        /**
+         * Fraction of one cells in the last row.
+         */
+        private final double finalDensity;
+
+        /**
+         * Rows per second, including rows skipped inside the cycle.
+         */
+        private final double rowsPerSecond;
+
+        /**
+         * Generation where the cycle starts, -1 if none found.
+         */
+        private final long transientLength;
+
+        /**
+         * Cycle length, -1 if none found.
+         */
+        private final long period;
+
+        /**
+         * Constructs result.
+         *
+         * @param rule Rule number.
+         * @param rows Rows computed.
+         * @param finalDensity Fraction of one cells in the last row.
+         * @param rowsPerSecond Rows per second.
+         * @param transientLength Generation where the cycle starts or -1.
+         * @param period Cycle length or -1.
+         */
+        public Result(final int rule, final long rows,
+                final double finalDensity, final double rowsPerSecond,
+                final long transientLength, final long period) {
+            this.rule = rule;
+            this.rows = rows;
+            this.finalDensity = finalDensity;
+            this.rowsPerSecond = rowsPerSecond;
+            this.transientLength = transientLength;
+            this.period = period;
+        }
+
+        /**
+         * Rule number.
+         *
+         * @return Rule number.
+         */
+        public int getRule() {
+            return rule;
+        }
+
+        /**
+         * Fraction of one cells in the last row.
+         *
+         * @return Density [0-1].
+         */
+        public double getFinalDensity() {
+            return finalDensity;
+        }
+
+        /**
+         * Rows per second, including rows skipped inside the cycle.
+         *
+         * @return Throughput.
+         */
+        public double getRowsPerSecond() {
+            return rowsPerSecond;
+        }
+
+        /**
+         * Generation where the cycle starts.
+         *
+         * @return Transient length, -1 if no cycle was found.
+         */
+        public long getTransientLength() {
+            return transientLength;
+        }
+
+        /**
+         * Cycle length.
+         *
+         * @return Period, -1 if no cycle was found.
+         */
+        public long getPeriod() {
+            return period;
+        }
+
+        /**
+         * Formats result as a CSV line matching {@link #CSV_HEADER}.
+         *
+         * @return CSV line without line terminator.
+         */
+        public String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%.6f,%.1f,%d,%d", rule,
+                    rows, finalDensity, rowsPerSecond, transientLength,
+                    period);
+        }
+    }
+}
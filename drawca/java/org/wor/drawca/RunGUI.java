@@ -20,25 +20,53 @@
  */
 package org.wor.drawca;
 
+import java.awt.Image;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.logging.Logger;
 
+import javax.swing.AbstractAction;
+import javax.swing.ActionMap;
+import javax.swing.InputMap;
+import javax.swing.JComponent;
+import javax.swing.ImageIcon;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JScrollPane;
+import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
 import javax.swing.event.MouseInputAdapter;
 
 /**
  * Mouse click listener.
  *
+ * A plain click steps one generation, shift, ctrl and ctrl+shift step 10,
+ * 100 and 1000 generations.
+ *
  * @author "Esa Määttä" (esa.maatta@iki.fi)
  */
 class MouseListener extends MouseInputAdapter {
     @Override
     public void mouseClicked(final MouseEvent e) {
-        // Draw one line iteration on a mouse click
+        // Ask the producer for more lines, they are computed off the EDT.
         CAPanel c = (CAPanel) ((JFrame) e.getSource()).getContentPane();
-        c.drawCellularAutomataIteration();
-        c.repaint();
+        c.requestRows(stepsFor(e.getModifiersEx()));
+    }
+
+    /**
+     * Number of generations a click steps.
+     *
+     * @param modifiers Extended modifiers of the click.
+     * @return Generations to step.
+     */
+    static long stepsFor(final int modifiers) {
+        final boolean shift = (modifiers & InputEvent.SHIFT_DOWN_MASK) != 0;
+        final boolean ctrl = (modifiers & InputEvent.CTRL_DOWN_MASK) != 0;
+        final int level = (ctrl ? 2 : 0) + (shift ? 1 : 0);
+        return RunGUI.STEP_SIZES[level];
     }
 }
 
@@ -53,6 +81,16 @@ public class RunGUI implements Runnable {
      */
     private static final Logger LOG = Logger.getLogger(Rule.class.getName());
 
+    /**
+     * Default frame rate cap.
+     */
+    public static final int DEFAULT_FPS = 60;
+
+    /**
+     * Generations stepped at once by keys 1-4 in per click mode.
+     */
+    static final long[] STEP_SIZES = {1, 10, 100, 1000};
+
     /**
      * Window width of the main GUI window.
      */
@@ -83,11 +121,76 @@ public class RunGUI implements Runnable {
      */
     private String initialLine;
 
+    /**
+     * Initial line as a packed row, used instead of initialLine if set.
+     */
+    private long[] initialRow;
+
+    /**
+     * Width of initialRow in cells.
+     */
+    private int initialRowWidth;
+
+    /**
+     * Analysis stage getting the drawn rows, or null.
+     */
+    private RowSink analysis;
+
+    /**
+     * Cell flipped in a perturbed twin run, -1 for none.
+     */
+    private int damageCell = -1;
+
+    /**
+     * Seed of a random initial line.
+     */
+    private long seed = System.nanoTime();
+
+    /**
+     * Density of one cells in a random initial line.
+     */
+    private double density = SeedGenerator.DEFAULT_DENSITY;
+
     /**
      * Generate new line with mouse click.
      */
     private boolean perClickIteration;
 
+    /**
+     * Stored generations to display instead of computing, null if none.
+     */
+    private HistoryStore history;
+
+    /**
+     * Show the diagram in a pannable and zoomable tiled view.
+     */
+    private boolean tiled;
+
+    /**
+     * Maximum number of repaints per second.
+     */
+    private int fps = DEFAULT_FPS;
+
+    /**
+     * Keep drawing forever with the window as a ring buffer.
+     */
+    private boolean continuous;
+
+    /**
+     * Target rows per second, zero for unlimited.
+     */
+    private double rowsPerSecond;
+
+    /**
+     * Pixel format of the panel image.
+     */
+    private ImageBacking backing = CAPanel.DEFAULT_BACKING;
+
+    /**
+     * Ready rendered image to show instead of computing, null if none.
+     */
+    private BufferedImage image;
+
     /**
      * Construct GUI runner with window size, scaling and a rule number.
      *
@@ -145,6 +248,140 @@ public class RunGUI implements Runnable {
         this.perClickIteration = perClickIteration;
     }
 
+    /**
+     * Constructor which also allows choosing the tiled view.
+     *
+     * for base parameters see:
+     * {@link RunGUI#RunGUI(int, int, float, float, int, String, boolean)}
+     *
+     * @param tiled Show an unbounded diagram in tiles with pan and zoom?
+     */
+    public RunGUI(
+            final int windowWidth,
+            final int windowHeigth,
+            final float xScaleFactor,
+            final float yScaleFactor,
+            final int rule,
+            final String initialLine,
+            final boolean perClickIteration,
+            final boolean tiled) {
+        this(windowWidth, windowHeigth, xScaleFactor, yScaleFactor, rule,
+                initialLine, perClickIteration);
+        this.tiled = tiled;
+    }
+
+    /**
+     * Constructor which displays stored generations instead of computing
+     * them.
+     *
+     * for base parameters see:
+     * {@link RunGUI#RunGUI(int, int, float, float, int)}
+     *
+     * @param history Stored generations, window width follows its width.
+     * @param perClickIteration Show next line per mouse click?
+     */
+    public RunGUI(
+            final int windowWidth,
+            final int windowHeigth,
+            final float xScaleFactor,
+            final float yScaleFactor,
+            final HistoryStore history,
+            final boolean perClickIteration) {
+        this(history.getWidth() * (int) xScaleFactor, windowHeigth,
+                xScaleFactor, yScaleFactor, history.getRule());
+        this.history = history;
+        this.perClickIteration = perClickIteration;
+    }
+
+    /**
+     * Sets the initial line as a packed row, the window width follows the
+     * row width.
+     *
+     * @param initialRow Packed row, such as one read by {@link SeedLoader}.
+     * @param width Row width in cells.
+     */
+    public final void setInitialRow(final long[] initialRow,
+            final int width) {
+        this.initialRow = initialRow;
+        initialRowWidth = width;
+        windowWidth = width * (int) xScaleFactor;
+    }
+
+    /**
+     * Sets how the initial line is generated when none is given.
+     *
+     * @param seed Seed, the same seed gives the same line.
+     * @param density Probability of a one cell [0-1].
+     */
+    public final void setRandomSeed(final long seed, final double density) {
+        this.seed = seed;
+        this.density = density;
+    }
+
+    /**
+     * Draws where a twin run with one initial cell flipped differs, see
+     * {@link CAPanel#setDamageCell(int)}.
+     *
+     * @param cell Cell to flip, -1 for none.
+     */
+    public final void setDamageCell(final int cell) {
+        damageCell = cell;
+    }
+
+    /**
+     * Sets an analysis stage getting each row as it is drawn.
+     *
+     * @param analysis Row sink, such as {@link StatsSink}, or null.
+     */
+    public final void setAnalysis(final RowSink analysis) {
+        this.analysis = analysis;
+    }
+
+    /**
+     * Sets the frame rate cap of the window.
+     *
+     * @param fps Maximum number of repaints per second.
+     */
+    public final void setFps(final int fps) {
+        if (fps < 1) {
+            throw new IllegalArgumentException("Frame rate must be positive: "
+                    + fps);
+        }
+        this.fps = fps;
+    }
+
+    /**
+     * Sets continuous mode which keeps drawing forever and shows the
+     * throughput.
+     *
+     * @param continuous Draw forever?
+     * @param rowsPerSecond Target rows per second, zero for unlimited.
+     */
+    public final void setContinuous(final boolean continuous,
+            final double rowsPerSecond) {
+        this.continuous = continuous;
+        this.rowsPerSecond = rowsPerSecond;
+    }
+
+    /**
+     * Sets the pixel format of the panel image.
+     *
+     * @param backing Image format.
+     */
+    public final void setBacking(final ImageBacking backing) {
+        this.backing = backing;
+    }
+
+    /**
+     * Sets a ready rendered image, such as rows of a {@link GeneralRule},
+     * to show scaled instead of computing rows.
+     *
+     * @param image Image to show.
+     */
+    public final void setImage(final BufferedImage image) {
+        this.image = image;
+    }
+
     @Override
     public final void run() {
         createAndShowGUI();
@@ -160,14 +397,36 @@ public class RunGUI implements Runnable {
 
         JFrame f = new JFrame("Cajava");
 
+        if (tiled) {
+            showTiled(f);
+            return;
+        }
+        if (image != null) {
+            showImage(f);
+            return;
+        }
+
         if (perClickIteration) {
             MouseListener mouseListener = new MouseListener();
             f.addMouseListener(mouseListener);
         }
 
-        CAPanel canvas = new CAPanel(windowWidth, windowHeigth, xScaleFactor,
-                yScaleFactor, rule, initialLine);
+        CAPanel canvas;
+        if (history != null) {
+            canvas = new CAPanel(windowWidth, windowHeigth, xScaleFactor,
+                    yScaleFactor, history, backing);
+        } else {
+            canvas = new CAPanel(windowWidth, windowHeigth, xScaleFactor,
+                    yScaleFactor, rule, initialLine, backing);
+            canvas.setInitialRow(initialRow);
+            canvas.setRandomSeed(seed, density);
+            canvas.setDamageCell(damageCell);
+        }
+        canvas.setAnalysis(analysis);
         f.setContentPane(canvas);
+        if (perClickIteration) {
+            installStepKeys(canvas);
+        }
 
         f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         f.setSize(windowWidth, windowHeigth);
@@ -176,8 +435,83 @@ public class RunGUI implements Runnable {
 
         canvas.setupBackground();
 
+        // Rows are computed on the producer thread, never on the EDT.
+        canvas.setContinuous(continuous);
+        canvas.setShowThroughput(continuous);
+        canvas.setTargetRowsPerSecond(rowsPerSecond);
+        canvas.startProducer(fps);
         if (!perClickIteration) {
-            canvas.drawCellularAutomata();
+            canvas.requestRows(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Binds keys 1-4 to stepping {@link #STEP_SIZES} generations and space
+     * to stepping one generation. Only requests are made on the EDT, the
+     * rows are computed by the producer thread.
+     *
+     * @param canvas Panel to step.
+     */
+    private static void installStepKeys(final CAPanel canvas) {
+        InputMap keys = canvas.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        ActionMap actions = canvas.getActionMap();
+        keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0), "step0");
+        for (int i = 0; i < STEP_SIZES.length; i++) {
+            final long steps = STEP_SIZES[i];
+            keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_1 + i, 0), "step" + i);
+            keys.put(KeyStroke.getKeyStroke(KeyEvent.VK_NUMPAD1 + i, 0),
+                    "step" + i);
+            actions.put("step" + i, new AbstractAction() {
+                @Override
+                public void actionPerformed(final ActionEvent e) {
+                    canvas.requestRows(steps);
+                }
+            });
+        }
+    }
+
+    /**
+     * Shows the ready rendered image scaled in a frame.
+     *
+     * @param f Frame to show.
+     */
+    private void showImage(final JFrame f) {
+        final int w = (int) (image.getWidth() * xScaleFactor);
+        final int h = (int) (image.getHeight() * yScaleFactor);
+        // Cells are scaled to blocks, never blurred.
+        f.setContentPane(new JScrollPane(new JLabel(new ImageIcon(
+                            image.getScaledInstance(w, h,
+                                Image.SCALE_REPLICATE)))));
+        f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        f.setSize(windowWidth, windowHeigth);
+        f.setLocationRelativeTo(null);
+        f.setVisible(true);
+    }
+
+    /**
+     * Shows the tiled view in a frame.
+     *
+     * @param f Frame to show.
+     */
+    private void showTiled(final JFrame f) {
+        int width = initialLine.length() > 0 ? initialLine.length()
+            : (int) (windowWidth / xScaleFactor);
+        long[] row = initialRow;
+        if (row != null) {
+            width = initialRowWidth;
+        } else {
+            row = initialLine.length() > 0
+                ? BitRows.fromString(initialLine, width)
+                : SeedGenerator.randomRow(width, density, seed);
         }
+        // Scale factor 2 is one zoom in level.
+        final int zoom = -(int) Math.round(Math.log(xScaleFactor)
+                / Math.log(2));
+        f.setContentPane(new TiledCAPanel(new TileSource(new Rule(rule),
+                        row, width), zoom));
+        f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        f.setSize(windowWidth, windowHeigth);
+        f.setLocationRelativeTo(null);
+        f.setVisible(true);
     }
 }
@@ -0,0 +1,361 @@
+/**
+ * SeedGenerator.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Seeded generator of random initial rows.
+ *
+ * The generator is SplitMix64, the algorithm of the JDK 8
+ * SplittableRandom, so it gives the same numbers for the same seed and
+ * {@link #split()} gives an independent generator for a chunk of a row.
+ * Rows are filled 64 cells per generated word. A cell is one with
+ * probability p by combining words along the binary expansion of p: from
+ * its lowest set bit upwards a one bit ORs in a new random word and a zero
+ * bit ANDs one in, so p needs as many words as it has significant bits.
+ *
+ * Rows are filled in chunks of {@link #CHUNK_WORDS} words, each from its
+ * own split generator, so a row depends only on its seed and not on how
+ * many threads fill it.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class SeedGenerator {
+    /**
+     * Bits of precision of a density.
+     */
+    public static final int DENSITY_BITS = 32;
+
+    /**
+     * Words of a row filled by one generator (1M cells).
+     */
+    public static final int CHUNK_WORDS = 16384;
+
+    /**
+     * Default density of one cells.
+     */
+    public static final double DEFAULT_DENSITY = 0.5;
+
+    /**
+     * Cells of a random row of states per generated word.
+     */
+    private static final int CELLS_PER_WORD = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Mask of the lowest byte of a word.
+     */
+    private static final long BYTE_MASK = 0xff;
+
+    /**
+     * Increment of the seed per generated word, odd.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Density one as a fraction of 2^{@link #DENSITY_BITS}.
+     */
+    private static final long ONE = 1L << DENSITY_BITS;
+
+    /**
+     * Gammas with fewer bit flips than this are made irregular.
+     */
+    private static final int MIN_GAMMA_FLIPS = 24;
+
+    /**
+     * Current seed.
+     */
+    private long seed;
+
+    /**
+     * Increment of the seed, odd.
+     */
+    private final long gamma;
+
+    /**
+     * Constructs generator.
+     *
+     * @param seed Seed, equal seeds give equal rows.
+     */
+    public SeedGenerator(final long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Constructs generator with given increment.
+     *
+     * @param seed Seed.
+     * @param gamma Increment of the seed, odd.
+     */
+    private SeedGenerator(final long seed, final long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Returns a generator independent of this one, advancing this one.
+     *
+     * @return New generator.
+     */
+    public SeedGenerator split() {
+        return new SeedGenerator(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Returns 64 random bits.
+     *
+     * @return Random word.
+     */
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Returns a word whose bits are one with a given probability.
+     *
+     * @param fraction Probability as a fraction of 2^{@link #DENSITY_BITS}
+     * from {@link #fraction(double)}.
+     * @return Random word.
+     */
+    long nextWord(final long fraction) {
+        if (fraction <= 0) {
+            return 0;
+        } else if (fraction >= ONE) {
+            return -1L;
+        }
+        long w = nextLong();
+        for (int b = Long.numberOfTrailingZeros(fraction) + 1;
+                b < DENSITY_BITS; b++) {
+            w = ((fraction >>> b) & 1) != 0 ? w | nextLong()
+                : w & nextLong();
+        }
+        return w;
+    }
+
+    /**
+     * Fills words with random cells.
+     *
+     * @param words Words to fill.
+     * @param from First word.
+     * @param to End word, exclusive.
+     * @param density Probability of a one cell [0-1].
+     */
+    public void fill(final long[] words, final int from, final int to,
+            final double density) {
+        final long fraction = fraction(density);
+        for (int k = from; k < to; k++) {
+            words[k] = nextWord(fraction);
+        }
+    }
+
+    /**
+     * Converts a density to a fraction of 2^{@link #DENSITY_BITS}.
+     *
+     * @param density Probability of a one cell [0-1].
+     * @return Rounded fraction.
+     */
+    static long fraction(final double density) {
+        if (!(density >= 0 && density <= 1)) {
+            throw new IllegalArgumentException("Density out of range: "
+                    + density);
+        }
+        return Math.round(density * ONE);
+    }
+
+    /**
+     * Creates a random row on the calling thread.
+     *
+     * @param width Row width in cells.
+     * @param density Probability of a one cell [0-1].
+     * @param seed Seed.
+     * @return Packed row.
+     */
+    public static long[] randomRow(final int width, final double density,
+            final long seed) {
+        return randomRow(width, density, seed, null);
+    }
+
+    /**
+     * Creates a random row filling its chunks in parallel.
+     *
+     * @param width Row width in cells.
+     * @param density Probability of a one cell [0-1].
+     * @param seed Seed.
+     * @param pool Pool filling the chunks, or null for the calling thread.
+     * @return Packed row, the same for the same seed with or without pool.
+     */
+    public static long[] randomRow(final int width, final double density,
+            final long seed, final ForkJoinPool pool) {
+        final long[] row = BitRows.newRow(width);
+        final long fraction = fraction(density);
+        final int chunks = (row.length + CHUNK_WORDS - 1) / CHUNK_WORDS;
+        final SeedGenerator root = new SeedGenerator(seed);
+        final SeedGenerator[] generators = new SeedGenerator[chunks];
+        for (int c = 0; c < chunks; c++) {
+            generators[c] = root.split();
+        }
+        Fill fill = new Fill(row, generators, fraction, 0, chunks);
+        if (pool != null && chunks > 1) {
+            pool.invoke(fill);
+        } else {
+            fill.compute();
+        }
+        row[row.length - 1] &= BitRows.lastWordMask(width);
+        return row;
+    }
+
+    /**
+     * Creates a random row of a rule with more than two states.
+     *
+     * Each generated word gives 8 cells, byte b of it becomes state
+     * (b * states) &gt;&gt;&gt; 8. States are uniform when their number
+     * is a power of two, otherwise within 1/256 of it.
+     *
+     * @param width Row width in cells.
+     * @param states Number of states [2, {@link GeneralRule#MAX_STATES}].
+     * @param seed Seed, the same seed gives the same row.
+     * @return State per cell.
+     */
+    public static byte[] randomStates(final int width, final int states,
+            final long seed) {
+        if (states < 2 || states > GeneralRule.MAX_STATES) {
+            throw new IllegalArgumentException("States out of range: "
+                    + states);
+        }
+        final SeedGenerator gen = new SeedGenerator(seed);
+        final byte[] row = new byte[width];
+        long word = 0;
+        for (int i = 0; i < width; i++) {
+            if (i % CELLS_PER_WORD == 0) {
+                word = gen.nextLong();
+            }
+            row[i] = (byte) (((word & BYTE_MASK) * states) >>> Byte.SIZE);
+            word >>>= Byte.SIZE;
+        }
+        return row;
+    }
+
+    /**
+     * Advances the seed.
+     *
+     * @return New seed.
+     */
+    private long nextSeed() {
+        seed += gamma;
+        return seed;
+    }
+
+    /**
+     * Mixes a seed into a random word (MurmurHash3 variant 13).
+     *
+     * @param z Seed.
+     * @return Random word.
+     */
+    private static long mix64(final long z) {
+        long x = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Mixes a seed into the odd increment of a split generator.
+     *
+     * @param z Seed.
+     * @return Odd increment with enough bit flips.
+     */
+    private static long mixGamma(final long z) {
+        long x = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        x = (x ^ (x >>> 33)) | 1L;
+        final int flips = Long.bitCount(x ^ (x >>> 1));
+        return flips < MIN_GAMMA_FLIPS ? x ^ 0xaaaaaaaaaaaaaaaaL : x;
+    }
+
+    /**
+     * Fork/join task filling a range of chunks.
+     */
+    private static final class Fill extends RecursiveAction {
+        /**
+         * serialVersionUID needed for serializable class.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Row to fill.
+         */
+        private final long[] row;
+
+        /**
+         * Generator of each chunk.
+         */
+        private final SeedGenerator[] generators;
+
+        /**
+         * Density as a fraction of 2^{@link #DENSITY_BITS}.
+         */
+        private final long fraction;
+
+        /**
+         * First chunk.
+         */
+        private final int from;
+
+        /**
+         * End chunk, exclusive.
+         */
+        private final int to;
+
+        /**
+         * Constructs task.
+         *
+         * @param row Row to fill.
+         * @param generators Generator of each chunk.
+         * @param fraction Density as a fraction.
+         * @param from First chunk.
+         * @param to End chunk, exclusive.
+         */
+        Fill(final long[] row, final SeedGenerator[] generators,
+                final long fraction, final int from, final int to) {
+            this.row = row;
+            this.generators = generators;
+            this.fraction = fraction;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Fill(row, generators, fraction, from, mid),
+                        new Fill(row, generators, fraction, mid, to));
+                return;
+            }
+            for (int c = from; c < to; c++) {
+                final int end = Math.min(row.length, (c + 1) * CHUNK_WORDS);
+                for (int k = c * CHUNK_WORDS; k < end; k++) {
+                    row[k] = generators[c].nextWord(fraction);
+                }
+            }
+        }
+    }
+}
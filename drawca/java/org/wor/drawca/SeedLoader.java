@@ -0,0 +1,338 @@
+/**
+ * SeedLoader.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Loads initial rows from memory-mapped seed files.
+ *
+ * A text seed is a line of '0' and '1' characters, whitespace such as line
+ * breaks is skipped. It is parsed straight from the mapped file into a
+ * packed row (see {@link BitRows}) without building any strings.
+ *
+ * A binary seed starts with a {@link #HEADER_BYTES} byte header (magic,
+ * version, width) followed by the packed row as little-endian longs, the
+ * layout of a row in a {@link HistoryStore}. Loading it is a single bulk
+ * copy from the mapped file.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public final class SeedLoader {
+    /**
+     * File magic, "DCAS".
+     */
+    private static final int MAGIC = 0x44434153;
+
+    /**
+     * File format version.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the binary header in bytes, keeps the row aligned to longs.
+     */
+    public static final int HEADER_BYTES = 16;
+
+    /**
+     * Offset of the version in the header.
+     */
+    private static final int VERSION_OFFSET = 4;
+
+    /**
+     * Offset of the width in the header.
+     */
+    private static final int WIDTH_OFFSET = 8;
+
+    /**
+     * Bytes of a packed word.
+     */
+    private static final int WORD_BYTES = Long.SIZE / Byte.SIZE;
+
+    /**
+     * Eight '0' characters read as a little-endian long.
+     */
+    private static final long ASCII_ZEROES = 0x3030303030303030L;
+
+    /**
+     * Lowest bit of each byte, the bit telling '1' from '0'.
+     */
+    private static final long ASCII_LOW_BITS = 0x0101010101010101L;
+
+    /**
+     * Multiplier gathering the lowest bits of the bytes into the top byte,
+     * byte j to bit 56 + j.
+     */
+    private static final long GATHER_MULTIPLIER = 0x0102040810204080L;
+
+    /**
+     * Shift moving the gathered bits to the lowest byte.
+     */
+    private static final int GATHER_SHIFT = 56;
+
+    /**
+     * Bytes of a text seed mapped at a time.
+     */
+    private static final int CHUNK_BYTES = 1 << 26;
+
+    /**
+     * Private utility class constructor.
+     */
+    private SeedLoader() {
+        throw new AssertionError("Utility class instantiation.");
+    }
+
+    /**
+     * Loads a text or binary seed, the format is recognized from the magic.
+     *
+     * @param file Seed file.
+     * @return Loaded seed.
+     * @throws IOException If reading fails or the file is not a seed.
+     */
+    public static Seed load(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0,
+                        HEADER_BYTES);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt(0) == MAGIC) {
+                    return loadBinary(channel, header, file);
+                }
+            }
+            return loadText(channel, file);
+        }
+    }
+
+    /**
+     * Loads a binary seed.
+     *
+     * @param channel Open seed file.
+     * @param header Mapped header.
+     * @param file Seed file for error messages.
+     * @return Loaded seed.
+     * @throws IOException If the file is not a valid seed.
+     */
+    private static Seed loadBinary(final FileChannel channel,
+            final MappedByteBuffer header, final Path file)
+        throws IOException {
+        final int width = header.getInt(WIDTH_OFFSET);
+        if (header.getInt(VERSION_OFFSET) != VERSION || width < 1) {
+            throw new IOException("Unsupported seed file: " + file);
+        }
+        final long[] row = BitRows.newRow(width);
+        final long bytes = (long) row.length * WORD_BYTES;
+        if (channel.size() < HEADER_BYTES + bytes) {
+            throw new IOException("Truncated seed file: " + file);
+        }
+        MappedByteBuffer data = channel.map(MapMode.READ_ONLY, HEADER_BYTES,
+                bytes);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        data.asLongBuffer().get(row);
+        row[row.length - 1] &= BitRows.lastWordMask(width);
+        return new Seed(row, width);
+    }
+
+    /**
+     * Parses a text seed chunk by chunk.
+     *
+     * @param channel Open seed file.
+     * @param file Seed file for error messages.
+     * @return Loaded seed.
+     * @throws IOException If the file has other characters than ones,
+     * zeroes and whitespace, or no cells.
+     */
+    private static Seed loadText(final FileChannel channel, final Path file)
+        throws IOException {
+        final long size = channel.size();
+        // Every byte is at most one cell.
+        final int capacity = (int) Math.min(size, Integer.MAX_VALUE);
+        long[] row = BitRows.newRow(capacity);
+        int cells = 0;
+        for (long pos = 0; pos < size; pos += CHUNK_BYTES) {
+            MappedByteBuffer chunk = channel.map(MapMode.READ_ONLY, pos,
+                    Math.min(CHUNK_BYTES, size - pos));
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            final int n = chunk.limit();
+            int i = 0;
+            while (i < n) {
+                // Eight '0' or '1' characters at once, byte j is cell j.
+                if (i + WORD_BYTES <= n && cells + Byte.SIZE <= capacity) {
+                    final long w = chunk.getLong(i);
+                    if (((w ^ ASCII_ZEROES) & ~ASCII_LOW_BITS) == 0) {
+                        final long bits = ((w & ASCII_LOW_BITS)
+                                * GATHER_MULTIPLIER) >>> GATHER_SHIFT;
+                        final int shift = cells & BitRows.BIT_MASK;
+                        final int k = cells >>> BitRows.WORD_SHIFT;
+                        row[k] |= bits << shift;
+                        if (shift > BitRows.WORD_BITS - Byte.SIZE) {
+                            row[k + 1] |= bits >>> (BitRows.WORD_BITS - shift);
+                        }
+                        cells += Byte.SIZE;
+                        i += Byte.SIZE;
+                        continue;
+                    }
+                }
+                final byte c = chunk.get(i);
+                if (c == '0' || c == '1') {
+                    if (cells == capacity) {
+                        throw new IOException("Seed too wide: " + file);
+                    }
+                    row[cells >>> BitRows.WORD_SHIFT] |= (long) (c & 1)
+                        << cells;
+                    cells++;
+                } else if (!Character.isWhitespace(c)) {
+                    throw new IOException("Invalid seed character '"
+                            + (char) (c & 0xff) + "' at byte " + (pos + i)
+                            + " of " + file);
+                }
+                i++;
+            }
+        }
+        if (cells == 0) {
+            throw new IOException("Empty seed file: " + file);
+        }
+        final int width = cells;
+        if (row.length != BitRows.wordCount(width)) {
+            row = Arrays.copyOf(row, BitRows.wordCount(width));
+        }
+        return new Seed(row, width);
+    }
+
+    /**
+     * Parses a text seed of more than two states, digits 0-9 followed by
+     * a-z, into one byte per cell. Whitespace is skipped.
+     *
+     * @param file Seed file.
+     * @param states Number of states.
+     * @return Cell states.
+     * @throws IOException If reading fails or the file has invalid cells.
+     */
+    public static byte[] loadStates(final Path file, final int states)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final int capacity = (int) Math.min(size, Integer.MAX_VALUE);
+            byte[] row = new byte[capacity];
+            int cells = 0;
+            for (long pos = 0; pos < size; pos += CHUNK_BYTES) {
+                MappedByteBuffer chunk = channel.map(MapMode.READ_ONLY, pos,
+                        Math.min(CHUNK_BYTES, size - pos));
+                final int n = chunk.limit();
+                for (int i = 0; i < n; i++) {
+                    final char c = (char) (chunk.get(i) & 0xff);
+                    if (Character.isWhitespace(c)) {
+                        continue;
+                    }
+                    final int d = Character.digit(c, Character.MAX_RADIX);
+                    if (d < 0 || d >= states) {
+                        throw new IOException("Invalid seed character '" + c
+                                + "' at byte " + (pos + i) + " of " + file);
+                    } else if (cells == capacity) {
+                        throw new IOException("Seed too wide: " + file);
+                    }
+                    row[cells++] = (byte) d;
+                }
+            }
+            if (cells == 0) {
+                throw new IOException("Empty seed file: " + file);
+            }
+            return cells == capacity ? row : Arrays.copyOf(row, cells);
+        }
+    }
+
+    /**
+     * Writes a binary seed.
+     *
+     * @param file Seed file, replaced if it exists.
+     * @param row Packed row.
+     * @param width Row width in cells.
+     * @throws IOException If writing fails.
+     */
+    public static void writeBinary(final Path file, final long[] row,
+            final int width) throws IOException {
+        final int words = BitRows.wordCount(width);
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = channel.map(MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) words * WORD_BYTES);
+            out.order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(0);
+            out.asLongBuffer().put(row, 0, words);
+            out.force();
+        }
+    }
+
+    /**
+     * Initial row and its width.
+     */
+    public static final class Seed {
+        /**
+         * Packed row.
+         */
+        private final long[] row;
+
+        /**
+         * Row width in cells.
+         */
+        private final int width;
+
+        /**
+         * Constructs seed.
+         *
+         * @param row Packed row.
+         * @param width Row width in cells.
+         */
+        Seed(final long[] row, final int width) {
+            this.row = row;
+            this.width = width;
+        }
+
+        /**
+         * Packed row.
+         *
+         * @return Row, owned by the caller.
+         */
+        public long[] getRow() {
+            return row;
+        }
+
+        /**
+         * Row width in cells.
+         *
+         * @return Width.
+         */
+        public int getWidth() {
+            return width;
+        }
+    }
+}
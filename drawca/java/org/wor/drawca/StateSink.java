@@ -0,0 +1,45 @@
+/**
+ * StateSink.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Consumer of finished rows of a {@link GeneralRule}.
+ *
+ * Rows are given in generation order as one state byte per cell. A sink
+ * must not keep a reference to the row array after returning, the caller
+ * reuses it.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public interface StateSink extends Closeable {
+    /**
+     * Consumes one row.
+     *
+     * @param generation Generation number of the row, zero for the initial
+     * row.
+     * @param states State per cell.
+     * @throws IOException If writing the row fails.
+     */
+    void writeStates(long generation, byte[] states) throws IOException;
+}
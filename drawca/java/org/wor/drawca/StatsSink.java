@@ -0,0 +1,479 @@
+/**
+ * StatsSink.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.logging.Logger;
+
+/**
+ * Row sink computing statistics of each generation as it streams by.
+ *
+ * Per sampled row it writes the density of one cells, the k-block entropy
+ * in bits per cell, the lag-1 spatial and temporal autocorrelations of the
+ * cells read as spins -1 and +1 (centered, so zero for uncorrelated
+ * cells), the number of cells changed since the previous row and the
+ * leftmost and rightmost one cells (-1 for an all zero row). Blocks and
+ * spatial neighbors wrap around the row.
+ *
+ * Only the previous row and a table of 2^k block counts are kept, the
+ * spacetime diagram never is.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class StatsSink implements RowSink {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(StatsSink.class.getName());
+
+    /**
+     * Largest block size.
+     */
+    public static final int MAX_BLOCK = 16;
+
+    /**
+     * CSV header line.
+     */
+    public static final String CSV_HEADER = "generation,density,"
+        + "block_entropy,spatial_corr,temporal_corr,changed,left,right";
+
+    /**
+     * Least time between flushes of the output.
+     */
+    private static final long FLUSH_NANOS = 1000000000L;
+
+    /**
+     * Start of a JSON line before the generation.
+     */
+    private static final String JSON_PREFIX = "{\"generation\":";
+
+    /**
+     * Characters of a line read to find its generation.
+     */
+    private static final int LINE_PREFIX = 64;
+
+    /**
+     * Output formats.
+     */
+    public enum Format {
+        /**
+         * Comma separated values with a header line.
+         */
+        CSV,
+
+        /**
+         * One JSON object per line.
+         */
+        JSON;
+    }
+
+    /**
+     * Destination of the statistics.
+     */
+    private final Writer out;
+
+    /**
+     * Output format.
+     */
+    private final Format format;
+
+    /**
+     * Row width in cells.
+     */
+    private final int width;
+
+    /**
+     * Block size of the entropy.
+     */
+    private final int block;
+
+    /**
+     * Rows between written statistics.
+     */
+    private final long every;
+
+    /**
+     * Generation of row index zero.
+     */
+    private final long firstGeneration;
+
+    /**
+     * Counts of the blocks of the current row, all zero between rows.
+     */
+    private final int[] blockCounts;
+
+    /**
+     * Row before the sampled one, kept only if it is needed.
+     */
+    private final long[] previous;
+
+    /**
+     * Row index of the previous row, Long.MIN_VALUE if none.
+     */
+    private long previousIndex = Long.MIN_VALUE;
+
+    /**
+     * Rows written.
+     */
+    private long samples;
+
+    /**
+     * Sum of the densities of the written rows.
+     */
+    private double densitySum;
+
+    /**
+     * Sum of the block entropies of the written rows.
+     */
+    private double entropySum;
+
+    /**
+     * Time of the last flush.
+     */
+    private long flushed = System.nanoTime();
+
+    /**
+     * Constructs sink writing every row from generation zero.
+     *
+     * @param out Destination, closed with the sink.
+     * @param format Output format.
+     * @param width Row width in cells.
+     * @param block Block size of the entropy [1, {@link #MAX_BLOCK}].
+     * @throws IOException If writing the header fails.
+     */
+    public StatsSink(final Writer out, final Format format, final int width,
+            final int block) throws IOException {
+        this(out, format, width, block, 1, 0);
+    }
+
+    /**
+     * Constructs sink.
+     *
+     * @param out Destination, closed with the sink.
+     * @param format Output format.
+     * @param width Row width in cells.
+     * @param block Block size of the entropy [1, {@link #MAX_BLOCK}].
+     * @param every Rows between written statistics, at least one.
+     * @param firstGeneration Generation of row index zero.
+     * @throws IOException If writing the header fails.
+     */
+    public StatsSink(final Writer out, final Format format, final int width,
+            final int block, final long every, final long firstGeneration)
+        throws IOException {
+        this(out, format, width, block, every, firstGeneration, true);
+    }
+
+    /**
+     * Constructs sink, optionally appending to earlier statistics.
+     *
+     * @param out Destination, closed with the sink.
+     * @param format Output format.
+     * @param width Row width in cells.
+     * @param block Block size of the entropy [1, {@link #MAX_BLOCK}].
+     * @param every Rows between written statistics, at least one.
+     * @param firstGeneration Generation of row index zero.
+     * @param header Write the CSV header? False when appending.
+     * @throws IOException If writing the header fails.
+     */
+    public StatsSink(final Writer out, final Format format, final int width,
+            final int block, final long every, final long firstGeneration,
+            final boolean header) throws IOException {
+        if (block < 1 || block > MAX_BLOCK) {
+            throw new IllegalArgumentException("Block size out of range: "
+                    + block);
+        }
+        if (every < 1) {
+            throw new IllegalArgumentException(
+                    "Statistics interval must be positive: " + every);
+        }
+        this.out = out;
+        this.format = format;
+        this.width = width;
+        this.block = block;
+        this.every = every;
+        this.firstGeneration = firstGeneration;
+        blockCounts = new int[1 << block];
+        previous = BitRows.newRow(width);
+        if (header && format == Format.CSV) {
+            out.write(CSV_HEADER + "\n");
+        }
+    }
+
+    /**
+     * Gives the row before the first one written, so that a resumed run
+     * gets the same temporal correlation as an uninterrupted one.
+     *
+     * @param generation Row index of the row.
+     * @param row Packed row, copied.
+     */
+    public final void prime(final long generation, final long[] row) {
+        System.arraycopy(row, 0, previous, 0, previous.length);
+        previousIndex = generation;
+    }
+
+    /**
+     * Cuts a statistics file before the first line of a generation, for
+     * appending the statistics of a resumed run. A partial last line is
+     * cut too.
+     *
+     * @param file CSV or JSON lines file written by a sink.
+     * @param generation First generation to drop.
+     * @throws IOException If reading or truncating fails.
+     */
+    public static void truncate(final Path file, final long generation)
+        throws IOException {
+        long keep = 0;
+        try (InputStream in = new BufferedInputStream(
+                    Files.newInputStream(file))) {
+            StringBuilder line = new StringBuilder();
+            long pos = 0;
+            int b;
+            while ((b = in.read()) >= 0) {
+                pos++;
+                if (b != '\n') {
+                    if (line.length() < LINE_PREFIX) {
+                        line.append((char) b);
+                    }
+                    continue;
+                }
+                final long gen = lineGeneration(line.toString());
+                if (gen >= generation) {
+                    break;
+                }
+                keep = pos;
+                line.setLength(0);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.WRITE)) {
+            channel.truncate(keep);
+        }
+    }
+
+    /**
+     * Generation of a statistics line.
+     *
+     * @param line Start of a CSV or JSON line.
+     * @return Generation, -1 for the CSV header.
+     */
+    private static long lineGeneration(final String line) {
+        final int start = line.startsWith(JSON_PREFIX)
+            ? JSON_PREFIX.length() : 0;
+        int end = start;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return end > start ? Long.parseLong(line.substring(start, end)) : -1;
+    }
+
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        if (generation % every == 0) {
+            writeStats(generation, row);
+        }
+        // The temporal correlation needs the row before a sampled one.
+        if ((generation + 1) % every == 0) {
+            System.arraycopy(row, 0, previous, 0, previous.length);
+            previousIndex = generation;
+        }
+    }
+
+    /**
+     * Computes and writes the statistics of a row.
+     *
+     * @param generation Row index.
+     * @param row Packed row.
+     * @throws IOException If writing fails.
+     */
+    private void writeStats(final long generation, final long[] row)
+        throws IOException {
+        final long ones = BitRows.countOnes(row);
+        final double density = (double) ones / width;
+        final double spin = 2 * density - 1;
+
+        long spatialDiff = 0;
+        for (int k = 0; k < row.length; k++) {
+            final long right = BitRows.window(row, width,
+                    (long) k * BitRows.WORD_BITS + 1);
+            final long mask = k == row.length - 1
+                ? BitRows.lastWordMask(width) : -1L;
+            spatialDiff += Long.bitCount((row[k] ^ right) & mask);
+        }
+        final double spatial = 1 - 2.0 * spatialDiff / width - spin * spin;
+
+        double temporal = Double.NaN;
+        long changed = -1;
+        if (previousIndex == generation - 1) {
+            changed = 0;
+            for (int k = 0; k < row.length; k++) {
+                changed += Long.bitCount(row[k] ^ previous[k]);
+            }
+            final double previousSpin = 2.0 * BitRows.countOnes(previous)
+                / width - 1;
+            temporal = 1 - 2.0 * changed / width - spin * previousSpin;
+        }
+
+        final double entropy = blockEntropy(row);
+        samples++;
+        densitySum += density;
+        entropySum += entropy;
+
+        final long gen = firstGeneration + generation;
+        final int left = leftmost(row);
+        final int right = rightmost(row);
+        if (format == Format.CSV) {
+            out.write(String.format(Locale.ROOT, "%d,%.6f,%.6f,%.6f,%s,%d,"
+                        + "%d,%d\n", gen, density, entropy, spatial,
+                        Double.isNaN(temporal) ? ""
+                        : String.format(Locale.ROOT, "%.6f", temporal),
+                        changed, left, right));
+        } else {
+            out.write(String.format(Locale.ROOT, "{\"generation\":%d,"
+                        + "\"density\":%.6f,\"block_entropy\":%.6f,"
+                        + "\"spatial_corr\":%.6f,\"temporal_corr\":%s,"
+                        + "\"changed\":%d,\"left\":%d,\"right\":%d}\n",
+                        gen, density, entropy, spatial,
+                        Double.isNaN(temporal) ? "null"
+                        : String.format(Locale.ROOT, "%.6f", temporal),
+                        changed, left, right));
+        }
+        if (System.nanoTime() - flushed > FLUSH_NANOS) {
+            out.flush();
+            flushed = System.nanoTime();
+        }
+    }
+
+    /**
+     * Entropy of the distribution of k-blocks starting at every cell.
+     *
+     * @param row Packed row.
+     * @return Entropy in bits per cell [0-1].
+     */
+    final double blockEntropy(final long[] row) {
+        final long mask = (1L << block) - 1;
+        for (int i = 0; i < width; i++) {
+            blockCounts[(int) (blockAt(row, i) & mask)]++;
+        }
+        // Each distinct block is summed once, its count is cleared.
+        double sum = 0;
+        for (int i = 0; i < width; i++) {
+            final int b = (int) (blockAt(row, i) & mask);
+            final int c = blockCounts[b];
+            if (c > 0) {
+                sum += c * Math.log(c);
+                blockCounts[b] = 0;
+            }
+        }
+        return (Math.log(width) - sum / width) / Math.log(2) / block;
+    }
+
+    /**
+     * Cells starting at a position, wrapping around.
+     *
+     * @param row Packed row.
+     * @param i First cell.
+     * @return Cells i.. in the low bits.
+     */
+    private long blockAt(final long[] row, final int i) {
+        if (i + block <= width && (i & BitRows.BIT_MASK) + block
+                <= BitRows.WORD_BITS) {
+            return row[i >>> BitRows.WORD_SHIFT] >>> i;
+        }
+        return BitRows.window(row, width, i);
+    }
+
+    /**
+     * Leftmost one cell.
+     *
+     * @param row Packed row.
+     * @return Cell index or -1 for an all zero row.
+     */
+    private static int leftmost(final long[] row) {
+        for (int k = 0; k < row.length; k++) {
+            if (row[k] != 0) {
+                return k * BitRows.WORD_BITS
+                    + Long.numberOfTrailingZeros(row[k]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rightmost one cell.
+     *
+     * @param row Packed row.
+     * @return Cell index or -1 for an all zero row.
+     */
+    private static int rightmost(final long[] row) {
+        for (int k = row.length - 1; k >= 0; k--) {
+            if (row[k] != 0) {
+                return k * BitRows.WORD_BITS + BitRows.BIT_MASK
+                    - Long.numberOfLeadingZeros(row[k]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of rows written.
+     *
+     * @return Sampled rows.
+     */
+    public final long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Mean density over the written rows.
+     *
+     * @return Density [0-1], NaN before any row.
+     */
+    public final double getMeanDensity() {
+        return densitySum / samples;
+    }
+
+    /**
+     * Mean block entropy over the written rows.
+     *
+     * @return Bits per cell [0-1], NaN before any row.
+     */
+    public final double getMeanEntropy() {
+        return entropySum / samples;
+    }
+
+    @Override
+    public final void close() throws IOException {
+        LOG.info(String.format(Locale.ROOT, "%d rows, mean density %.4f, "
+                    + "mean %d-block entropy %.4f", samples,
+                    getMeanDensity(), block, getMeanEntropy()));
+        out.close();
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * TableEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.util.logging.Logger;
+
+/**
+ * Elementary cellular automata engine using compiled window tables.
+ *
+ * Every lookup produces 8 or 16 cells, optionally several generations ahead.
+ * The widest table which fits in the given cache budget is used. By default
+ * the lattice wraps around periodically.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class TableEngine implements RowEngine {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(TableEngine.class.getName());
+
+    /**
+     * Default table size budget, roughly a per-core L2 cache.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 256 * 1024;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Mask of valid cells in the last word of a row.
+     */
+    private final long lastMask;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Table advancing one generation.
+     */
+    private final WindowTable single;
+
+    /**
+     * Table advancing the configured number of generations.
+     */
+    private final WindowTable multi;
+
+    /**
+     * Constructs single generation engine with the default cache budget.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     */
+    public TableEngine(final Rule rule, final int width) {
+        this(rule, width, 1, DEFAULT_CACHE_BYTES, Boundary.PERIODIC);
+    }
+
+    /**
+     * Constructs engine which advances several generations per lookup.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param generations Generations per {@link #advance(long[], long[])}.
+     * @param cacheBytes Upper limit for the size of one table.
+     * @param boundary Boundary condition, multi generation tables need
+     * {@link Boundary#PERIODIC}.
+     */
+    public TableEngine(final Rule rule, final int width,
+            final int generations, final long cacheBytes,
+            final Boundary boundary) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        // Zero cells outside a fixed lattice don't stay zero inside a
+        // window stepped several generations.
+        if (generations > 1 && boundary != Boundary.PERIODIC) {
+            throw new IllegalArgumentException(
+                    "Multi generation tables need a periodic boundary");
+        }
+        this.width = width;
+        lastMask = BitRows.lastWordMask(width);
+        this.boundary = boundary;
+
+        final CompiledRule compiled = rule.compile();
+        single = WindowTable.widest(compiled, 1, cacheBytes);
+        multi = generations == 1 ? single
+            : WindowTable.widest(compiled, generations, cacheBytes);
+        LOG.fine("Table engine: " + multi.cells + " cells, "
+                + multi.generations + " generations per lookup");
+    }
+
+    @Override
+    public final int getWidth() {
+        return width;
+    }
+
+    @Override
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Generations computed by {@link #advance(long[], long[])}.
+     *
+     * @return Generations per advance.
+     */
+    public final int getGenerations() {
+        return multi.generations;
+    }
+
+    /**
+     * Output cells per lookup of the multi generation table.
+     *
+     * @return Cells per lookup, 8 or 16.
+     */
+    public final int getCellsPerLookup() {
+        return multi.cells;
+    }
+
+    @Override
+    public final void step(final long[] current, final long[] next) {
+        apply(single, current, next);
+    }
+
+    /**
+     * Computes {@link #getGenerations()} generations at once.
+     *
+     * @param current Current generation, left untouched.
+     * @param next Array where the result is written, must not be the same
+     * array as current.
+     */
+    public final void advance(final long[] current, final long[] next) {
+        apply(multi, current, next);
+    }
+
+    /**
+     * Runs one pass of a window table over the row.
+     *
+     * @param table Window table.
+     * @param current Current generation.
+     * @param next Result.
+     */
+    private void apply(final WindowTable table, final long[] current,
+            final long[] next) {
+        final int n = table.cells;
+        final long windowMask = (1L << (n + 2 * table.generations)) - 1;
+        final int words = next.length;
+
+        // Extended word k covers cells (64k - g) to (64k + 63 + g).
+        long pos = -table.generations;
+        long hi = BitRows.window(current, width, pos, boundary);
+        for (int k = 0; k < words; k++) {
+            final long lo = hi;
+            pos += BitRows.WORD_BITS;
+            hi = BitRows.window(current, width, pos, boundary);
+
+            long out = table.lookup((int) (lo & windowMask));
+            for (int j = n; j < BitRows.WORD_BITS; j += n) {
+                final long w = (lo >>> j) | (hi << (BitRows.WORD_BITS - j));
+                out |= (long) table.lookup((int) (w & windowMask)) << j;
+            }
+            next[k] = out;
+        }
+        next[words - 1] &= lastMask;
+    }
+
+    /**
+     * Byte or short window table.
+     */
+    private static final class WindowTable {
+        /**
+         * Output cells per lookup.
+         */
+        private final int cells;
+
+        /**
+         * Generations per lookup.
+         */
+        private final int generations;
+
+        /**
+         * Table entries if output is 8 cells.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Table entries if output is 16 cells.
+         */
+        private final short[] shorts;
+
+        /**
+         * Builds the widest table that fits the cache budget.
+         *
+         * @param rule Compiled rule.
+         * @param generations Generations per lookup.
+         * @param cacheBytes Cache budget in bytes.
+         * @return New table.
+         */
+        static WindowTable widest(final CompiledRule rule,
+                final int generations, final long cacheBytes) {
+            if (CompiledRule.tableBytes(CompiledRule.SHORT_CELLS, generations)
+                    <= cacheBytes) {
+                return new WindowTable(CompiledRule.SHORT_CELLS, generations,
+                        null, rule.shortTable(generations));
+            } else if (CompiledRule.tableBytes(CompiledRule.BYTE_CELLS,
+                        generations) <= cacheBytes) {
+                return new WindowTable(CompiledRule.BYTE_CELLS, generations,
+                        rule.byteTable(generations), null);
+            }
+            throw new IllegalArgumentException("No table for " + generations
+                    + " generations fits in " + cacheBytes + " bytes");
+        }
+
+        /**
+         * Constructs table.
+         *
+         * @param cells Output cells per lookup.
+         * @param generations Generations per lookup.
+         * @param bytes Byte entries or null.
+         * @param shorts Short entries or null.
+         */
+        private WindowTable(final int cells, final int generations,
+                final byte[] bytes, final short[] shorts) {
+            this.cells = cells;
+            this.generations = generations;
+            this.bytes = bytes;
+            this.shorts = shorts;
+        }
+
+        /**
+         * Looks up output cells of a window.
+         *
+         * @param window Window cells.
+         * @return Output cells.
+         */
+        int lookup(final int window) {
+            if (shorts != null) {
+                return shorts[window] & 0xffff;
+            }
+            return bytes[window] & 0xff;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * TeeSink.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.io.IOException;
+
+/**
+ * Row sink which passes every row to several sinks.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class TeeSink implements RowSink {
+    /**
+     * Receivers of the rows.
+     */
+    private final RowSink[] sinks;
+
+    /**
+     * Constructs tee.
+     *
+     * @param sinks Receivers of the rows, in the order they are called.
+     */
+    public TeeSink(final RowSink... sinks) {
+        this.sinks = sinks.clone();
+    }
+
+    @Override
+    public final void writeRow(final long generation, final long[] row)
+        throws IOException {
+        for (RowSink sink : sinks) {
+            sink.writeRow(generation, row);
+        }
+    }
+
+    /**
+     * Closes all sinks, even if some of them fail.
+     *
+     * @throws IOException First failure.
+     */
+    @Override
+    public final void close() throws IOException {
+        IOException failure = null;
+        for (RowSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/**
+ * TileServer.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP server of spacetime diagram tiles on the loopback interface.
+ *
+ * GET /rule/{n}/seed/{s}/{z}/{x}/{y} returns tile (x, y) of zoom out level
+ * z, see {@link TileSource}, as a PNG image. The initial row of the
+ * diagram is made by {@link SeedGenerator} from seed s, so a tile URL
+ * always gives the same image.
+ *
+ * Tiles are rendered on demand by a fixed pool of request threads.
+ * Concurrent requests of the same tile wait for a single rendering. The
+ * encoded tiles are kept in an in-memory cache bounded by bytes and, if a
+ * directory is given, on disk where they survive restarts.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class TileServer implements Closeable {
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(TileServer.class.getName());
+
+    /**
+     * Path of a tile.
+     */
+    private static final Pattern TILE_PATH = Pattern.compile(
+            "/rule/(\\d+)/seed/(-?\\d+)/(\\d+)/(\\d+)/(\\d+)(?:\\.png)?");
+
+    /**
+     * Diagrams whose keyframes are kept at the same time.
+     */
+    private static final int MAX_SOURCES = 8;
+
+    /**
+     * Seconds clients may cache a tile, tiles never change.
+     */
+    private static final int MAX_AGE_SECONDS = 86400;
+
+    /**
+     * Requests queued by the HTTP server before refusing connections.
+     */
+    private static final int BACKLOG = 64;
+
+    /**
+     * Default deepest generation served, a deeper tile would tie up a
+     * worker for minutes catching up from the closest keyframe.
+     */
+    public static final long DEFAULT_MAX_ROWS = 1000000;
+
+    /**
+     * Lattice width of the diagrams.
+     */
+    private final int width;
+
+    /**
+     * Density of one cells in the initial rows.
+     */
+    private final double density;
+
+    /**
+     * Tiles must start above this generation.
+     */
+    private final long maxRows;
+
+    /**
+     * Tile cache directory, or null.
+     */
+    private final Path cacheDir;
+
+    /**
+     * HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * Request threads.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Tile sources by rule and seed, keeping their keyframes.
+     */
+    private final LoadingCache<TileRequest, TileSource> sources;
+
+    /**
+     * Encoded tiles.
+     */
+    private final LoadingCache<TileRequest, byte[]> tiles;
+
+    /**
+     * Tiles rendered, not found in either cache.
+     */
+    private final AtomicLong rendered = new AtomicLong();
+
+    /**
+     * Constructs server, {@link #start()} starts it.
+     *
+     * @param port Loopback port, zero for any free port.
+     * @param width Lattice width of the diagrams.
+     * @param density Density of one cells in the initial rows.
+     * @param threads Request threads rendering tiles.
+     * @param cacheBytes Memory budget of the encoded tiles and of the
+     * keyframes.
+     * @param cacheDir Tile cache directory, or null for none.
+     * @param maxRows Tiles starting at or below this generation are
+     * refused, see {@link #DEFAULT_MAX_ROWS}.
+     * @throws IOException If the port can't be bound.
+     */
+    public TileServer(final int port, final int width, final double density,
+            final int threads, final long cacheBytes, final Path cacheDir,
+            final long maxRows) throws IOException {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("Maximum depth must be "
+                    + "positive: " + maxRows);
+        }
+        this.maxRows = maxRows;
+        // Fails early on a density out of range.
+        SeedGenerator.fraction(density);
+        this.width = width;
+        this.density = density;
+        this.cacheDir = cacheDir;
+        sources = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SOURCES)
+            .build(new CacheLoader<TileRequest, TileSource>() {
+                @Override
+                public TileSource load(final TileRequest key) {
+                    return new TileSource(new Rule(key.rule),
+                            SeedGenerator.randomRow(width, density,
+                                key.seed), width, 0,
+                            cacheBytes / MAX_SOURCES);
+                }
+            });
+        tiles = CacheBuilder.newBuilder()
+            .maximumWeight(cacheBytes)
+            .weigher(new Weigher<TileRequest, byte[]>() {
+                @Override
+                public int weigh(final TileRequest key, final byte[] png) {
+                    return png.length;
+                }
+            })
+            .build(new CacheLoader<TileRequest, byte[]>() {
+                @Override
+                public byte[] load(final TileRequest key) throws IOException {
+                    return loadTile(key);
+                }
+            });
+        workers = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.setExecutor(workers);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                throws IOException {
+                try {
+                    serve(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts serving.
+     */
+    public final void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the bound address.
+     *
+     * @return Loopback address and port.
+     */
+    public final InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Gets the bound port.
+     *
+     * @return Port.
+     */
+    public final int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Number of tiles rendered, found in neither cache.
+     *
+     * @return Rendered tiles.
+     */
+    public final long getRendered() {
+        return rendered.get();
+    }
+
+    /**
+     * Encodes a tile, without any caching.
+     *
+     * @param rule Rule number [0-255].
+     * @param seed Seed of the initial row.
+     * @param zoom Zoom out level [0, {@link TileSource#MAX_ZOOM}].
+     * @param x Tile column.
+     * @param y Tile row.
+     * @return PNG image.
+     * @throws IOException If encoding fails.
+     */
+    public final byte[] renderTile(final int rule, final long seed,
+            final int zoom, final long x, final long y) throws IOException {
+        TileSource source = sources.getUnchecked(
+                new TileRequest(rule, seed, 0, 0, 0));
+        BufferedImage tile = source.renderTile(zoom, x, y);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        if (!ImageIO.write(tile, "png", png)) {
+            throw new IOException("No PNG writer available");
+        }
+        return png.toByteArray();
+    }
+
+    /**
+     * Answers a request.
+     *
+     * @param exchange Request and response.
+     * @throws IOException If sending the response fails.
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Only GET is supported");
+            return;
+        }
+        Matcher m = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+        if (!m.matches()) {
+            sendError(exchange, 404, "Not a tile: /rule/{n}/seed/{s}/{z}/"
+                    + "{x}/{y}");
+            return;
+        }
+        TileRequest key;
+        try {
+            key = new TileRequest(Integer.parseInt(m.group(1)),
+                    Long.parseLong(m.group(2)), Integer.parseInt(m.group(3)),
+                    Long.parseLong(m.group(4)), Long.parseLong(m.group(5)));
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Number out of range");
+            return;
+        }
+        if (key.rule >= RuleSweep.RULE_COUNT || key.zoom > TileSource.MAX_ZOOM
+                || key.x >= (width + TileSource.tileSpan(key.zoom) - 1)
+                / TileSource.tileSpan(key.zoom)) {
+            sendError(exchange, 400, "Rule, zoom or column out of range");
+            return;
+        }
+        // Compared by division, y * span may overflow.
+        if (key.y > (maxRows - 1) / TileSource.tileSpan(key.zoom)) {
+            sendError(exchange, 400, "Tile row beyond the maximum depth of "
+                    + maxRows + " generations");
+            return;
+        }
+        byte[] png;
+        try {
+            png = tiles.get(key);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            LOG.severe("Rendering " + key + " failed: " + e.getCause());
+            sendError(exchange, 500, "Rendering failed");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "image/png");
+        exchange.getResponseHeaders().set("Cache-Control",
+                "public, max-age=" + MAX_AGE_SECONDS);
+        exchange.sendResponseHeaders(200, png.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(png);
+        }
+    }
+
+    /**
+     * Sends a plain text error.
+     *
+     * @param exchange Request and response.
+     * @param status HTTP status code.
+     * @param message Response body.
+     * @throws IOException If sending fails.
+     */
+    private static void sendError(final HttpExchange exchange,
+            final int status, final String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Reads a tile from the disk cache or renders and stores it.
+     *
+     * @param key Tile.
+     * @return PNG image.
+     * @throws IOException If the disk cache can't be read or written.
+     */
+    private byte[] loadTile(final TileRequest key) throws IOException {
+        final Path file = cacheDir != null ? cacheFile(key) : null;
+        if (file != null && Files.exists(file)) {
+            return Files.readAllBytes(file);
+        }
+        byte[] png = renderTile(key.rule, key.seed, key.zoom, key.x, key.y);
+        rendered.incrementAndGet();
+        if (file != null) {
+            // Readers never see a partially written tile.
+            Files.createDirectories(file.getParent());
+            Path temp = Files.createTempFile(file.getParent(), "tile", ".tmp");
+            try {
+                Files.write(temp, png);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+        return png;
+    }
+
+    /**
+     * Disk cache file of a tile, the diagram parameters are part of the
+     * path so one directory can serve several widths and densities.
+     *
+     * @param key Tile.
+     * @return File path.
+     */
+    final Path cacheFile(final TileRequest key) {
+        return cacheDir.resolve(String.format(Locale.ROOT,
+                    "w%d-d%s/%d/%d/%d/%d/%d.png", width,
+                    Double.toString(density), key.rule, key.seed, key.zoom,
+                    key.x, key.y));
+    }
+
+    /**
+     * Stops the server and its threads, waiting up to a second for
+     * responses being sent.
+     */
+    @Override
+    public final void close() {
+        server.stop(1);
+        workers.shutdown();
+    }
+
+    /**
+     * Tile of a diagram, or a diagram with the tile fields zero.
+     */
+    static final class TileRequest {
+        /**
+         * Rule number.
+         */
+        private final int rule;
+
+        /**
+         * Seed of the initial row.
+         */
+        private final long seed;
+
+        /**
+         * Zoom out level.
+         */
+        private final int zoom;
+
+        /**
+         * Tile column.
+         */
+        private final long x;
+
+        /**
+         * Tile row.
+         */
+        private final long y;
+
+        /**
+         * Constructs key.
+         *
+         * @param rule Rule number.
+         * @param seed Seed of the initial row.
+         * @param zoom Zoom out level.
+         * @param x Tile column.
+         * @param y Tile row.
+         */
+        TileRequest(final int rule, final long seed, final int zoom,
+                final long x, final long y) {
+            this.rule = rule;
+            this.seed = seed;
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof TileRequest)) {
+                return false;
+            }
+            TileRequest t = (TileRequest) o;
+            return rule == t.rule && seed == t.seed && zoom == t.zoom
+                && x == t.x && y == t.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(rule, seed, zoom, x, y);
+        }
+
+        @Override
+        public String toString() {
+            return "rule " + rule + " seed " + seed + " tile " + zoom + "/"
+                + x + "/" + y;
+        }
+    }
+}
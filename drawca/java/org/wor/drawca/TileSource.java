@@ -0,0 +1,427 @@
+/**
+ * TileSource.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+
+/**
+ * Computes square tiles of the spacetime diagram of a periodic lattice on
+ * demand.
+ *
+ * A tile of zoom level z covers (TILE_SIZE &lt;&lt; z) cells and rows,
+ * sampling every 2^z-th cell and row. Tile x wraps around the lattice, tile
+ * y counts down from the initial row. Full lattice rows are kept only as
+ * keyframes every {@link #KEYFRAME_ROWS} generations; a tile is computed
+ * from the closest earlier keyframe inside the light cone of the tile, so
+ * the cost of a tile doesn't depend on the lattice width.
+ *
+ * Tiles and keyframes are kept in LRU caches bounded by memory. Rendered
+ * tiles are 1-bit images, see {@link BinaryRowRaster}.
+ * All methods are thread safe. Tiles and keyframes are computed without a
+ * shared lock, concurrent requests of the same one wait for a single
+ * computation.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class TileSource {
+    /**
+     * Tile width and height in pixels.
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Largest zoom out level.
+     */
+    public static final int MAX_ZOOM = 6;
+
+    /**
+     * Default memory budget of each cache.
+     */
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Generations between stored keyframe rows.
+     */
+    public static final int KEYFRAME_ROWS = TILE_SIZE;
+
+    /**
+     * Approximate bytes of a tile image.
+     */
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE / Byte.SIZE;
+
+    /**
+     * Rule to apply.
+     */
+    private final Rule rule;
+
+    /**
+     * Generation zero.
+     */
+    private final long[] initialRow;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Rendered tiles.
+     */
+    private final LoadingCache<TileKey, BufferedImage> tiles;
+
+    /**
+     * Full rows by keyframe index, keyframe k is generation
+     * k * {@link #KEYFRAME_ROWS}.
+     */
+    private final LoadingCache<Long, long[]> keyframes;
+
+    /**
+     * Keyframes in the cache ordered by index, to find the closest earlier
+     * one. Entries leave with their cache entries.
+     */
+    private final ConcurrentNavigableMap<Long, long[]> keyframeIndex =
+        new ConcurrentSkipListMap<Long, long[]>();
+
+    /**
+     * Constructs tile source with the default cache budgets.
+     *
+     * @param rule Rule to apply.
+     * @param initialRow Generation zero, not modified.
+     * @param width Lattice width in cells.
+     */
+    public TileSource(final Rule rule, final long[] initialRow,
+            final int width) {
+        this(rule, initialRow, width, DEFAULT_CACHE_BYTES,
+                DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Constructs tile source.
+     *
+     * @param rule Rule to apply.
+     * @param initialRow Generation zero, not modified.
+     * @param width Lattice width in cells.
+     * @param tileCacheBytes Memory budget of the tile cache.
+     * @param keyframeCacheBytes Memory budget of the keyframe cache.
+     */
+    public TileSource(final Rule rule, final long[] initialRow,
+            final int width, final long tileCacheBytes,
+            final long keyframeCacheBytes) {
+        this.rule = rule;
+        this.initialRow = initialRow.clone();
+        this.width = width;
+        tiles = CacheBuilder.newBuilder()
+            .maximumWeight(tileCacheBytes)
+            .weigher(new Weigher<TileKey, BufferedImage>() {
+                @Override
+                public int weigh(final TileKey key,
+                        final BufferedImage tile) {
+                    return TILE_BYTES;
+                }
+            })
+            .build(new CacheLoader<TileKey, BufferedImage>() {
+                @Override
+                public BufferedImage load(final TileKey key) {
+                    return renderTile(key.zoom, key.x, key.y);
+                }
+            });
+        keyframes = CacheBuilder.newBuilder()
+            .maximumWeight(keyframeCacheBytes)
+            .weigher(new Weigher<Long, long[]>() {
+                @Override
+                public int weigh(final Long index, final long[] row) {
+                    return row.length * (Long.SIZE / Byte.SIZE);
+                }
+            })
+            .removalListener(new RemovalListener<Long, long[]>() {
+                @Override
+                public void onRemoval(
+                        final RemovalNotification<Long, long[]> n) {
+                    keyframeIndex.remove(n.getKey(), n.getValue());
+                }
+            })
+            .build(new CacheLoader<Long, long[]>() {
+                @Override
+                public long[] load(final Long index) {
+                    return computeKeyframe(index);
+                }
+            });
+    }
+
+    /**
+     * Lattice width in cells.
+     *
+     * @return Width.
+     */
+    public final int getWidth() {
+        return width;
+    }
+
+    /**
+     * Rule of the diagram.
+     *
+     * @return Rule.
+     */
+    public final Rule getRule() {
+        return rule;
+    }
+
+    /**
+     * Number of cells (and rows) covered by one side of a tile.
+     *
+     * @param zoom Zoom out level.
+     * @return Cells per tile side.
+     */
+    public static long tileSpan(final int zoom) {
+        return (long) TILE_SIZE << zoom;
+    }
+
+    /**
+     * Gets a tile from the cache, rendering it if needed.
+     *
+     * Concurrent requests of the same tile wait for a single rendering.
+     *
+     * @param zoom Zoom out level [0, {@link #MAX_ZOOM}].
+     * @param x Tile column, wraps around the lattice.
+     * @param y Tile row, non-negative.
+     * @return Tile image, shared and must not be modified.
+     */
+    public final BufferedImage getTile(final int zoom, final long x,
+            final long y) {
+        return tiles.getUnchecked(new TileKey(zoom, x, y));
+    }
+
+    /**
+     * Gets a tile only if it has already been rendered, counting a tile
+     * hit or miss in {@link DrawCAMetrics}.
+     *
+     * @param zoom Zoom out level.
+     * @param x Tile column.
+     * @param y Tile row.
+     * @return Tile image or null.
+     */
+    public final BufferedImage getTileIfPresent(final int zoom, final long x,
+            final long y) {
+        BufferedImage tile = tiles.getIfPresent(new TileKey(zoom, x, y));
+        DrawCAMetrics.get().recordTile(tile != null);
+        return tile;
+    }
+
+    /**
+     * Renders a tile without using the tile cache.
+     *
+     * @param zoom Zoom out level [0, {@link #MAX_ZOOM}].
+     * @param x Tile column, wraps around the lattice.
+     * @param y Tile row, non-negative.
+     * @return New tile image.
+     */
+    public final BufferedImage renderTile(final int zoom, final long x,
+            final long y) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom out of range: " + zoom);
+        }
+        if (y < 0) {
+            throw new IllegalArgumentException("Negative tile row: " + y);
+        }
+        if (y >= Long.MAX_VALUE / tileSpan(zoom)) {
+            throw new IllegalArgumentException("Tile row too deep: " + y);
+        }
+        final DrawCAMetrics metrics = DrawCAMetrics.get();
+        final long start = System.nanoTime();
+        RowTracer.Span trace = metrics.tracer().begin(RowTracer.TILE);
+        final long span = tileSpan(zoom);
+        final long firstRow = y * span;
+        final long key = firstRow / KEYFRAME_ROWS;
+        final long[] keyRow = keyframe(key);
+        final int depth = (int) (firstRow + span - 1 - key * KEYFRAME_ROWS);
+
+        // Cells of the light cone of the tile at the keyframe.
+        final int local = (int) span + 2 * depth;
+        final long left = x * span - depth;
+        long[] current = BitRows.newRow(local);
+        for (int k = 0; k < current.length; k++) {
+            current[k] = BitRows.window(keyRow, width,
+                    left + (long) k * BitRows.WORD_BITS);
+        }
+        current[current.length - 1] &= BitRows.lastWordMask(local);
+        // Garbage from the cut edges moves one cell per generation and
+        // never reaches the tile.
+        RowEngine cone = new BitPackedEngine(rule, local, Boundary.FIXED);
+        long[] next = BitRows.newRow(local);
+
+        RowRaster tile = new BinaryRowRaster(TILE_SIZE, TILE_SIZE);
+        final long sampleMask = (1L << zoom) - 1;
+        long[] sample = BitRows.newRow(TILE_SIZE);
+        long gen = key * KEYFRAME_ROWS;
+        int line = 0;
+        while (line < TILE_SIZE) {
+            if (gen >= firstRow && ((gen - firstRow) & sampleMask) == 0) {
+                sampleRow(current, local, depth, zoom, sample);
+                tile.writeRow(line, sample);
+                line++;
+                if (line == TILE_SIZE) {
+                    break;
+                }
+            }
+            cone.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+            gen++;
+        }
+        final long steps = gen - key * KEYFRAME_ROWS;
+        trace.end(firstRow, steps * local);
+        metrics.recordSimulation(steps, local, System.nanoTime() - start);
+        return tile.getImage();
+    }
+
+    /**
+     * Picks every 2^zoom-th cell of a light cone row.
+     *
+     * @param row Light cone row.
+     * @param local Light cone width.
+     * @param offset Index of the first tile cell in the light cone.
+     * @param zoom Zoom out level.
+     * @param sample Destination, {@link #TILE_SIZE} cells.
+     */
+    private static void sampleRow(final long[] row, final int local,
+            final int offset, final int zoom, final long[] sample) {
+        if (zoom == 0) {
+            for (int k = 0; k < sample.length; k++) {
+                sample[k] = BitRows.window(row, local,
+                        offset + k * BitRows.WORD_BITS, Boundary.FIXED);
+            }
+            return;
+        }
+        Arrays.fill(sample, 0);
+        for (int i = 0; i < TILE_SIZE; i++) {
+            if (BitRows.get(row, offset + (i << zoom))) {
+                BitRows.set(sample, i, true);
+            }
+        }
+    }
+
+    /**
+     * Gets a keyframe row.
+     *
+     * @param index Keyframe index.
+     * @return Full row of generation index * {@link #KEYFRAME_ROWS}, shared
+     * and must not be modified.
+     */
+    private long[] keyframe(final long index) {
+        return index == 0 ? initialRow : keyframes.getUnchecked(index);
+    }
+
+    /**
+     * Computes a keyframe from the closest earlier cached keyframe, caching
+     * the keyframes in between.
+     *
+     * @param index Keyframe index, positive.
+     * @return Full row of generation index * {@link #KEYFRAME_ROWS}.
+     */
+    private long[] computeKeyframe(final long index) {
+        Map.Entry<Long, long[]> floor = keyframeIndex.floorEntry(index);
+        long k = floor != null ? floor.getKey() : 0;
+        long[] current = (floor != null ? floor.getValue() : initialRow)
+            .clone();
+        if (k == index) {
+            return current;
+        }
+        // Engines may keep scratch buffers, each computation has its own.
+        RowEngine engine = RowEngines.fastest(rule, width, Boundary.PERIODIC);
+        long[] next = BitRows.newRow(width);
+        while (k < index) {
+            for (int g = 0; g < KEYFRAME_ROWS; g++) {
+                engine.step(current, next);
+                long[] tmp = current;
+                current = next;
+                next = tmp;
+            }
+            k++;
+            if (k < index) {
+                long[] copy = current.clone();
+                keyframeIndex.put(k, copy);
+                keyframes.put(k, copy);
+            }
+        }
+        keyframeIndex.put(index, current);
+        return current;
+    }
+
+    /**
+     * Cache key of a tile.
+     */
+    private static final class TileKey {
+        /**
+         * Zoom out level.
+         */
+        private final int zoom;
+
+        /**
+         * Tile column.
+         */
+        private final long x;
+
+        /**
+         * Tile row.
+         */
+        private final long y;
+
+        /**
+         * Constructs key.
+         *
+         * @param zoom Zoom out level.
+         * @param x Tile column.
+         * @param y Tile row.
+         */
+        TileKey(final int zoom, final long x, final long y) {
+            this.zoom = zoom;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey k = (TileKey) o;
+            return zoom == k.zoom && x == k.x && y == k.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(zoom, x, y);
+        }
+    }
+}
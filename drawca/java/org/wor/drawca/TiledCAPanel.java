@@ -0,0 +1,288 @@
+/**
+ * TiledCAPanel.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+import javax.swing.JPanel;
+
+/**
+ * Cellular automata panel showing an unbounded spacetime diagram in tiles.
+ *
+ * Only tiles scrolled into view are computed, on background threads, and
+ * kept in the memory bounded cache of a {@link TileSource}. Drag with the
+ * mouse to pan and use the wheel to zoom around the pointer. Zooming in
+ * scales tiles up, zooming out renders tiles which sample the diagram.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class TiledCAPanel extends JPanel {
+    /**
+     * serialVersionUID needed for serializable class.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Logger.
+     */
+    private static final Logger LOG =
+        Logger.getLogger(TiledCAPanel.class.getName());
+
+    /**
+     * Largest zoom in level, a cell is drawn as 2^level pixels.
+     */
+    private static final int MAX_ZOOM_IN = 4;
+
+    /**
+     * Color of tiles not computed yet.
+     */
+    private static final Color PENDING_COLOR = Color.LIGHT_GRAY;
+
+    /**
+     * Source of the tiles.
+     */
+    private final transient TileSource source;
+
+    /**
+     * Threads computing tiles.
+     */
+    private final transient ExecutorService workers;
+
+    /**
+     * Tiles queued or being computed.
+     */
+    private final transient Set<String> pending =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Zoom level, negative zooms in and positive zooms out.
+     */
+    private volatile int zoom;
+
+    /**
+     * Diagram cell at the left edge of the panel.
+     */
+    private volatile double viewX;
+
+    /**
+     * Diagram row at the top edge of the panel.
+     */
+    private volatile double viewY;
+
+    /**
+     * Constructs panel.
+     *
+     * @param source Tiles to show.
+     * @param zoom Initial zoom level, negative zooms in.
+     */
+    public TiledCAPanel(final TileSource source, final int zoom) {
+        super();
+        this.source = source;
+        this.zoom = Math.max(-MAX_ZOOM_IN, Math.min(TileSource.MAX_ZOOM,
+                    zoom));
+        final int threads = Runtime.getRuntime().availableProcessors();
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "tile-worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        MouseAdapter navigation = new MouseAdapter() {
+            /**
+             * Last drag position.
+             */
+            private Point last;
+
+            @Override
+            public void mousePressed(final MouseEvent e) {
+                last = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(final MouseEvent e) {
+                pan(last.x - e.getX(), last.y - e.getY());
+                last = e.getPoint();
+            }
+
+            @Override
+            public void mouseWheelMoved(final MouseWheelEvent e) {
+                zoomAt(e.getWheelRotation(), e.getX(), e.getY());
+            }
+        };
+        addMouseListener(navigation);
+        addMouseMotionListener(navigation);
+        addMouseWheelListener(navigation);
+    }
+
+    /**
+     * Diagram cells per panel pixel.
+     *
+     * @return Scale, below one when zoomed in.
+     */
+    private double cellsPerPixel() {
+        return Math.pow(2, zoom);
+    }
+
+    /**
+     * Moves the view.
+     *
+     * @param dx Pixels to move right.
+     * @param dy Pixels to move down.
+     */
+    public final void pan(final int dx, final int dy) {
+        viewX += dx * cellsPerPixel();
+        viewY = Math.max(0, viewY + dy * cellsPerPixel());
+        repaint();
+    }
+
+    /**
+     * Changes zoom keeping the cell under a panel position in place.
+     *
+     * @param steps Zoom out levels, negative zooms in.
+     * @param px Panel x coordinate.
+     * @param py Panel y coordinate.
+     */
+    public final void zoomAt(final int steps, final int px, final int py) {
+        final int z = Math.max(-MAX_ZOOM_IN, Math.min(TileSource.MAX_ZOOM,
+                    zoom + steps));
+        if (z == zoom) {
+            return;
+        }
+        final double cellX = viewX + px * cellsPerPixel();
+        final double cellY = viewY + py * cellsPerPixel();
+        zoom = z;
+        viewX = cellX - px * cellsPerPixel();
+        viewY = Math.max(0, cellY - py * cellsPerPixel());
+        repaint();
+    }
+
+    /**
+     * {@inheritDoc}
+     * @see javax.swing.JComponent#paintComponent(Graphics)
+     */
+    @Override
+    public final void paintComponent(final Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        final int tileZoom = Math.max(0, zoom);
+        final long span = TileSource.tileSpan(tileZoom);
+        // Pixels per tile side on screen.
+        final int tilePixels = TileSource.TILE_SIZE << Math.max(0, -zoom);
+        final double scale = cellsPerPixel();
+
+        final long firstX = (long) Math.floor(viewX / span);
+        final long firstY = (long) Math.floor(viewY / span);
+        for (long ty = firstY;; ty++) {
+            final int py = (int) Math.round((ty * span - viewY) / scale);
+            if (py >= getHeight()) {
+                break;
+            }
+            for (long tx = firstX;; tx++) {
+                final int px = (int) Math.round((tx * span - viewX) / scale);
+                if (px >= getWidth()) {
+                    break;
+                }
+                BufferedImage tile = source.getTileIfPresent(tileZoom, tx,
+                        ty);
+                if (tile != null) {
+                    g2d.drawImage(tile, px, py, tilePixels, tilePixels,
+                            null);
+                } else {
+                    g2d.setColor(PENDING_COLOR);
+                    g2d.fillRect(px, py, tilePixels, tilePixels);
+                    request(tileZoom, tx, ty);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues computation of a missing tile, the panel is repainted when it
+     * is done.
+     *
+     * @param tileZoom Tile zoom out level.
+     * @param tx Tile column.
+     * @param ty Tile row.
+     */
+    private void request(final int tileZoom, final long tx, final long ty) {
+        final String key = tileZoom + "/" + tx + "/" + ty;
+        if (!pending.add(key)) {
+            return;
+        }
+        workers.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // Skip tiles scrolled out of view while queued.
+                    if (isVisible(tileZoom, tx, ty)) {
+                        source.getTile(tileZoom, tx, ty);
+                    }
+                } catch (RuntimeException e) {
+                    LOG.severe("Tile " + key + " failed: " + e);
+                } finally {
+                    pending.remove(key);
+                }
+                repaint();
+            }
+        });
+    }
+
+    /**
+     * Tells whether a tile is inside the current view.
+     *
+     * @param tileZoom Tile zoom out level.
+     * @param tx Tile column.
+     * @param ty Tile row.
+     * @return True if some of the tile is visible.
+     */
+    private boolean isVisible(final int tileZoom, final long tx,
+            final long ty) {
+        if (tileZoom != Math.max(0, zoom)) {
+            return false;
+        }
+        final long span = TileSource.tileSpan(tileZoom);
+        final double scale = cellsPerPixel();
+        return (tx + 1) * span > viewX && (ty + 1) * span > viewY
+            && tx * span < viewX + getWidth() * scale
+            && ty * span < viewY + getHeight() * scale;
+    }
+}
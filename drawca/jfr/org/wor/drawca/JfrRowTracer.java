@@ -0,0 +1,86 @@
+/**
+ * JfrRowTracer.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Row tracer emitting a Java Flight Recorder event per row phase.
+ *
+ * Needs Java 11 or later, found by {@link DrawCAMetrics} if compiled. The
+ * events are named "org.wor.drawca.RowStep" and cost next to nothing
+ * unless a recording enables them.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class JfrRowTracer implements RowTracer {
+    @Override
+    public final Span begin(final String phase) {
+        RowStepEvent event = new RowStepEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Flight recorder event of one row phase.
+     */
+    @Name("org.wor.drawca.RowStep")
+    @Label("Row Step")
+    @Category("drawca")
+    @StackTrace(false)
+    @Description("Stepping, rasterising or tiling rows of a cellular "
+            + "automaton")
+    static class RowStepEvent extends Event implements Span {
+        /**
+         * Phase name.
+         */
+        @Label("Phase")
+        String phase;
+
+        /**
+         * Generation or row index worked on.
+         */
+        @Label("Generation")
+        long generation;
+
+        /**
+         * Cells processed.
+         */
+        @Label("Cells")
+        long cells;
+
+        @Override
+        public void end(final long gen, final long cellCount) {
+            end();
+            if (shouldCommit()) {
+                generation = gen;
+                cells = cellCount;
+                commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * BitPackedEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link BitPackedEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class BitPackedEngineTest {
+
+    /**
+     * Widths around word boundaries.
+     */
+    private static final int[] WIDTHS = {1, 2, 3, 63, 64, 65, 127, 128, 200};
+
+    /**
+     * Computes next line cell by cell with string neighborhoods.
+     *
+     * @param rule Rule to apply.
+     * @param line Current line as ones and zeroes.
+     * @return Next line as ones and zeroes.
+     */
+    static String referenceStep(final Rule rule, final String line) {
+        final int w = line.length();
+        StringBuilder sb = new StringBuilder(w);
+        for (int i = 0; i < w; i++) {
+            String neighborhood = "" + line.charAt((i - 1 + w) % w)
+                + line.charAt(i) + line.charAt((i + 1) % w);
+            sb.append(rule.getValue(neighborhood));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Random line of ones and zeroes.
+     *
+     * @param rand Random source.
+     * @param width Line width.
+     * @return Line as a string.
+     */
+    static String randomLine(final Random rand, final int width) {
+        StringBuilder sb = new StringBuilder(width);
+        for (int i = 0; i < width; i++) {
+            sb.append(rand.nextBoolean() ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Test that every rule matches the string based reference with periodic
+     * wraparound across word boundaries.
+     */
+    @Test
+    public final void stepMatchesReferenceTest() {
+        Random rand = new Random(1);
+        for (int ruleNum = 0; ruleNum < 256; ruleNum++) {
+            Rule rule = new Rule(ruleNum);
+            for (int width : WIDTHS) {
+                BitPackedEngine engine = new BitPackedEngine(rule, width);
+                String line = randomLine(rand, width);
+                long[] current = BitRows.fromString(line, width);
+                long[] next = BitRows.newRow(width);
+                for (int gen = 0; gen < 4; gen++) {
+                    engine.step(current, next);
+                    line = referenceStep(rule, line);
+                    assertEquals("Rule " + ruleNum + " width " + width,
+                            line, BitRows.toString(next, width));
+                    long[] tmp = current;
+                    current = next;
+                    next = tmp;
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a fixed boundary reads zeroes outside the lattice.
+     */
+    @Test
+    public final void fixedBoundaryTest() {
+        Random rand = new Random(5);
+        for (int ruleNum = 0; ruleNum < 256; ruleNum++) {
+            Rule rule = new Rule(ruleNum);
+            for (int width : WIDTHS) {
+                BitPackedEngine engine = new BitPackedEngine(rule, width,
+                        Boundary.FIXED);
+                String line = randomLine(rand, width);
+                long[] next = BitRows.newRow(width);
+                engine.step(BitRows.fromString(line, width), next);
+                // Pad with zeroes and drop the wrapped edge cells.
+                String padded = referenceStep(rule, "0" + line + "0");
+                assertEquals("Rule " + ruleNum + " width " + width,
+                        padded.substring(1, width + 1),
+                        BitRows.toString(next, width));
+            }
+        }
+    }
+
+    /**
+     * Test that padding bits of the last word stay zero.
+     */
+    @Test
+    public final void paddingStaysZeroTest() {
+        final int width = 70;
+        BitPackedEngine engine = new BitPackedEngine(new Rule(255), width);
+        long[] next = BitRows.newRow(width);
+        engine.step(BitRows.newRow(width), next);
+        assertEquals(width, BitRows.countOnes(next));
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * CAPanelTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link CAPanel}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class CAPanelTest {
+
+    /**
+     * Panel width and height.
+     */
+    private static final int SIZE = 64;
+
+    /**
+     * Longest wait for the producer.
+     */
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /**
+     * Paints a panel into an image.
+     *
+     * @param panel Panel to paint.
+     * @return Painted image.
+     */
+    private static BufferedImage paint(final CAPanel panel) {
+        BufferedImage img = new BufferedImage(SIZE, SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics g = img.createGraphics();
+        panel.setSize(SIZE, SIZE);
+        panel.paint(g);
+        g.dispose();
+        return img;
+    }
+
+    /**
+     * Waits until the producer has published enough rows.
+     *
+     * @param panel Panel with a producer.
+     * @param rows Rows to wait for.
+     * @throws InterruptedException If interrupted.
+     */
+    private static void awaitRows(final CAPanel panel, final long rows)
+        throws InterruptedException {
+        final long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (panel.getPublishedRows() < rows
+                && System.currentTimeMillis() < end) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Test that the producer draws only requested rows and ends with the
+     * same image as drawing on the calling thread.
+     *
+     * @throws InterruptedException If interrupted.
+     */
+    @Test
+    public final void producerTest() throws InterruptedException {
+        final String line = BitPackedEngineTest.randomLine(new Random(31),
+                SIZE);
+        CAPanel direct = new CAPanel(SIZE, SIZE, 1, 1, 30, line);
+        direct.setupBackground();
+        direct.drawCellularAutomata();
+
+        CAPanel produced = new CAPanel(SIZE, SIZE, 1, 1, 30, line);
+        produced.setupBackground();
+        produced.startProducer(RunGUI.DEFAULT_FPS);
+        produced.requestRows(5);
+        awaitRows(produced, 5);
+        Thread.sleep(50);
+        assertEquals(5, produced.getPublishedRows());
+
+        produced.requestRows(Integer.MAX_VALUE);
+        awaitRows(produced, SIZE);
+        produced.stopProducer();
+        assertEquals(SIZE, produced.getPublishedRows());
+
+        BufferedImage expected = paint(direct);
+        BufferedImage actual = paint(produced);
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that continuous mode keeps drawing past the image height and
+     * paints the newest rows with the ring buffer unwrapped.
+     *
+     * @throws InterruptedException If interrupted.
+     */
+    @Test
+    public final void continuousTest() throws InterruptedException {
+        final String line = BitPackedEngineTest.randomLine(new Random(37),
+                SIZE);
+        final int rows = 3 * SIZE + 5;
+        CAPanel tall = new CAPanel(SIZE, 4 * SIZE, 1, 1, 110, line);
+        tall.setupBackground();
+        tall.drawCellularAutomata();
+        BufferedImage full = new BufferedImage(SIZE, 4 * SIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics g = full.createGraphics();
+        tall.setSize(SIZE, 4 * SIZE);
+        tall.paint(g);
+        g.dispose();
+
+        CAPanel ring = new CAPanel(SIZE, SIZE, 1, 1, 110, line);
+        ring.setupBackground();
+        ring.setContinuous(true);
+        ring.startProducer(RunGUI.DEFAULT_FPS);
+        ring.requestRows(rows);
+        awaitRows(ring, rows);
+        Thread.sleep(50);
+        ring.stopProducer();
+        assertEquals(rows, ring.getPublishedRows());
+
+        BufferedImage shown = paint(ring);
+        final int first = rows - (SIZE - 1);
+        for (int y = 0; y < SIZE - 1; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals("Row " + y, full.getRGB(x, first + y),
+                        shown.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that the producer doesn't run ahead of the target rate.
+     *
+     * @throws InterruptedException If interrupted.
+     */
+    @Test
+    public final void targetRateTest() throws InterruptedException {
+        final double rowsPerSecond = 100;
+        CAPanel panel = new CAPanel(SIZE, SIZE, 1, 1, 30, "");
+        panel.setupBackground();
+        panel.setContinuous(true);
+        panel.setTargetRowsPerSecond(rowsPerSecond);
+        final long start = System.nanoTime();
+        panel.startProducer(RunGUI.DEFAULT_FPS);
+        panel.requestRows(Long.MAX_VALUE);
+        Thread.sleep(300);
+        final long rows = panel.getPublishedRows();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        panel.stopProducer();
+        assertTrue(rows > 0);
+        assertTrue(rows <= seconds * rowsPerSecond + 1);
+    }
+
+    /**
+     * Test that publishing rows repaints only their strip until the ring
+     * buffer scrolls.
+     */
+    @Test
+    public final void dirtyRegionTest() {
+        final int scale = 2;
+        CAPanel panel = new CAPanel(SIZE, SIZE, scale, scale, 30, "1");
+        panel.setupBackground();
+        final int rows = SIZE / scale;
+
+        assertEquals(new Rectangle(0, 3 * scale, SIZE, 2 * scale),
+                panel.dirtyRegion(3, 5));
+        assertEquals(new Rectangle(0, 0, SIZE, SIZE),
+                panel.dirtyRegion(0, rows));
+        assertNull(panel.dirtyRegion(rows, rows + 1));
+        panel.setShowThroughput(true);
+        assertNull(panel.dirtyRegion(3, 5));
+    }
+
+    /**
+     * Test that the damage of rule 90, linear, is the single cell pattern
+     * of the flipped cell drawn in the damage color.
+     */
+    @Test
+    public final void damageTest() {
+        StringBuilder zeroes = new StringBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            zeroes.append('0');
+        }
+        CAPanel panel = new CAPanel(SIZE, SIZE, 1, 1, 90, zeroes.toString());
+        panel.setDamageCell(SIZE / 2);
+        panel.setupBackground();
+        panel.drawCellularAutomata();
+        BufferedImage img = paint(panel);
+
+        RowEngine engine = new BitPackedEngine(new Rule(90), SIZE);
+        long[] row = BitRows.newRow(SIZE);
+        BitRows.set(row, SIZE / 2, true);
+        long[] next = BitRows.newRow(SIZE);
+        final int white = Rule.COLOR_TO_CHAR.inverse().get('0');
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                assertEquals("Pixel " + x + "," + y, BitRows.get(row, x)
+                        ? CAPanel.DAMAGE_COLOR.getRGB() : white,
+                        img.getRGB(x, y));
+            }
+            engine.step(row, next);
+            long[] tmp = row;
+            row = next;
+            next = tmp;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * CheckpointTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link Checkpoint}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class CheckpointTest {
+
+
+    /**
+     * Row width used in the tests.
+     */
+    private static final int WIDTH = 300;
+
+    /**
+     * Temporary directory of the files.
+     */
+    private Path dir;
+
+    /**
+     * Creates the directory.
+     *
+     * @throws IOException If creating fails.
+     */
+    @Before
+    public final void setUp() throws IOException {
+        dir = Files.createTempDirectory("drawca");
+    }
+
+    /**
+     * Removes the directory and its files.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public final void tearDown() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    /**
+     * Test that a checkpoint reads back what was written.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    @Test
+    public final void roundTripTest() throws IOException {
+        long[] row = BitRows.randomRow(WIDTH, new Random(1));
+        Path file = dir.resolve("ck");
+        new Checkpoint(110, Boundary.FIXED, WIDTH, 42, 7, 100, 1000, row)
+            .write(file);
+        Checkpoint c = Checkpoint.read(file);
+        assertEquals(110, c.getRule());
+        assertEquals(Boundary.FIXED, c.getBoundary());
+        assertEquals(WIDTH, c.getWidth());
+        assertEquals(42, c.getSeed());
+        assertEquals(107, c.getGeneration());
+        assertEquals(100, c.getRowIndex());
+        assertEquals(1000, c.getRows());
+        assertArrayEquals(row, c.getRow());
+    }
+
+    /**
+     * Test that a damaged checkpoint is detected and the previous one is
+     * used instead.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    @Test
+    public final void damagedTest() throws IOException {
+        Path file = dir.resolve("ck");
+        long[] row = BitRows.newRow(WIDTH);
+        new Checkpoint(30, Boundary.PERIODIC, WIDTH, 0, 0, 1, 10, row)
+            .write(file);
+        new Checkpoint(30, Boundary.PERIODIC, WIDTH, 0, 0, 2, 10, row)
+            .write(file);
+        assertTrue(Files.exists(Checkpoint.sibling(file,
+                        Checkpoint.PREVIOUS_SUFFIX)));
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[Checkpoint.HEADER_BYTES] ^= 1;
+        Files.write(file, bytes);
+        try {
+            Checkpoint.read(file);
+            fail("Damaged checkpoint was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("checksum"));
+        }
+        assertEquals(1, Checkpoint.readLatest(file).getRowIndex());
+    }
+
+    /**
+     * Test that a run continued from a checkpoint stores the same rows as
+     * an uninterrupted run.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    @Test
+    public final void resumeTest() throws IOException {
+        final int rows = 1500;
+        final long[] initialRow = BitRows.randomRow(WIDTH, new Random(2));
+        RowEngine engine = new BitPackedEngine(new Rule(110), WIDTH);
+
+        Path straight = dir.resolve("straight.hist");
+        try (HistoryStore store = HistoryStore.create(straight, 110, WIDTH,
+                    Boundary.PERIODIC)) {
+            new HeadlessRenderer(engine, initialRow).render(rows, store);
+        }
+
+        // First run stops early after checkpoints at rows 300, 600, 900.
+        Path resumed = dir.resolve("resumed.hist");
+        Path file = dir.resolve("ck");
+        Checkpoint start = new Checkpoint(110, Boundary.PERIODIC, WIDTH, 0,
+                0, 0, rows, initialRow);
+        try (HistoryStore store = HistoryStore.create(resumed, 110, WIDTH,
+                    Boundary.PERIODIC);
+                CheckpointWriter writer = new CheckpointWriter(file, start,
+                    300)) {
+            new HeadlessRenderer(engine, initialRow).render(1000,
+                    new TeeSink(store, writer));
+        }
+
+        Checkpoint last = Checkpoint.readLatest(file);
+        assertEquals(900, last.getRowIndex());
+        try (HistoryStore store = HistoryStore.resume(resumed,
+                    last.getRowIndex())) {
+            new HeadlessRenderer(engine, last.getRow()).render(
+                    last.getRowIndex(), last.getRows(), store);
+        }
+
+        HistoryStore a = HistoryStore.open(straight);
+        HistoryStore b = HistoryStore.open(resumed);
+        try {
+            assertEquals(rows, b.getRowCount());
+            for (int t = 0; t < rows; t++) {
+                assertArrayEquals(a.readRow(t), b.readRow(t));
+            }
+        } finally {
+            a.close();
+            b.close();
+        }
+    }
+}
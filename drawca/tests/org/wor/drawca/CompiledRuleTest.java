@@ -0,0 +1,106 @@
+/**
+ * CompiledRuleTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link CompiledRule}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class CompiledRuleTest {
+
+    /**
+     * Test that the bit table agrees with the string rule.
+     */
+    @Test
+    public final void lookupTest() {
+        for (int i = 0; i < 256; i++) {
+            Rule rule = new Rule(i);
+            CompiledRule compiled = rule.compile();
+            for (int n = 0; n < CompiledRule.NEIGHBORHOODS; n++) {
+                String neighborhood = String.format("%3s",
+                        Integer.toBinaryString(n)).replace(' ', '0');
+                assertEquals("Rule " + i + " neighborhood " + neighborhood,
+                        rule.getValue(neighborhood).charValue() - '0',
+                        compiled.lookup(n));
+            }
+        }
+    }
+
+    /**
+     * Test that window tables agree with stepping the window cell by cell.
+     */
+    @Test
+    public final void windowTableTest() {
+        for (int i : new int[] {30, 90, 110, 184}) {
+            CompiledRule compiled = new Rule(i).compile();
+            for (int generations = 1; generations <= 3; generations++) {
+                byte[] bytes = compiled.byteTable(generations);
+                int cells = CompiledRule.windowCells(CompiledRule.BYTE_CELLS,
+                        generations);
+                for (int w = 0; w < bytes.length; w += 7) {
+                    assertEquals("Rule " + i + " window " + w,
+                            referenceWindow(compiled, w, cells, generations),
+                            bytes[w] & 0xff);
+                }
+            }
+            short[] shorts = compiled.shortTable(1);
+            for (int w = 0; w < shorts.length; w += 101) {
+                assertEquals("Rule " + i + " window " + w,
+                        referenceWindow(compiled, w, 18, 1),
+                        shorts[w] & 0xffff);
+            }
+        }
+    }
+
+    /**
+     * Steps a window cell by cell without wraparound.
+     *
+     * @param rule Rule to apply.
+     * @param window Window cells.
+     * @param cells Window size.
+     * @param generations Generations to step.
+     * @return Remaining cells.
+     */
+    private static int referenceWindow(final CompiledRule rule,
+            final int window, final int cells, final int generations) {
+        int v = window;
+        int n = cells;
+        for (int g = 0; g < generations; g++) {
+            int next = 0;
+            for (int x = 0; x < n - 2; x++) {
+                next |= rule.lookup((v >>> x) & 1, (v >>> (x + 1)) & 1,
+                        (v >>> (x + 2)) & 1) << x;
+            }
+            v = next;
+            n -= 2;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * CycleDetectorTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link CycleDetector}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class CycleDetectorTest {
+
+    /**
+     * Finds transient and period by remembering every row.
+     *
+     * @param engine Engine.
+     * @param row Initial row.
+     * @return Transient length and period.
+     */
+    private static long[] referenceCycle(final RowEngine engine,
+            final long[] row) {
+        List<String> seen = new ArrayList<String>();
+        long[] current = row.clone();
+        long[] next = BitRows.newRow(engine.getWidth());
+        while (true) {
+            String s = Arrays.toString(current);
+            int first = seen.indexOf(s);
+            if (first >= 0) {
+                return new long[] {first, seen.size() - first};
+            }
+            seen.add(s);
+            engine.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+    }
+
+    /**
+     * Test that transient and period match a search remembering all rows.
+     */
+    @Test
+    public final void detectTest() {
+        Random rand = new Random(13);
+        final int width = 12;
+        for (int ruleNum = 0; ruleNum < 256; ruleNum++) {
+            RowEngine engine = new BitPackedEngine(new Rule(ruleNum), width);
+            long[] row = BitRows.randomRow(width, rand);
+            long[] expected = referenceCycle(engine, row);
+            CycleDetector detector = new CycleDetector(engine, row);
+            assertTrue(detector.detect(Long.MAX_VALUE));
+            assertEquals("Rule " + ruleNum, expected[0],
+                    detector.getTransientLength());
+            assertEquals("Rule " + ruleNum, expected[1],
+                    detector.getPeriod());
+        }
+    }
+
+    /**
+     * Test that jumps around the cycle match plain simulation.
+     */
+    @Test
+    public final void rowAtTest() {
+        final int width = 30;
+        RowEngine engine = new BitPackedEngine(new Rule(30), width);
+        long[] row = BitRows.randomRow(width, new Random(17));
+        CycleDetector detector = new CycleDetector(engine, row);
+        assertTrue(detector.detect(Long.MAX_VALUE));
+
+        long[] current = row.clone();
+        long[] next = BitRows.newRow(width);
+        final long generations = detector.getTransientLength()
+            + 3 * detector.getPeriod() + 5;
+        for (long g = 0; g <= generations; g++) {
+            if (g % 97 == 0 || g == generations) {
+                assertArrayEquals("Generation " + g, current,
+                        detector.rowAt(g));
+            }
+            engine.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        final long steps = detector.getSteps();
+        detector.rowAt(Long.MAX_VALUE);
+        assertTrue(detector.getSteps() - steps < detector.getPeriod());
+    }
+
+    /**
+     * Test that a search with a too small limit reports no cycle and keeps
+     * the last computed row.
+     */
+    @Test
+    public final void limitTest() {
+        final int width = 64;
+        RowEngine engine = new BitPackedEngine(new Rule(170), width);
+        long[] row = BitRows.fromString("1", width);
+        CycleDetector detector = new CycleDetector(engine, row);
+        assertFalse(detector.detect(10));
+        assertEquals(-1, detector.getPeriod());
+        assertEquals(-1, detector.getTransientLength());
+        // Rule 170 shifts left, cell 0 wraps to the right edge.
+        assertTrue(BitRows.get(detector.rowAt(10), width - 10));
+        assertTrue(detector.detect(1000));
+        assertEquals(width, detector.getPeriod());
+    }
+}
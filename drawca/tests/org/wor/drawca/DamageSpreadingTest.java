@@ -0,0 +1,125 @@
+/**
+ * DamageSpreadingTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DamageSpreading}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class DamageSpreadingTest {
+
+    /**
+     * Lattice width.
+     */
+    private static final int WIDTH = 150;
+
+    /**
+     * Test the twin run against two separate runs.
+     */
+    @Test
+    public final void lockstepTest() {
+        Random rand = new Random(25);
+        for (int r : new int[] {30, 110, 204}) {
+            RowEngine engine = new BitPackedEngine(new Rule(r), WIDTH);
+            long[] a = BitRows.randomRow(WIDTH, rand);
+            long[] b = DamageSpreading.flip(a, WIDTH, 77);
+            DamageSpreading twin = new DamageSpreading(engine, a, b);
+            assertEquals(1, twin.getHamming());
+            long[] next = BitRows.newRow(WIDTH);
+            for (int t = 1; t <= 40; t++) {
+                twin.step();
+                engine.step(a, next);
+                a = next.clone();
+                engine.step(b, next);
+                b = next.clone();
+                assertArrayEquals("Rule " + r + " generation " + t, a,
+                        twin.getOriginal());
+                assertArrayEquals(b, twin.getPerturbed());
+                long hamming = 0;
+                for (int k = 0; k < a.length; k++) {
+                    assertEquals(a[k] ^ b[k], twin.getDifference()[k]);
+                    hamming += Long.bitCount(a[k] ^ b[k]);
+                }
+                assertEquals(hamming, twin.getHamming());
+            }
+            if (r == 204) {
+                // The identity rule never spreads the damage.
+                assertEquals(1, twin.getHamming());
+            }
+        }
+    }
+
+    /**
+     * Test the difference rows and distances written by a run.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void runTest() throws IOException {
+        // Rule 90 is linear, the damage of one cell is its Pascal triangle
+        // modulo two.
+        DamageSpreading twin = new DamageSpreading(new BitPackedEngine(
+                    new Rule(90), WIDTH), BitRows.newRow(WIDTH),
+                DamageSpreading.flip(BitRows.newRow(WIDTH), WIDTH, 10));
+        final List<long[]> rows = new ArrayList<long[]>();
+        StringWriter distances = new StringWriter();
+        twin.run(4, new RowSink() {
+            @Override
+            public void writeRow(final long generation, final long[] row) {
+                assertEquals(rows.size(), generation);
+                rows.add(row.clone());
+            }
+
+            @Override
+            public void close() {
+            }
+        }, distances);
+        assertEquals(DamageSpreading.CSV_HEADER + "\n0,1\n1,2\n2,2\n3,4\n",
+                distances.toString());
+        assertEquals(4, rows.size());
+        assertEquals("00001010101000000000", BitRows.toString(rows.get(3),
+                    WIDTH).substring(3, 23));
+    }
+
+    /**
+     * Test that flipping a cell outside the row fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void flipRangeTest() {
+        DamageSpreading.flip(BitRows.newRow(WIDTH), WIDTH, WIDTH);
+    }
+}
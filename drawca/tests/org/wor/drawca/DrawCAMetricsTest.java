@@ -0,0 +1,95 @@
+/**
+ * DrawCAMetricsTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link DrawCAMetrics}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class DrawCAMetricsTest {
+
+
+    /**
+     * Test that rendering rows is counted and visible through JMX.
+     *
+     * @throws Exception If JMX access fails.
+     */
+    @Test
+    public final void renderTest() throws Exception {
+        final int width = 500;
+        final int rows = 100;
+        DrawCAMetrics metrics = DrawCAMetrics.get();
+        metrics.register();
+        metrics.register();
+        metrics.reset();
+
+        RowEngine engine = new BitPackedEngine(new Rule(30), width);
+        new HeadlessRenderer(engine, BitRows.randomRow(width,
+                    new Random(3))).render(rows, new TeeSink());
+        assertEquals(rows - 1, metrics.getGenerations());
+        assertEquals((rows - 1) * (long) width, metrics.getCellsUpdated());
+        assertEquals(rows, metrics.getRasterRows());
+        assertTrue(metrics.getCellsPerSecond() > 0);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(DrawCAMetrics.OBJECT_NAME);
+        assertEquals(rows - 1L, server.getAttribute(name, "Generations"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getGenerations());
+    }
+
+    /**
+     * Test the tile hit ratio and the largest repaint latency.
+     */
+    @Test
+    public final void ratioTest() {
+        DrawCAMetrics metrics = DrawCAMetrics.get();
+        metrics.reset();
+        assertEquals(0, metrics.getTileHitRatio(), 0);
+        metrics.recordTile(true);
+        metrics.recordTile(true);
+        metrics.recordTile(true);
+        metrics.recordTile(false);
+        assertEquals(0.75, metrics.getTileHitRatio(), 1e-9);
+
+        final long millis = 1000000;
+        metrics.recordRepaint(2 * millis);
+        metrics.recordRepaint(4 * millis);
+        assertEquals(3, metrics.getRepaintLatencyMillis(), 1e-9);
+        assertEquals(4, metrics.getMaxRepaintLatencyMillis(), 1e-9);
+    }
+}
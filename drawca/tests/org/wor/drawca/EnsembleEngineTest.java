@@ -0,0 +1,169 @@
+/**
+ * EnsembleEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link EnsembleEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class EnsembleEngineTest {
+
+    /**
+     * Test every sample against a single lattice engine.
+     */
+    @Test
+    public final void matchesBitPackedTest() {
+        Random rand = new Random(22);
+        for (Boundary boundary : Boundary.values()) {
+            for (int width : new int[] {1, 2, 3, 70}) {
+                for (int r : new int[] {30, 90, 110, 184}) {
+                    Rule rule = new Rule(r);
+                    EnsembleEngine ensemble = new EnsembleEngine(rule, width,
+                            128, boundary);
+                    ensemble.randomize(rand);
+                    long[][] rows = new long[128][];
+                    for (int s = 0; s < rows.length; s++) {
+                        rows[s] = ensemble.getSample(s);
+                    }
+                    BitPackedEngine single = new BitPackedEngine(rule,
+                            width, boundary);
+                    for (int t = 0; t < 10; t++) {
+                        ensemble.step();
+                        for (int s = 0; s < rows.length; s++) {
+                            long[] next = BitRows.newRow(width);
+                            single.step(rows[s], next);
+                            rows[s] = next;
+                            assertArrayEquals(boundary + " width " + width
+                                    + " rule " + r + " sample " + s,
+                                    rows[s], ensemble.getSample(s));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test the bit-sliced counts and the aggregates against the unpacked
+     * samples.
+     */
+    @Test
+    public final void countTest() {
+        final int width = 1000;
+        EnsembleEngine ensemble = new EnsembleEngine(new Rule(30), width,
+                192, Boundary.PERIODIC);
+        ensemble.randomize(new Random(5));
+        ensemble.setSample(7, BitRows.newRow(width));
+        ensemble.setSample(100, BitRows.newRow(width));
+        long[] all = BitRows.newRow(width);
+        for (int i = 0; i < width; i++) {
+            BitRows.set(all, i, true);
+        }
+        ensemble.setSample(191, all);
+        long[] counts = new long[ensemble.getSamples()];
+        ensemble.countOnes(counts);
+        long total = 0;
+        for (int s = 0; s < counts.length; s++) {
+            assertEquals("Sample " + s,
+                    BitRows.countOnes(ensemble.getSample(s)), counts[s]);
+            total += counts[s];
+        }
+        assertEquals(width, counts[191]);
+        assertEquals(total, ensemble.countOnes());
+        assertEquals(2, ensemble.countExtinct());
+    }
+
+    /**
+     * Test the CSV outputs.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void csvTest() throws IOException {
+        EnsembleEngine ensemble = new EnsembleEngine(new Rule(0), 10, 64,
+                Boundary.PERIODIC);
+        ensemble.randomize(new Random(1));
+        ensemble.step(3);
+        StringWriter samples = new StringWriter();
+        ensemble.writeSamples(samples);
+        String[] lines = samples.toString().split("\n");
+        assertEquals(EnsembleEngine.SAMPLE_CSV_HEADER, lines[0]);
+        assertEquals(65, lines.length);
+        assertEquals("63,0,0.000000", lines[64]);
+        StringWriter summary = new StringWriter();
+        ensemble.writeSummary(summary);
+        assertEquals(EnsembleEngine.SUMMARY_CSV_HEADER
+                + "\n64,10,3,0.000000,0.000000,64\n", summary.toString());
+    }
+
+    /**
+     * Test that the unused lanes of a partial group are left out of the
+     * statistics.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void partialGroupTest() throws IOException {
+        // Rule 255 sets every lane, used or not.
+        EnsembleEngine full = new EnsembleEngine(new Rule(255), 10, 100,
+                Boundary.PERIODIC);
+        full.step();
+        long[] counts = new long[full.getSamples()];
+        full.countOnes(counts);
+        for (int s = 0; s < counts.length; s++) {
+            assertEquals("Sample " + s, 10, counts[s]);
+        }
+        assertEquals(1000, full.countOnes());
+        assertEquals(0, full.countExtinct());
+
+        EnsembleEngine empty = new EnsembleEngine(new Rule(0), 10, 100,
+                Boundary.PERIODIC);
+        empty.randomize(new Random(3));
+        empty.step();
+        assertEquals(100, empty.countExtinct());
+        StringWriter summary = new StringWriter();
+        full.writeSummary(summary);
+        assertEquals(EnsembleEngine.SUMMARY_CSV_HEADER
+                + "\n100,10,1,1.000000,0.000000,0\n", summary.toString());
+    }
+
+    /**
+     * Test that an empty ensemble is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void noSamplesTest() {
+        new EnsembleEngine(new Rule(30), 10, 0, Boundary.PERIODIC);
+    }
+}
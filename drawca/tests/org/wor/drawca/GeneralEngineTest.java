@@ -0,0 +1,156 @@
+/**
+ * GeneralEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link GeneralEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class GeneralEngineTest {
+
+
+    /**
+     * Reference step reading every neighbor of every cell.
+     *
+     * @param rule Rule.
+     * @param row Current row.
+     * @param boundary Boundary condition.
+     * @return Next row.
+     */
+    private static byte[] referenceStep(final GeneralRule rule,
+            final byte[] row, final Boundary boundary) {
+        final int w = row.length;
+        final int r = rule.getRadius();
+        final int k = rule.getStates();
+        final BigInteger code = rule.getCode();
+        final byte[] next = new byte[w];
+        for (int i = 0; i < w; i++) {
+            int wolfram = 0;
+            int sum = 0;
+            for (int j = i - r; j <= i + r; j++) {
+                int c = 0;
+                if (j >= 0 && j < w) {
+                    c = row[j];
+                } else if (boundary == Boundary.PERIODIC) {
+                    c = row[((j % w) + w) % w];
+                }
+                wolfram = wolfram * k + c;
+                sum += c;
+            }
+            int index = wolfram;
+            if (rule.getKind() == GeneralRule.Kind.TOTALISTIC) {
+                index = sum;
+            } else if (rule.getKind() == GeneralRule.Kind.OUTER_TOTALISTIC) {
+                index = k * (sum - row[i]) + row[i];
+            }
+            next[i] = (byte) code.divide(BigInteger.valueOf(k).pow(index))
+                .mod(BigInteger.valueOf(k)).intValue();
+        }
+        return next;
+    }
+
+    /**
+     * Runs a rule against the reference.
+     *
+     * @param rule Rule.
+     * @param boundary Boundary condition.
+     * @param rand Random source.
+     */
+    private static void checkRule(final GeneralRule rule,
+            final Boundary boundary, final Random rand) {
+        final int width = 37;
+        GeneralEngine engine = new GeneralEngine(rule, width, boundary);
+        byte[] row = GeneralEngine.randomRow(width, rule.getStates(), rand);
+        byte[] next = new byte[width];
+        for (int gen = 0; gen < 5; gen++) {
+            byte[] expected = referenceStep(rule, row, boundary);
+            engine.step(row, next);
+            assertArrayEquals(rule + " " + boundary, expected, next);
+            byte[] t = row;
+            row = next;
+            next = t;
+        }
+    }
+
+    /**
+     * Test every kind with random codes against the reference.
+     */
+    @Test
+    public final void referenceTest() {
+        Random rand = new Random(17);
+        for (GeneralRule.Kind kind : GeneralRule.Kind.values()) {
+            for (int k = 2; k <= 4; k++) {
+                for (int r = 0; r <= 2; r++) {
+                    GeneralRule probe = new GeneralRule(kind, k, r,
+                            BigInteger.ZERO);
+                    int digits = probe.getCodeDigits();
+                    if (kind == GeneralRule.Kind.WOLFRAM && digits > 1000) {
+                        continue;
+                    }
+                    BigInteger code = new BigInteger(digits * 2, rand)
+                        .mod(BigInteger.valueOf(k).pow(digits));
+                    for (Boundary b : Boundary.values()) {
+                        checkRule(new GeneralRule(kind, k, r, code), b, rand);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that an elementary Wolfram rule matches {@link BitPackedEngine}.
+     */
+    @Test
+    public final void elementaryTest() {
+        final int width = 100;
+        String line = BitPackedEngineTest.randomLine(new Random(5), width);
+        GeneralEngine general = new GeneralEngine(
+                GeneralRule.parse("wolfram:2:1:30"), width, Boundary.PERIODIC);
+        BitPackedEngine packed = new BitPackedEngine(new Rule(30), width,
+                Boundary.PERIODIC);
+        byte[] cells = GeneralEngine.fromString(line, width, 2);
+        long[] current = BitRows.fromString(line, width);
+        long[] next = BitRows.newRow(width);
+        for (int gen = 0; gen < 20; gen++) {
+            general.step(cells, cells);
+            packed.step(current, next);
+            long[] t = current;
+            current = next;
+            next = t;
+            for (int i = 0; i < width; i++) {
+                assertEquals(BitRows.get(current, i) ? 1 : 0, cells[i]);
+            }
+        }
+    }
+}
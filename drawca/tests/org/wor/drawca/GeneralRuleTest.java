@@ -0,0 +1,80 @@
+/**
+ * GeneralRuleTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link GeneralRule}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class GeneralRuleTest {
+
+
+    /**
+     * Test that a parsed rule formats back to the same specification.
+     */
+    @Test
+    public final void parseTest() {
+        GeneralRule rule = GeneralRule.parse("Outer-Totalistic:3:2:12345");
+        assertEquals(GeneralRule.Kind.OUTER_TOTALISTIC, rule.getKind());
+        assertEquals(3, rule.getStates());
+        assertEquals(2, rule.getRadius());
+        assertEquals(rule.toString(),
+                GeneralRule.parse(rule.toString()).toString());
+        assertEquals("totalistic:3:1:777",
+                GeneralRule.parse("totalistic:3:1:777").toString());
+    }
+
+    /**
+     * Test the table of a totalistic rule, code 777 is 1001210 in base 3.
+     */
+    @Test
+    public final void totalisticTableTest() {
+        GeneralRule rule = GeneralRule.parse("totalistic:3:1:777");
+        assertEquals(7, rule.getSumCount());
+        assertArrayEquals(new byte[] {0, 1, 2, 1, 0, 0, 1}, rule.table());
+    }
+
+    /**
+     * Test that a code with too many digits is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void codeOutOfRangeTest() {
+        GeneralRule.parse("wolfram:2:1:256");
+    }
+
+    /**
+     * Test that a table which doesn't fit is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void tableTooLargeTest() {
+        GeneralRule.parse("wolfram:5:10:1");
+    }
+}
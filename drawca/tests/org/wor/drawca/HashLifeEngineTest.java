@@ -0,0 +1,135 @@
+/**
+ * HashLifeEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link HashLifeEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class HashLifeEngineTest {
+
+    /**
+     * Power of two widths below, at and above one leaf.
+     */
+    private static final int[] WIDTHS = {1, 2, 8, 32, 64, 128, 256, 1024};
+
+    /**
+     * Runs the bit-packed engine step by step.
+     *
+     * @param rule Rule to apply.
+     * @param row Initial row.
+     * @param width Row width.
+     * @param generations Generations to run.
+     * @return Row after the generations.
+     */
+    private static long[] simulate(final Rule rule, final long[] row,
+            final int width, final long generations) {
+        BitPackedEngine engine = new BitPackedEngine(rule, width);
+        long[] current = row.clone();
+        long[] next = BitRows.newRow(width);
+        for (long g = 0; g < generations; g++) {
+            engine.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return current;
+    }
+
+    /**
+     * Test that jumps of any length match step by step simulation.
+     */
+    @Test
+    public final void advanceMatchesSimulationTest() {
+        Random rand = new Random(7);
+        final long[] generations = {0, 1, 2, 3, 31, 32, 33, 64, 100, 1000,
+            4097};
+        for (int ruleNum : new int[] {30, 54, 90, 110, 184}) {
+            Rule rule = new Rule(ruleNum);
+            for (int width : WIDTHS) {
+                HashLifeEngine engine = new HashLifeEngine(rule, width);
+                long[] row = BitRows.randomRow(width, rand);
+                for (long g : generations) {
+                    long[] next = BitRows.newRow(width);
+                    engine.advance(row, next, g);
+                    assertArrayEquals("Rule " + ruleNum + " width " + width
+                            + " generations " + g,
+                            simulate(rule, row, width, g), next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a tiny cache bound evicts entries without changing results.
+     */
+    @Test
+    public final void boundedCacheTest() {
+        final int width = 512;
+        final int maxNodes = 50;
+        Rule rule = new Rule(110);
+        HashLifeEngine engine = new HashLifeEngine(rule, width, maxNodes);
+        long[] row = BitRows.randomRow(width, new Random(11));
+        long[] next = BitRows.newRow(width);
+        engine.advance(row, next, 777);
+        assertArrayEquals(simulate(rule, row, width, 777), next);
+        assertTrue(engine.getNodeCount() <= maxNodes);
+    }
+
+    /**
+     * Test that a far jump on a structured row is answered from the memo.
+     */
+    @Test
+    public final void farJumpTest() {
+        final int width = 1 << 12;
+        Rule rule = new Rule(184);
+        HashLifeEngine engine = new HashLifeEngine(rule, width);
+        long[] row = BitRows.newRow(width);
+        BitRows.set(row, 0, true);
+        long[] next = BitRows.newRow(width);
+        engine.advance(row, next, 1000000000L);
+        // Rule 184 moves an isolated particle one cell right per step.
+        long[] expected = BitRows.newRow(width);
+        BitRows.set(expected, (int) (1000000000L % width), true);
+        assertArrayEquals(expected, next);
+        assertTrue(engine.getMisses() < 100000);
+    }
+
+    /**
+     * Test that only power of two widths are accepted.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void rejectsOtherWidthsTest() {
+        new HashLifeEngine(new Rule(30), 100);
+    }
+}
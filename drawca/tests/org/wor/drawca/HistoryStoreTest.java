@@ -0,0 +1,144 @@
+/**
+ * HistoryStoreTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link HistoryStore}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class HistoryStoreTest {
+
+    /**
+     * Row width used in the tests.
+     */
+    private static final int WIDTH = 150;
+
+    /**
+     * Number of rows stored.
+     */
+    private static final int ROWS = 20;
+
+    /**
+     * Temporary history file.
+     */
+    private Path file;
+
+    /**
+     * Rows written to the file.
+     */
+    private long[][] rows;
+
+    /**
+     * Writes a history file.
+     *
+     * @throws IOException If writing fails.
+     */
+    @Before
+    public final void setUp() throws IOException {
+        file = Files.createTempFile("drawca", ".hist");
+        Random rand = new Random(6);
+        rows = new long[ROWS][];
+        try (HistoryStore store = HistoryStore.create(file, 110, WIDTH,
+                    Boundary.FIXED)) {
+            for (int t = 0; t < ROWS; t++) {
+                rows[t] = BitRows.randomRow(WIDTH, rand);
+                store.writeRow(t, rows[t]);
+            }
+        }
+    }
+
+    /**
+     * Removes the history file.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public final void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test header and random row access after reopening.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test
+    public final void reopenTest() throws IOException {
+        try (HistoryStore store = HistoryStore.open(file)) {
+            assertEquals(110, store.getRule());
+            assertEquals(WIDTH, store.getWidth());
+            assertEquals(Boundary.FIXED, store.getBoundary());
+            assertEquals(ROWS, store.getRowCount());
+            for (int t = ROWS - 1; t >= 0; t -= 3) {
+                assertArrayEquals("Row " + t, rows[t], store.readRow(t));
+            }
+        }
+    }
+
+    /**
+     * Test that a window matches the cells of the full rows.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test
+    public final void windowTest() throws IOException {
+        final int x = 37;
+        final int cells = 100;
+        try (HistoryStore store = HistoryStore.open(file)) {
+            long[][] window = store.readWindow(5, 10, x, cells);
+            for (int r = 0; r < 10; r++) {
+                assertEquals("Row " + (5 + r),
+                        BitRows.toString(rows[5 + r], WIDTH)
+                        .substring(x, x + cells),
+                        BitRows.toString(window[r], cells));
+            }
+        }
+    }
+
+    /**
+     * Test that reading past the stored rows fails.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public final void outOfRangeTest() throws IOException {
+        try (HistoryStore store = HistoryStore.open(file)) {
+            store.readRow(ROWS);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * MouseListenerTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.event.InputEvent;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link MouseListener}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class MouseListenerTest {
+
+
+    /**
+     * Test the rows stepped by each modifier combination.
+     */
+    @Test
+    public final void stepsForTest() {
+        final int shift = InputEvent.SHIFT_DOWN_MASK;
+        final int ctrl = InputEvent.CTRL_DOWN_MASK;
+        assertEquals(1, MouseListener.stepsFor(0));
+        assertEquals(10, MouseListener.stepsFor(shift));
+        assertEquals(100, MouseListener.stepsFor(ctrl));
+        assertEquals(1000, MouseListener.stepsFor(ctrl | shift));
+    }
+
+    /**
+     * Test that other modifiers and buttons don't change the step.
+     */
+    @Test
+    public final void otherModifiersTest() {
+        final int other = InputEvent.ALT_DOWN_MASK
+            | InputEvent.BUTTON1_DOWN_MASK;
+        assertEquals(1, MouseListener.stepsFor(other));
+        assertEquals(100, MouseListener.stepsFor(other
+                    | InputEvent.CTRL_DOWN_MASK));
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * PaletteTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link Palette}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class PaletteTest {
+
+
+    /**
+     * Test color names and hex values.
+     */
+    @Test
+    public final void parseTest() {
+        Palette p = Palette.parse("white, #ff8000,Black");
+        assertArrayEquals(new int[] {Color.WHITE.getRGB(),
+            new Color(0xff, 0x80, 0).getRGB(), Color.BLACK.getRGB()},
+                p.getColors());
+    }
+
+    /**
+     * Test that the two state gray palette matches the elementary colors.
+     */
+    @Test
+    public final void grayTest() {
+        assertArrayEquals(new int[] {Rule.COLOR_TO_CHAR.inverse().get('0'),
+            Rule.COLOR_TO_CHAR.inverse().get('1')},
+                Palette.gray(2).getColors());
+        assertEquals(5, Palette.gray(5).size());
+    }
+
+    /**
+     * Test that an unknown color is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void unknownColorTest() {
+        Palette.parse("white,nocolor");
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * ParallelEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link ParallelEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class ParallelEngineTest {
+
+    /**
+     * Widths around word boundaries.
+     */
+    private static final int[] WIDTHS = {1, 63, 64, 65, 300, 1000};
+
+    /**
+     * Pool shared by the tests.
+     */
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    /**
+     * Shuts the pool down.
+     */
+    @After
+    public final void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Test single steps with tiny chunks against the bit-packed engine.
+     */
+    @Test
+    public final void stepTest() {
+        Random rand = new Random(7);
+        for (int i = 0; i < 256; i += 5) {
+            Rule rule = new Rule(i);
+            for (int width : WIDTHS) {
+                for (Boundary boundary : Boundary.values()) {
+                    long[] row = TableEngineTest.randomRow(rand, width);
+                    long[] expected = BitRows.newRow(width);
+                    long[] actual = BitRows.newRow(width);
+                    new BitPackedEngine(rule, width, boundary)
+                        .step(row, expected);
+                    new ParallelEngine(rule, width, boundary, pool, 2, 1)
+                        .step(row, actual);
+                    assertArrayEquals("Rule " + i + " width " + width + " "
+                            + boundary, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test multi generation blocks between synchronisations.
+     */
+    @Test
+    public final void advanceTest() {
+        Random rand = new Random(8);
+        final int generations = 150;
+        for (int i : new int[] {30, 90, 110, 184, 1}) {
+            Rule rule = new Rule(i);
+            for (int width : WIDTHS) {
+                for (Boundary boundary : Boundary.values()) {
+                    for (int sync : new int[] {1, 7, 64, 100}) {
+                        long[] row = TableEngineTest.randomRow(rand, width);
+                        long[] expected = reference(rule, width, boundary,
+                                row, generations);
+                        long[] actual = BitRows.newRow(width);
+                        new ParallelEngine(rule, width, boundary, pool, 3,
+                                sync).advance(row, actual, generations);
+                        assertArrayEquals("Rule " + i + " width " + width
+                                + " " + boundary + " sync " + sync,
+                                expected, actual);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps a row with the bit-packed engine.
+     *
+     * @param rule Rule to apply.
+     * @param width Row width.
+     * @param boundary Boundary condition.
+     * @param row Initial row.
+     * @param generations Generations to step.
+     * @return Final row.
+     */
+    private static long[] reference(final Rule rule, final int width,
+            final Boundary boundary, final long[] row,
+            final int generations) {
+        BitPackedEngine engine = new BitPackedEngine(rule, width, boundary);
+        long[] current = row.clone();
+        long[] next = BitRows.newRow(width);
+        for (int g = 0; g < generations; g++) {
+            engine.step(current, next);
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return current;
+    }
+}
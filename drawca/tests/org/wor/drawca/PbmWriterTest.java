@@ -0,0 +1,63 @@
+/**
+ * PbmWriterTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link PbmWriter}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class PbmWriterTest {
+
+    /**
+     * Test header and most significant bit first packing.
+     *
+     * @throws IOException If encoding fails.
+     */
+    @Test
+    public final void formatTest() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PbmWriter pbm = new PbmWriter(bytes, 10, 2)) {
+            pbm.writeRow(0, BitRows.fromString("1000000001", 10));
+            pbm.writeRow(1, BitRows.fromString("0110000000", 10));
+        }
+        byte[] header = "P4\n10 2\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] expected = new byte[header.length + 4];
+        System.arraycopy(header, 0, expected, 0, header.length);
+        expected[header.length] = (byte) 0x80;
+        expected[header.length + 1] = (byte) 0x40;
+        expected[header.length + 2] = (byte) 0x60;
+        expected[header.length + 3] = 0;
+        assertArrayEquals(expected, bytes.toByteArray());
+    }
+}
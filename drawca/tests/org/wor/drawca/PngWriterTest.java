@@ -0,0 +1,125 @@
+/**
+ * PngWriterTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link PngWriter}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class PngWriterTest {
+
+    /**
+     * Test that a streamed image decodes back to the same cells.
+     *
+     * @throws IOException If encoding fails.
+     */
+    @Test
+    public final void roundTripTest() throws IOException {
+        final int width = 77;
+        final int height = 40;
+        Random rand = new Random(4);
+        long[][] rows = new long[height][];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PngWriter png = new PngWriter(bytes, width, height)) {
+            for (int y = 0; y < height; y++) {
+                rows[y] = BitRows.randomRow(width, rand);
+                png.writeRow(y, rows[y]);
+            }
+        }
+
+        BufferedImage image = ImageIO.read(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                char c = BitRows.get(rows[y], x) ? '1' : '0';
+                assertEquals("Pixel " + x + "," + y,
+                        (int) Rule.COLOR_TO_CHAR.inverse().get(c),
+                        image.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that an image of states decodes back to the palette colors.
+     *
+     * @throws IOException If encoding fails.
+     */
+    @Test
+    public final void statesTest() throws IOException {
+        final int width = 13;
+        final int height = 9;
+        final int[] colors = {0xffffffff, 0xff000000, 0xffff0000, 0xff00ff00,
+            0xff0000ff};
+        Random rand = new Random(5);
+        byte[][] rows = new byte[height][width];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (PngWriter png = new PngWriter(bytes, width, height, colors)) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    rows[y][x] = (byte) rand.nextInt(colors.length);
+                }
+                png.writeStates(y, rows[y]);
+            }
+        }
+
+        BufferedImage image = ImageIO.read(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals("Pixel " + x + "," + y, colors[rows[y][x]],
+                        image.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Test that closing an incomplete image fails.
+     *
+     * @throws IOException Expected.
+     */
+    @Test(expected = IOException.class)
+    public final void missingRowsTest() throws IOException {
+        PngWriter png = new PngWriter(new ByteArrayOutputStream(), 8, 2);
+        png.writeRow(0, BitRows.newRow(8));
+        png.close();
+    }
+}
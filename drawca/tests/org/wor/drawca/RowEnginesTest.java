@@ -0,0 +1,91 @@
+/**
+ * RowEnginesTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RowEngines}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class RowEnginesTest {
+
+    /**
+     * Widths covering the scalar edges and several vectors of words.
+     */
+    private static final int[] WIDTHS = {1, 63, 64, 65, 200, 640, 1000,
+        2049};
+
+    /**
+     * Test that the fastest engine, vector or scalar, matches
+     * {@link BitPackedEngine} for every rule and both boundaries.
+     */
+    @Test
+    public final void fastestMatchesBitPackedTest() {
+        Random rand = new Random(3);
+        for (int ruleNum = 0; ruleNum < 256; ruleNum++) {
+            Rule rule = new Rule(ruleNum);
+            for (Boundary boundary : Boundary.values()) {
+                for (int width : WIDTHS) {
+                    RowEngine fast = RowEngines.fastest(rule, width,
+                            boundary);
+                    BitPackedEngine scalar = new BitPackedEngine(rule, width,
+                            boundary);
+                    long[] row = BitRows.randomRow(width, rand);
+                    long[] expected = BitRows.newRow(width);
+                    long[] actual = BitRows.newRow(width);
+                    scalar.step(row, expected);
+                    fast.step(row, actual);
+                    assertArrayEquals("Rule " + ruleNum + " " + boundary
+                            + " width " + width, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that asking for the vector engine fails cleanly when it is not
+     * available.
+     */
+    @Test
+    public final void vectorAvailabilityTest() {
+        try {
+            RowEngine engine = RowEngines.vector(new Rule(30), 100,
+                    Boundary.PERIODIC);
+            assertTrue(RowEngines.isVectorAvailable());
+            assertEquals(100, engine.getWidth());
+        } catch (UnsupportedOperationException e) {
+            assertFalse(RowEngines.isVectorAvailable());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * RowRasterTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RowRaster} implementations.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class RowRasterTest {
+
+    /**
+     * Image widths around byte and word boundaries.
+     */
+    private static final int[] WIDTHS = {1, 7, 8, 9, 63, 64, 65, 200};
+
+    /**
+     * Image height.
+     */
+    private static final int HEIGHT = 5;
+
+    /**
+     * Test that every backing shows the cells with the rule colors.
+     */
+    @Test
+    public final void writeRowTest() {
+        final int zero = Rule.COLOR_TO_CHAR.inverse().get('0');
+        final int one = Rule.COLOR_TO_CHAR.inverse().get('1');
+        Random rand = new Random(41);
+        for (ImageBacking backing : ImageBacking.values()) {
+            for (int width : WIDTHS) {
+                RowRaster raster = backing.create(width, HEIGHT);
+                long[][] rows = new long[HEIGHT][];
+                for (int y = 0; y < HEIGHT; y++) {
+                    rows[y] = BitRows.randomRow(width, rand);
+                    raster.writeRow(y, rows[y]);
+                }
+                BufferedImage image = raster.getImage();
+                for (int y = 0; y < HEIGHT; y++) {
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(backing + " width " + width,
+                                BitRows.get(rows[y], x) ? one : zero,
+                                image.getRGB(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that an indexed raster shows extra palette colors.
+     */
+    @Test
+    public final void indicesTest() {
+        final int[] colors = {0xffffffff, 0xff000000, 0xffff0000};
+        IndexedRowRaster raster = new IndexedRowRaster(3, 1, colors);
+        raster.writeIndices(0, new byte[] {2, 0, 1});
+        BufferedImage image = raster.getImage();
+        for (int x = 0; x < 3; x++) {
+            assertEquals(colors[(x + 2) % 3], image.getRGB(x, 0));
+        }
+    }
+}
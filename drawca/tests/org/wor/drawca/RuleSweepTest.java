@@ -0,0 +1,97 @@
+/**
+ * RuleSweepTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link RuleSweep}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class RuleSweepTest {
+
+    /**
+     * Test rule list parsing.
+     */
+    @Test
+    public final void parseRulesTest() {
+        assertEquals(RuleSweep.RULE_COUNT, RuleSweep.parseRules("all").size());
+        assertEquals(Arrays.asList(0, 1, 2, 30, 110),
+                RuleSweep.parseRules("0-2, 30,110"));
+    }
+
+    /**
+     * Test that an invalid rule is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void invalidRuleTest() {
+        RuleSweep.parseRules("250-256");
+    }
+
+    /**
+     * Test period detection of identity and shift rules.
+     */
+    @Test
+    public final void periodTest() {
+        final int width = 40;
+        long[] row = BitRows.fromString("1", width);
+        RuleSweep sweep = new RuleSweep(row, width, Boundary.PERIODIC, 200);
+
+        RuleSweep.Result identity = sweep.measure(204);
+        assertEquals(0, identity.getTransientLength());
+        assertEquals(1, identity.getPeriod());
+        assertEquals(1.0 / width, identity.getFinalDensity(), 1e-9);
+
+        RuleSweep.Result shift = sweep.measure(170);
+        assertEquals(0, shift.getTransientLength());
+        assertEquals(width, shift.getPeriod());
+    }
+
+    /**
+     * Test that every rule gets a CSV line.
+     *
+     * @throws IOException If writing fails.
+     */
+    @Test
+    public final void csvTest() throws IOException {
+        final int width = 50;
+        RuleSweep sweep = new RuleSweep(BitRows.fromString("101", width),
+                width, Boundary.PERIODIC, 20);
+        StringWriter csv = new StringWriter();
+        sweep.run(RuleSweep.parseRules("all"), 3, csv);
+        String[] lines = csv.toString().split("\n");
+        assertEquals(RuleSweep.CSV_HEADER, lines[0]);
+        assertEquals(RuleSweep.RULE_COUNT + 1, lines.length);
+        assertTrue(lines[1].split(",").length == 6);
+    }
+}
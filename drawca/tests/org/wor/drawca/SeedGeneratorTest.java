@@ -0,0 +1,126 @@
+/**
+ * SeedGeneratorTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link SeedGenerator}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class SeedGeneratorTest {
+
+    /**
+     * Width spanning several chunks with a partial last word.
+     */
+    private static final int WIDTH = 3 * SeedGenerator.CHUNK_WORDS
+        * BitRows.WORD_BITS + 17;
+
+    /**
+     * Test the words against SplitMix64 reference values, the same as
+     * those of SplittableRandom.
+     */
+    @Test
+    public final void splitMixTest() {
+        SeedGenerator gen = new SeedGenerator(42);
+        assertEquals(0xbdd732262feb6e95L, gen.nextLong());
+        assertEquals(0x28efe333b266f103L, gen.nextLong());
+        assertEquals(0x47526757130f9f52L, gen.nextLong());
+        SeedGenerator split = gen.split();
+        assertEquals(0x146d1cce26adb8c1L, split.nextLong());
+        assertEquals(0x6977cc22a8013e1dL, split.nextLong());
+    }
+
+    /**
+     * Test that a row depends on the seed only, not on the pool.
+     */
+    @Test
+    public final void reproducibleTest() {
+        long[] serial = SeedGenerator.randomRow(WIDTH, 0.3, 7);
+        assertArrayEquals(serial, SeedGenerator.randomRow(WIDTH, 0.3, 7));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertArrayEquals(serial,
+                    SeedGenerator.randomRow(WIDTH, 0.3, 7, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertFalse(serial[0] == SeedGenerator.randomRow(WIDTH, 0.3, 8)[0]);
+        assertEquals(0, serial[serial.length - 1]
+                & ~BitRows.lastWordMask(WIDTH));
+    }
+
+    /**
+     * Test the density of one cells.
+     */
+    @Test
+    public final void densityTest() {
+        assertEquals(0, BitRows.countOnes(
+                    SeedGenerator.randomRow(WIDTH, 0, 1)));
+        assertEquals(WIDTH, BitRows.countOnes(
+                    SeedGenerator.randomRow(WIDTH, 1, 1)));
+        for (double p : new double[] {0.5, 0.25, 0.1, 0.9, 0.001}) {
+            final double ones = BitRows.countOnes(
+                    SeedGenerator.randomRow(WIDTH, p, 3));
+            // Within six standard deviations.
+            assertEquals("Density " + p, p, ones / WIDTH,
+                    6 * Math.sqrt(p * (1 - p) / WIDTH));
+        }
+    }
+
+    /**
+     * Test that densities out of range fail.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void invalidDensityTest() {
+        SeedGenerator.randomRow(10, 1.5, 1);
+    }
+
+    /**
+     * Test that random states are reproducible, in range and about
+     * uniform.
+     */
+    @Test
+    public final void statesTest() {
+        final int width = 30001;
+        final int states = 3;
+        byte[] row = SeedGenerator.randomStates(width, states, 11);
+        assertArrayEquals(row, SeedGenerator.randomStates(width, states, 11));
+        int[] counts = new int[states];
+        for (byte cell : row) {
+            counts[cell]++;
+        }
+        for (int c : counts) {
+            assertEquals((double) width / states, c, 0.05 * width);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * SeedLoaderTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link SeedLoader}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class SeedLoaderTest {
+
+
+    /**
+     * Temporary seed file.
+     */
+    private Path file;
+
+    /**
+     * Creates the seed file.
+     *
+     * @throws IOException If creating fails.
+     */
+    @Before
+    public final void setUp() throws IOException {
+        file = Files.createTempFile("drawca", ".seed");
+    }
+
+    /**
+     * Removes the seed file.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public final void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test that a text seed with line breaks matches the string parser.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test
+    public final void textTest() throws IOException {
+        final int width = 130;
+        String line = BitPackedEngineTest.randomLine(new Random(8), width);
+        Files.write(file, (line.substring(0, 70) + "\r\n"
+                    + line.substring(70) + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        SeedLoader.Seed seed = SeedLoader.load(file);
+        assertEquals(width, seed.getWidth());
+        assertArrayEquals(BitRows.fromString(line, width), seed.getRow());
+    }
+
+    /**
+     * Test that a binary seed reads back what was written.
+     *
+     * @throws IOException If reading or writing fails.
+     */
+    @Test
+    public final void binaryTest() throws IOException {
+        final int width = 1000;
+        long[] row = BitRows.randomRow(width, new Random(9));
+        SeedLoader.writeBinary(file, row, width);
+        assertEquals(SeedLoader.HEADER_BYTES + BitRows.wordCount(width)
+                * Long.SIZE / Byte.SIZE, Files.size(file));
+        SeedLoader.Seed seed = SeedLoader.load(file);
+        assertEquals(width, seed.getWidth());
+        assertArrayEquals(row, seed.getRow());
+    }
+
+    /**
+     * Test that other characters are rejected.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test(expected = IOException.class)
+    public final void invalidTextTest() throws IOException {
+        Files.write(file, "0101x1".getBytes(StandardCharsets.US_ASCII));
+        SeedLoader.load(file);
+    }
+
+    /**
+     * Test reading states of a general rule.
+     *
+     * @throws IOException If reading fails.
+     */
+    @Test
+    public final void statesTest() throws IOException {
+        Files.write(file, "0129\nab\n".getBytes(StandardCharsets.US_ASCII));
+        assertArrayEquals(new byte[] {0, 1, 2, 9, 10, 11},
+                SeedLoader.loadStates(file, 12));
+    }
+}
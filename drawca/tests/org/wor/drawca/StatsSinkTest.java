@@ -0,0 +1,145 @@
+/**
+ * StatsSinkTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link StatsSink}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class StatsSinkTest {
+
+    /**
+     * Allowed floating point error.
+     */
+    private static final double EPSILON = 1e-6;
+
+    /**
+     * Test the fields of constant, alternating and complemented rows.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void csvTest() throws IOException {
+        final int width = 100;
+        StringBuilder alternating = new StringBuilder();
+        for (int i = 0; i < width; i++) {
+            alternating.append(i & 1);
+        }
+        long[] row = BitRows.fromString(alternating.toString(), width);
+        long[] complement = BitRows.fromString(alternating.toString()
+                .replace('0', '2').replace('1', '0').replace('2', '1'),
+                width);
+        StringWriter out = new StringWriter();
+        try (StatsSink stats = new StatsSink(out, StatsSink.Format.CSV,
+                    width, 2)) {
+            stats.writeRow(0, BitRows.newRow(width));
+            stats.writeRow(1, row);
+            stats.writeRow(2, complement);
+        }
+        String[] lines = out.toString().split("\n");
+        assertEquals(StatsSink.CSV_HEADER, lines[0]);
+        assertEquals("0,0.000000,0.000000,0.000000,,-1,-1,-1", lines[1]);
+        assertEquals("1,0.500000,0.500000,-1.000000,0.000000,50,1,99",
+                lines[2]);
+        assertEquals("2,0.500000,0.500000,-1.000000,-1.000000,100,0,98",
+                lines[3]);
+    }
+
+    /**
+     * Test the block entropy against counting the blocks of the cell
+     * string.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void blockEntropyTest() throws IOException {
+        Random rand = new Random(21);
+        for (int width : new int[] {5, 63, 64, 130, 1000}) {
+            for (int block : new int[] {1, 3, 8}) {
+                long[] row = BitRows.randomRow(width, rand);
+                String cells = BitRows.toString(row, width);
+                String wrapped = cells + cells + cells;
+                Map<String, Integer> counts =
+                    new HashMap<String, Integer>();
+                for (int i = 0; i < width; i++) {
+                    String b = wrapped.substring(i, i + block);
+                    Integer c = counts.get(b);
+                    counts.put(b, c == null ? 1 : c + 1);
+                }
+                double expected = 0;
+                for (int c : counts.values()) {
+                    double p = (double) c / width;
+                    expected -= p * Math.log(p) / Math.log(2);
+                }
+                StatsSink stats = new StatsSink(new StringWriter(),
+                        StatsSink.Format.CSV, width, block);
+                assertEquals("Width " + width + " block " + block,
+                        expected / block, stats.blockEntropy(row), EPSILON);
+                // The count table is left clear for the next row.
+                assertEquals(expected / block, stats.blockEntropy(row),
+                        EPSILON);
+            }
+        }
+    }
+
+    /**
+     * Test JSON lines with an interval and a generation offset.
+     *
+     * @throws IOException Never.
+     */
+    @Test
+    public final void jsonEveryTest() throws IOException {
+        final int width = 70;
+        Random rand = new Random(3);
+        StringWriter out = new StringWriter();
+        StatsSink stats = new StatsSink(out, StatsSink.Format.JSON, width, 4,
+                3, 1000);
+        for (int t = 0; t < 7; t++) {
+            stats.writeRow(t, BitRows.randomRow(width, rand));
+        }
+        stats.close();
+        String[] lines = out.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertEquals(3, stats.getSamples());
+        assertTrue(lines[0].startsWith("{\"generation\":1000,"));
+        assertTrue(lines[0].contains("\"temporal_corr\":null"));
+        assertTrue(lines[1].startsWith("{\"generation\":1003,"));
+        assertFalse(lines[1].contains("null"));
+        assertTrue(lines[2].endsWith("}"));
+    }
+}
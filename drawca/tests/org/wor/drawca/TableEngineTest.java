@@ -0,0 +1,136 @@
+/**
+ * TableEngineTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link TableEngine}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class TableEngineTest {
+
+    /**
+     * Widths around word boundaries.
+     */
+    private static final int[] WIDTHS = {1, 5, 63, 64, 65, 130, 1000};
+
+    /**
+     * Test that single generation step matches the bit-packed engine.
+     */
+    @Test
+    public final void stepTest() {
+        Random rand = new Random(2);
+        for (int i = 0; i < 256; i++) {
+            Rule rule = new Rule(i);
+            for (int width : WIDTHS) {
+                for (Boundary boundary : Boundary.values()) {
+                    long[] row = randomRow(rand, width);
+                    long[] expected = BitRows.newRow(width);
+                    long[] actual = BitRows.newRow(width);
+                    new BitPackedEngine(rule, width, boundary)
+                        .step(row, expected);
+                    new TableEngine(rule, width, 1,
+                            TableEngine.DEFAULT_CACHE_BYTES, boundary)
+                        .step(row, actual);
+                    assertArrayEquals("Rule " + i + " width " + width + " "
+                            + boundary, expected, actual);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that multi generation advance matches repeated steps.
+     */
+    @Test
+    public final void advanceTest() {
+        Random rand = new Random(3);
+        for (int i : new int[] {30, 90, 110, 184}) {
+            Rule rule = new Rule(i);
+            for (int width : WIDTHS) {
+                TableEngine engine = new TableEngine(rule, width, 4,
+                        TableEngine.DEFAULT_CACHE_BYTES, Boundary.PERIODIC);
+                assertEquals(4, engine.getGenerations());
+                long[] row = randomRow(rand, width);
+                long[] expected = row.clone();
+                long[] tmp = BitRows.newRow(width);
+                BitPackedEngine reference = new BitPackedEngine(rule, width);
+                for (int g = 0; g < engine.getGenerations(); g++) {
+                    reference.step(expected, tmp);
+                    long[] swap = expected;
+                    expected = tmp;
+                    tmp = swap;
+                }
+                long[] actual = BitRows.newRow(width);
+                engine.advance(row, actual);
+                assertArrayEquals("Rule " + i + " width " + width,
+                        expected, actual);
+            }
+        }
+    }
+
+    /**
+     * Test that the widest table fitting the budget is chosen.
+     */
+    @Test
+    public final void tableChoiceTest() {
+        Rule rule = new Rule(110);
+        assertEquals(CompiledRule.SHORT_CELLS, new TableEngine(rule, 100, 1,
+                    1 << 20, Boundary.PERIODIC).getCellsPerLookup());
+        assertEquals(CompiledRule.BYTE_CELLS, new TableEngine(rule, 100, 1,
+                    1 << 10, Boundary.PERIODIC).getCellsPerLookup());
+    }
+
+    /**
+     * Test that a too small budget is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void tooSmallCacheTest() {
+        new TableEngine(new Rule(110), 100, 1, 16, Boundary.PERIODIC);
+    }
+
+    /**
+     * Random packed row.
+     *
+     * @param rand Random source.
+     * @param width Row width.
+     * @return Packed row.
+     */
+    static long[] randomRow(final Random rand, final int width) {
+        long[] row = BitRows.newRow(width);
+        for (int k = 0; k < row.length; k++) {
+            row[k] = rand.nextLong();
+        }
+        row[row.length - 1] &= BitRows.lastWordMask(width);
+        return row;
+    }
+}
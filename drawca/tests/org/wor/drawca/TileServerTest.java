@@ -0,0 +1,256 @@
+/**
+ * TileServerTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link TileServer}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class TileServerTest {
+
+    /**
+     * Lattice width.
+     */
+    private static final int WIDTH = 600;
+
+    /**
+     * Deepest generation served.
+     */
+    private static final long MAX_ROWS = 64 * TileSource.TILE_SIZE;
+
+    /**
+     * Concurrent requests of the same tile.
+     */
+    private static final int CLIENTS = 8;
+
+    /**
+     * Disk cache directory.
+     */
+    private Path cacheDir;
+
+    /**
+     * Server under test.
+     */
+    private TileServer server;
+
+    /**
+     * Starts a server on a free port.
+     *
+     * @throws IOException If starting fails.
+     */
+    @Before
+    public final void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("drawca-tiles");
+        server = startServer();
+    }
+
+    /**
+     * Stops the server and removes the cache.
+     *
+     * @throws IOException If deleting fails.
+     */
+    @After
+    public final void tearDown() throws IOException {
+        server.close();
+        Files.walkFileTree(cacheDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file,
+                    final BasicFileAttributes a)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(
+                    final Path dir, final IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Starts a server using the cache directory.
+     *
+     * @return Started server.
+     * @throws IOException If starting fails.
+     */
+    private TileServer startServer() throws IOException {
+        TileServer s = new TileServer(0, WIDTH, 0.5, 4, 1 << 20, cacheDir,
+                MAX_ROWS);
+        s.start();
+        return s;
+    }
+
+    /**
+     * Opens a connection to a path of the server.
+     *
+     * @param path Request path.
+     * @return Connection.
+     * @throws IOException If connecting fails.
+     */
+    private HttpURLConnection open(final String path) throws IOException {
+        return (HttpURLConnection) new URL("http://"
+                + server.getAddress().getHostString() + ":"
+                + server.getPort() + path).openConnection();
+    }
+
+    /**
+     * Test that a served tile is the tile of the seeded diagram.
+     *
+     * @throws IOException If a request fails.
+     */
+    @Test
+    public final void tileTest() throws IOException {
+        HttpURLConnection c = open("/rule/30/seed/5/1/1/2");
+        assertEquals(200, c.getResponseCode());
+        assertEquals("image/png", c.getContentType());
+        BufferedImage served;
+        try (InputStream in = c.getInputStream()) {
+            served = ImageIO.read(in);
+        }
+        BufferedImage expected = new TileSource(new Rule(30),
+                SeedGenerator.randomRow(WIDTH, 0.5, 5), WIDTH)
+            .renderTile(1, 1, 2);
+        assertEquals(TileSource.TILE_SIZE, served.getWidth());
+        for (int y = 0; y < TileSource.TILE_SIZE; y++) {
+            for (int x = 0; x < TileSource.TILE_SIZE; x++) {
+                assertEquals("Pixel " + x + "," + y, expected.getRGB(x, y),
+                        served.getRGB(x, y));
+            }
+        }
+        assertEquals(1, server.getRendered());
+    }
+
+    /**
+     * Test that concurrent requests render a tile once and that the disk
+     * cache outlives the server.
+     *
+     * @throws Exception If a request fails.
+     */
+    @Test
+    public final void cacheTest() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<byte[]>> replies = new ArrayList<Future<byte[]>>();
+        try {
+            for (int i = 0; i < CLIENTS; i++) {
+                replies.add(clients.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws IOException {
+                        return fetch("/rule/110/seed/-3/0/2/40.png");
+                    }
+                }));
+            }
+            for (Future<byte[]> reply : replies) {
+                assertArrayEquals(replies.get(0).get(), reply.get());
+            }
+        } finally {
+            clients.shutdown();
+        }
+        assertEquals(1, server.getRendered());
+        assertTrue(Files.exists(server.cacheFile(
+                        new TileServer.TileRequest(110, -3, 0, 2, 40))));
+
+        server.close();
+        server = startServer();
+        assertArrayEquals(replies.get(0).get(),
+                fetch("/rule/110/seed/-3/0/2/40"));
+        assertEquals(0, server.getRendered());
+    }
+
+    /**
+     * Test the errors of malformed requests and of tiles below the
+     * maximum depth.
+     *
+     * @throws IOException If a request fails.
+     */
+    @Test
+    public final void errorTest() throws IOException {
+        assertEquals(404, open("/tiles/1/2/3").getResponseCode());
+        assertEquals(400, open("/rule/256/seed/1/0/0/0").getResponseCode());
+        assertEquals(400, open("/rule/30/seed/1/7/0/0").getResponseCode());
+        assertEquals(400, open("/rule/30/seed/1/0/3/0").getResponseCode());
+        assertEquals(200, open("/rule/30/seed/1/0/0/63").getResponseCode());
+        assertEquals(400, open("/rule/30/seed/1/0/0/64").getResponseCode());
+        assertEquals(400, open("/rule/30/seed/1/1/0/32").getResponseCode());
+        assertEquals(400, open("/rule/30/seed/1/0/0/100000000000000000")
+                .getResponseCode());
+        HttpURLConnection post = open("/rule/30/seed/1/0/0/0");
+        post.setRequestMethod("POST");
+        assertEquals(405, post.getResponseCode());
+        assertEquals(1, server.getRendered());
+    }
+
+    /**
+     * Reads a response body.
+     *
+     * @param path Request path.
+     * @return Body bytes.
+     * @throws IOException If the request fails.
+     */
+    private byte[] fetch(final String path) throws IOException {
+        HttpURLConnection c = open(path);
+        assertEquals(200, c.getResponseCode());
+        try (InputStream in = c.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                body.write(buf, 0, n);
+            }
+            return body.toByteArray();
+        }
+    }
+}
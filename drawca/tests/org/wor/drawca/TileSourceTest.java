@@ -0,0 +1,208 @@
+/**
+ * TileSourceTest.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.wor.drawca;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link TileSource}.
+ *
+ * @author esa.maatta@iki.fi (Esa Määttä)
+ */
+@RunWith(JUnit4.class)
+public class TileSourceTest {
+
+    /**
+     * Lattice width, not a multiple of the tile size.
+     */
+    private static final int WIDTH = 300;
+
+    /**
+     * Color of a one cell.
+     */
+    private static final int ONE_COLOR = Rule.COLOR_TO_CHAR.inverse()
+        .get('1');
+
+    /**
+     * Simulates generations.
+     *
+     * @param rule Rule to apply.
+     * @param row Initial row.
+     * @param rows Number of generations including the initial one.
+     * @return Rows of the generations.
+     */
+    private static long[][] simulate(final Rule rule, final long[] row,
+            final int rows) {
+        BitPackedEngine engine = new BitPackedEngine(rule, WIDTH);
+        long[][] out = new long[rows][];
+        out[0] = row.clone();
+        for (int t = 1; t < rows; t++) {
+            out[t] = BitRows.newRow(WIDTH);
+            engine.step(out[t - 1], out[t]);
+        }
+        return out;
+    }
+
+    /**
+     * Asserts that a tile samples the simulated diagram.
+     *
+     * @param diagram Simulated rows.
+     * @param tile Tile image.
+     * @param zoom Tile zoom level.
+     * @param tx Tile column.
+     * @param ty Tile row.
+     */
+    private static void assertTile(final long[][] diagram,
+            final BufferedImage tile, final int zoom, final long tx,
+            final long ty) {
+        final long span = TileSource.tileSpan(zoom);
+        for (int j = 0; j < TileSource.TILE_SIZE; j++) {
+            for (int i = 0; i < TileSource.TILE_SIZE; i++) {
+                int t = (int) (ty * span + ((long) j << zoom));
+                long x = tx * span + ((long) i << zoom);
+                int cell = (int) (((x % WIDTH) + WIDTH) % WIDTH);
+                assertEquals("Tile " + zoom + "/" + tx + "/" + ty + " at "
+                        + i + "," + j, BitRows.get(diagram[t], cell),
+                        tile.getRGB(i, j) == ONE_COLOR);
+            }
+        }
+    }
+
+    /**
+     * Test that tiles at several positions and zoom levels match plain
+     * simulation, including tiles wrapping around the lattice.
+     */
+    @Test
+    public final void tilesMatchSimulationTest() {
+        Rule rule = new Rule(110);
+        long[] row = BitRows.randomRow(WIDTH, new Random(19));
+        long[][] diagram = simulate(rule, row, 4 * TileSource.TILE_SIZE);
+        TileSource source = new TileSource(rule, row, WIDTH);
+
+        assertTile(diagram, source.getTile(0, 0, 0), 0, 0, 0);
+        assertTile(diagram, source.getTile(0, 1, 2), 0, 1, 2);
+        assertTile(diagram, source.getTile(0, -3, 3), 0, -3, 3);
+        assertTile(diagram, source.getTile(1, 0, 1), 1, 0, 1);
+        assertTile(diagram, source.getTile(2, -1, 0), 2, -1, 0);
+    }
+
+    /**
+     * Test that a rendered tile is cached and served without rendering.
+     */
+    @Test
+    public final void cacheTest() {
+        TileSource source = new TileSource(new Rule(30),
+                BitRows.randomRow(WIDTH, new Random(23)), WIDTH);
+        assertNull(source.getTileIfPresent(0, 0, 5));
+        BufferedImage tile = source.getTile(0, 0, 5);
+        assertSame(tile, source.getTileIfPresent(0, 0, 5));
+    }
+
+    /**
+     * Test that a tiny memory budget keeps only a few tiles.
+     */
+    @Test
+    public final void boundedCacheTest() {
+        final int tileBytes = TileSource.TILE_SIZE * TileSource.TILE_SIZE
+            / Byte.SIZE;
+        TileSource source = new TileSource(new Rule(30),
+                BitRows.randomRow(WIDTH, new Random(29)), WIDTH,
+                2 * tileBytes, TileSource.DEFAULT_CACHE_BYTES);
+        for (int x = 0; x < 10; x++) {
+            source.getTile(0, x, 0);
+        }
+        int cached = 0;
+        for (int x = 0; x < 10; x++) {
+            if (source.getTileIfPresent(0, x, 0) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 2);
+    }
+
+    /**
+     * Test that tiles rendered concurrently, with keyframes evicted and
+     * recomputed, match plain simulation.
+     *
+     * @throws Exception If rendering fails.
+     */
+    @Test
+    public final void concurrentTilesTest() throws Exception {
+        final int depth = 8;
+        Rule rule = new Rule(110);
+        long[] row = BitRows.randomRow(WIDTH, new Random(31));
+        long[][] diagram = simulate(rule, row, depth * TileSource.TILE_SIZE);
+        // Room for about two keyframes.
+        final TileSource source = new TileSource(rule, row, WIDTH, 0,
+                2 * row.length * (Long.SIZE / Byte.SIZE));
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        List<Future<BufferedImage>> tiles =
+            new ArrayList<Future<BufferedImage>>();
+        try {
+            for (int y = depth - 1; y >= 0; y--) {
+                final long ty = y;
+                for (int x = 0; x < 2; x++) {
+                    final long tx = x;
+                    tiles.add(workers.submit(new Callable<BufferedImage>() {
+                        @Override
+                        public BufferedImage call() {
+                            return source.renderTile(0, tx, ty);
+                        }
+                    }));
+                }
+            }
+            int i = 0;
+            for (int y = depth - 1; y >= 0; y--) {
+                for (int x = 0; x < 2; x++) {
+                    assertTile(diagram, tiles.get(i++).get(), 0, x, y);
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Test that a tile row whose first generation overflows fails.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void overflowTest() {
+        new TileSource(new Rule(30), BitRows.newRow(WIDTH), WIDTH)
+            .renderTile(0, 0, 100000000000000000L);
+    }
+}
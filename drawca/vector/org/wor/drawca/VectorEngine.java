@@ -0,0 +1,203 @@
+/**
+ * VectorEngine.java
+ *
+ * Copyright 2013 Esa Määttä
+ *
+ * This file is part of drawca.
+ *
+ * drawca is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * drawca is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with drawca.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.wor.drawca;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Elementary cellular automata engine evaluating the rule on SIMD vectors.
+ *
+ * Works like {@link BitPackedEngine} but the neighbor words and the rule
+ * multiplexer are computed for a whole vector of words (256 or 512 cells)
+ * per operation. Only the first and last words, which depend on the
+ * boundary, are computed with scalar code.
+ *
+ * Needs the jdk.incubator.vector module (Java 16 or later), so this class
+ * lives in its own source root. Create it through {@link RowEngines} which
+ * falls back to the scalar engine when the module is not available.
+ *
+ * @author "Esa Määttä" (esa.maatta@iki.fi)
+ */
+public class VectorEngine implements RowEngine {
+    /**
+     * Widest vector shape supported by the platform.
+     */
+    private static final VectorSpecies<Long> SPECIES =
+        LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Lattice width in cells.
+     */
+    private final int width;
+
+    /**
+     * Number of words in a row.
+     */
+    private final int words;
+
+    /**
+     * Number of cells in the last word of a row [1-64].
+     */
+    private final int lastBits;
+
+    /**
+     * Mask of valid cells in the last word of a row.
+     */
+    private final long lastMask;
+
+    /**
+     * Rule to apply.
+     */
+    private final CompiledRule rule;
+
+    /**
+     * Rule output per neighborhood as all-ones or all-zeroes word.
+     */
+    private final long[] minterms;
+
+    /**
+     * Boundary condition.
+     */
+    private final Boundary boundary;
+
+    /**
+     * Constructs engine for given rule, lattice width and boundary.
+     *
+     * @param rule Rule to apply.
+     * @param width Lattice width in cells, at least one.
+     * @param boundary Boundary condition.
+     */
+    public VectorEngine(final Rule rule, final int width,
+            final Boundary boundary) {
+        if (width < 1) {
+            throw new IllegalArgumentException("Width must be positive: "
+                    + width);
+        }
+        this.width = width;
+        words = BitRows.wordCount(width);
+        lastBits = width - (words - 1) * BitRows.WORD_BITS;
+        lastMask = BitRows.lastWordMask(width);
+        this.rule = rule.compile();
+        minterms = new long[CompiledRule.NEIGHBORHOODS];
+        for (int i = 0; i < minterms.length; i++) {
+            minterms[i] = this.rule.minterm(i);
+        }
+        this.boundary = boundary;
+    }
+
+    @Override
+    public final int getWidth() {
+        return width;
+    }
+
+    @Override
+    public final Boundary getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * Number of 64-bit lanes processed per vector operation.
+     *
+     * @return Vector length in words.
+     */
+    public static int getLanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public final void step(final long[] current, final long[] next) {
+        final int last = words - 1;
+        final int lanes = SPECIES.length();
+        final LongVector m0 = LongVector.broadcast(SPECIES, minterms[0]);
+        final LongVector m1 = LongVector.broadcast(SPECIES, minterms[1]);
+        final LongVector m2 = LongVector.broadcast(SPECIES, minterms[2]);
+        final LongVector m3 = LongVector.broadcast(SPECIES, minterms[3]);
+        final LongVector m4 = LongVector.broadcast(SPECIES, minterms[4]);
+        final LongVector m5 = LongVector.broadcast(SPECIES, minterms[5]);
+        final LongVector m6 = LongVector.broadcast(SPECIES, minterms[6]);
+        final LongVector m7 = LongVector.broadcast(SPECIES, minterms[7]);
+
+        next[0] = scalarWord(current, 0);
+        // Words 1..last-1 have both neighbor words inside the row.
+        int k = 1;
+        for (; k + lanes <= last; k += lanes) {
+            final LongVector c = LongVector.fromArray(SPECIES, current, k);
+            final LongVector l = c.lanewise(VectorOperators.LSHL, 1)
+                .or(LongVector.fromArray(SPECIES, current, k - 1)
+                        .lanewise(VectorOperators.LSHR,
+                            BitRows.WORD_BITS - 1));
+            final LongVector r = c.lanewise(VectorOperators.LSHR, 1)
+                .or(LongVector.fromArray(SPECIES, current, k + 1)
+                        .lanewise(VectorOperators.LSHL,
+                            BitRows.WORD_BITS - 1));
+            // Same multiplexer as CompiledRule.applyWord, blend takes the
+            // second operand where the mask bit is set.
+            final LongVector h00 = m0.lanewise(VectorOperators.BITWISE_BLEND,
+                    m1, r);
+            final LongVector h01 = m2.lanewise(VectorOperators.BITWISE_BLEND,
+                    m3, r);
+            final LongVector h10 = m4.lanewise(VectorOperators.BITWISE_BLEND,
+                    m5, r);
+            final LongVector h11 = m6.lanewise(VectorOperators.BITWISE_BLEND,
+                    m7, r);
+            final LongVector g0 = h00.lanewise(VectorOperators.BITWISE_BLEND,
+                    h01, c);
+            final LongVector g1 = h10.lanewise(VectorOperators.BITWISE_BLEND,
+                    h11, c);
+            g0.lanewise(VectorOperators.BITWISE_BLEND, g1, l)
+                .intoArray(next, k);
+        }
+        for (; k <= last; k++) {
+            next[k] = scalarWord(current, k);
+        }
+        next[last] &= lastMask;
+    }
+
+    /**
+     * Computes one word of the next generation without vectors.
+     *
+     * @param current Current generation.
+     * @param k Word index.
+     * @return Next generation of the word, padding bits not cleared.
+     */
+    private long scalarWord(final long[] current, final int k) {
+        final int last = words - 1;
+        final boolean periodic = boundary == Boundary.PERIODIC;
+        final long c = current[k];
+        long l = c << 1;
+        if (k > 0) {
+            l |= current[k - 1] >>> (BitRows.WORD_BITS - 1);
+        } else if (periodic) {
+            // Leftmost cell's left neighbor is the rightmost cell.
+            l |= (current[last] >>> (lastBits - 1)) & 1;
+        }
+        long r = c >>> 1;
+        if (k < last) {
+            r |= current[k + 1] << (BitRows.WORD_BITS - 1);
+        } else if (periodic) {
+            // Rightmost cell's right neighbor is the leftmost cell.
+            r |= (current[0] & 1) << (lastBits - 1);
+        }
+        return rule.applyWord(l, c, r);
+    }
+}